@@ -0,0 +1,412 @@
+package com.android.demineur;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.SoundEffectConstants;
+import android.view.View;
+import android.widget.OverScroller;
+
+/**
+ * Single view drawing the grid from the model state.
+ * The grid can be zoomed and panned, only the cells inside the view are drawn
+ */
+public class BoardView extends View {
+
+    /**
+     * Listener of the taps on the grid cells
+     */
+    public interface OnCellClickListener {
+
+        /**
+         * The (i, j) cell has been tapped
+         * @param i : the cell row
+         * @param j : the cell column
+         */
+        void onCellClick(int i, int j);
+
+        /**
+         * The (i, j) cell has been long pressed
+         * @param i : the cell row
+         * @param j : the cell column
+         */
+        void onCellLongClick(int i, int j);
+    }
+
+    /**
+     * Cell images, indexed by the values returned by getImage
+     */
+    private static final int IMAGES[] = {
+            R.drawable.case_0, R.drawable.case_1, R.drawable.case_2, R.drawable.case_3, R.drawable.case_4,
+            R.drawable.case_5, R.drawable.case_6, R.drawable.case_7, R.drawable.case_8,
+            R.drawable.case_normale, R.drawable.case_marquee_minee, R.drawable.case_mine,
+            R.drawable.case_mine_trouvee, R.drawable.case_mine_explosee, R.drawable.wrong_flag
+    };
+    private static final int IMAGE_HIDDEN = 9;
+    private static final int IMAGE_MARKED = 10;
+    private static final int IMAGE_MINE = 11;
+    private static final int IMAGE_MINE_FOUND = 12;
+    private static final int IMAGE_MINE_EXPLODED = 13;
+    private static final int IMAGE_WRONG_FLAG = 14;
+
+    /**
+     * Maximum zoom, relative to the size of the cell images
+     */
+    private static final float MAX_SCALE = 4f;
+
+    /**
+     * Below this cell size in pixels, cells are drawn as plain colored squares instead of images
+     */
+    private static final float MIN_IMAGE_CELL_SIZE = 12f;
+
+    /**
+     * Smallest square drawn when zoomed far out, several cells then share one square
+     */
+    private static final float MIN_BLOCK_SIZE = 4f;
+
+    /**
+     * The drawn game
+     */
+    private DemineurModel model;
+
+    /**
+     * Decoded cell images, all of the same size
+     */
+    private final Bitmap bitmaps[];
+
+    /**
+     * Paints of the plain colored cells, indexed like the images
+     */
+    private final Paint paints[];
+
+    /**
+     * Side of a cell image in pixels
+     */
+    private final int imageSize;
+
+    /**
+     * Current zoom, the side of a cell on screen is imageSize * scale
+     */
+    private float scale;
+
+    /**
+     * Position of the grid top left corner in the view, in pixels
+     */
+    private float offsetX;
+    private float offsetY;
+
+    /**
+     * Destination of the cell being drawn, reused for every cell
+     */
+    private final Rect cellRect;
+
+    private final GestureDetector gestureDetector;
+
+    private final ScaleGestureDetector scaleGestureDetector;
+
+    /**
+     * Animates the flings, its position is the grid offset negated
+     */
+    private final OverScroller scroller;
+
+    private OnCellClickListener cellClickListener;
+
+    public BoardView(Context context) {
+        this(context, null);
+    }
+
+    public BoardView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        Resources resources = context.getResources();
+        bitmaps = new Bitmap[IMAGES.length];
+        for(int k = 0; k < IMAGES.length; k++)
+            bitmaps[k] = BitmapFactory.decodeResource(resources, IMAGES[k]);
+        imageSize = bitmaps[IMAGE_HIDDEN].getWidth();
+        paints = new Paint[IMAGES.length];
+        for(int k = 0; k < IMAGES.length; k++) {
+            paints[k] = new Paint();
+            paints[k].setColor(ContextCompat.getColor(context, getLevelOfDetailColor(k)));
+        }
+        scale = 1f;
+        cellRect = new Rect();
+        gestureDetector = new GestureDetector(context, gestureListener);
+        scaleGestureDetector = new ScaleGestureDetector(context, scaleGestureListener);
+        scroller = new OverScroller(context);
+    }
+
+    /**
+     * Draw a new game at the native cell size, centered if it fits in the view
+     * @param model : the game
+     */
+    public void setModel(DemineurModel model) {
+        this.model = model;
+        scroller.forceFinished(true);
+        scale = 1f;
+        offsetX = 0;
+        offsetY = 0;
+        clampOffsets();
+        invalidate();
+    }
+
+    public void setOnCellClickListener(OnCellClickListener listener) {
+        this.cellClickListener = listener;
+    }
+
+    /**
+     * Redraw only the visible cells changed by the last move
+     * @param changes : the changes returned by the model
+     */
+    public void invalidateCells(ChangeSet changes) {
+        float cellSize = getCellSize();
+        if(cellSize < MIN_IMAGE_CELL_SIZE) {
+            invalidate(); // a square may stand for several cells, redrawing the screen is cheaper than sorting it out
+            return;
+        }
+        for(int k = 0; k < changes.size(); k++) {
+            int cell = changes.get(k);
+            int left = (int) Math.floor(offsetX + (cell % model.getWidth()) * cellSize);
+            int top = (int) Math.floor(offsetY + (cell / model.getWidth()) * cellSize);
+            int size = (int) Math.ceil(cellSize) + 1;
+            if(left + size > 0 && top + size > 0 && left < getWidth() && top < getHeight())
+                invalidate(left, top, left + size, top + size);
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        scale = Math.max(scale, getMinScale());
+        clampOffsets();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if(model == null)
+            return;
+        float cellSize = getCellSize();
+        if(cellSize < MIN_IMAGE_CELL_SIZE)
+            drawLevelOfDetail(canvas, cellSize);
+        else
+            drawImages(canvas, cellSize);
+    }
+
+    /**
+     * Draw the images of the cells intersecting the view
+     * @param canvas : the view canvas
+     * @param cellSize : the side of a cell in pixels
+     */
+    private void drawImages(Canvas canvas, float cellSize) {
+        int firstI = Math.max((int) (-offsetY / cellSize), 0);
+        int lastI = Math.min((int) ((getHeight() - offsetY) / cellSize), model.getHeight() - 1);
+        int firstJ = Math.max((int) (-offsetX / cellSize), 0);
+        int lastJ = Math.min((int) ((getWidth() - offsetX) / cellSize), model.getWidth() - 1);
+        for(int i = firstI; i <= lastI; i++) {
+            for(int j = firstJ; j <= lastJ; j++) {
+                cellRect.set(Math.round(offsetX + j * cellSize), Math.round(offsetY + i * cellSize),
+                        Math.round(offsetX + (j + 1) * cellSize), Math.round(offsetY + (i + 1) * cellSize));
+                canvas.drawBitmap(bitmaps[getImage(i, j)], null, cellRect, null);
+            }
+        }
+    }
+
+    /**
+     * Draw the visible part of the grid as colored squares.
+     * When the cells are smaller than MIN_BLOCK_SIZE, one square stands for a block of cells and takes the
+     * color of its first cell, so the number of squares only depends on the view size
+     * @param canvas : the view canvas
+     * @param cellSize : the side of a cell in pixels
+     */
+    private void drawLevelOfDetail(Canvas canvas, float cellSize) {
+        int step = Math.max(1, (int) Math.ceil(MIN_BLOCK_SIZE / cellSize));
+        float blockSize = step * cellSize;
+        int firstI = Math.max((int) (-offsetY / cellSize), 0) / step * step;
+        int lastI = Math.min((int) ((getHeight() - offsetY) / cellSize), model.getHeight() - 1);
+        int firstJ = Math.max((int) (-offsetX / cellSize), 0) / step * step;
+        int lastJ = Math.min((int) ((getWidth() - offsetX) / cellSize), model.getWidth() - 1);
+        for(int i = firstI; i <= lastI; i += step) {
+            float top = offsetY + i * cellSize;
+            for(int j = firstJ; j <= lastJ; j += step) {
+                float left = offsetX + j * cellSize;
+                canvas.drawRect(left, top, left + blockSize, top + blockSize, paints[getImage(i, j)]);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return the image of the (i, j) cell depending on the current model state, the mines of a chunked grid
+     * are only shown in the explored chunks so the game over screen doesn't compute every chunk in view
+     */
+    private int getImage(int i, int j) {
+        boolean over = model.isLost() || model.isWon();
+        if(over && model.isExplored(i, j) && model.getCell(i, j) == DemineurModel.Cell.MINE) {
+            if(model.isDiscovered(i, j))
+                return IMAGE_MINE_EXPLODED; // the player lost here
+            return model.isMarked(i, j) ? IMAGE_MINE_FOUND : IMAGE_MINE; // show all the mines if the game is over
+        }
+        if(model.isMarked(i, j))
+            return over ? IMAGE_WRONG_FLAG : IMAGE_MARKED; // the player put a flag on a cell that is not a mine
+        if(!model.isDiscovered(i, j))
+            return IMAGE_HIDDEN;
+        return model.getCell(i, j).ordinal() - 1;
+    }
+
+    /**
+     *
+     * @param image : an image index
+     * @return the color standing for the image when zoomed far out
+     */
+    private static int getLevelOfDetailColor(int image) {
+        switch(image) {
+            case IMAGE_HIDDEN: return R.color.cellHidden;
+            case IMAGE_MARKED:
+            case IMAGE_MINE_FOUND: return R.color.cellMarked;
+            case IMAGE_MINE:
+            case IMAGE_MINE_EXPLODED:
+            case IMAGE_WRONG_FLAG: return R.color.cellMine;
+            case 0: return R.color.cellEmpty;
+            default: return R.color.cellNumber;
+        }
+    }
+
+    /**
+     *
+     * @return the side of a cell on screen, in pixels
+     */
+    private float getCellSize() {
+        return imageSize * scale;
+    }
+
+    /**
+     *
+     * @return the zoom showing the whole grid, never more than the native size
+     */
+    private float getMinScale() {
+        if(model == null || getWidth() == 0 || getHeight() == 0)
+            return 1f;
+        float fit = Math.min((float) getWidth() / (model.getWidth() * imageSize), (float) getHeight() / (model.getHeight() * imageSize));
+        return Math.min(fit, 1f);
+    }
+
+    /**
+     * Keep the grid inside the view, or centered if it is smaller than the view
+     */
+    private void clampOffsets() {
+        if(model == null)
+            return;
+        float contentWidth = model.getWidth() * getCellSize();
+        float contentHeight = model.getHeight() * getCellSize();
+        offsetX = contentWidth <= getWidth() ? (getWidth() - contentWidth) / 2 : Math.min(0, Math.max(offsetX, getWidth() - contentWidth));
+        offsetY = contentHeight <= getHeight() ? (getHeight() - contentHeight) / 2 : Math.min(0, Math.max(offsetY, getHeight() - contentHeight));
+    }
+
+    @Override
+    public void computeScroll() {
+        if(scroller.computeScrollOffset()) {
+            offsetX = -scroller.getCurrX();
+            offsetY = -scroller.getCurrY();
+            clampOffsets();
+            ViewCompat.postInvalidateOnAnimation(this);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleGestureDetector.onTouchEvent(event);
+        handled = gestureDetector.onTouchEvent(event) || handled;
+        return handled || super.onTouchEvent(event);
+    }
+
+    /**
+     * Zooms around the fingers
+     */
+    private final ScaleGestureDetector.SimpleOnScaleGestureListener scaleGestureListener = new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            if(model == null)
+                return false;
+            float newScale = Math.max(getMinScale(), Math.min(scale * detector.getScaleFactor(), MAX_SCALE));
+            float ratio = newScale / scale;
+            offsetX = detector.getFocusX() - (detector.getFocusX() - offsetX) * ratio;
+            offsetY = detector.getFocusY() - (detector.getFocusY() - offsetY) * ratio;
+            scale = newScale;
+            clampOffsets();
+            invalidate();
+            return true;
+        }
+    };
+
+    /**
+     * Pans, flings and finds the tapped cell from the touch coordinates
+     */
+    private final GestureDetector.SimpleOnGestureListener gestureListener = new GestureDetector.SimpleOnGestureListener() {
+        @Override
+        public boolean onDown(MotionEvent e) {
+            scroller.forceFinished(true);
+            return model != null;
+        }
+
+        @Override
+        public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+            offsetX -= distanceX;
+            offsetY -= distanceY;
+            clampOffsets();
+            invalidate();
+            return true;
+        }
+
+        @Override
+        public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
+            int maxX = (int) Math.max(0, model.getWidth() * getCellSize() - getWidth());
+            int maxY = (int) Math.max(0, model.getHeight() * getCellSize() - getHeight());
+            scroller.fling((int) -offsetX, (int) -offsetY, (int) -velocityX, (int) -velocityY, 0, maxX, 0, maxY);
+            ViewCompat.postInvalidateOnAnimation(BoardView.this);
+            return true;
+        }
+
+        @Override
+        public boolean onSingleTapUp(MotionEvent e) {
+            if(scaleGestureDetector.isInProgress())
+                return false;
+            int i = (int) Math.floor((e.getY() - offsetY) / getCellSize());
+            int j = (int) Math.floor((e.getX() - offsetX) / getCellSize());
+            if(cellClickListener == null || !isCell(i, j))
+                return false;
+            playSoundEffect(SoundEffectConstants.CLICK);
+            cellClickListener.onCellClick(i, j);
+            return true;
+        }
+
+        @Override
+        public void onLongPress(MotionEvent e) {
+            if(scaleGestureDetector.isInProgress())
+                return;
+            int i = (int) Math.floor((e.getY() - offsetY) / getCellSize());
+            int j = (int) Math.floor((e.getX() - offsetX) / getCellSize());
+            if(cellClickListener != null && isCell(i, j))
+                cellClickListener.onCellLongClick(i, j);
+        }
+    };
+
+    /**
+     *
+     * @param i : the row
+     * @param j : the column
+     * @return true if (i, j) is a cell of the grid
+     */
+    private boolean isCell(int i, int j) {
+        return model != null && i >= 0 && i < model.getHeight() && j >= 0 && j < model.getWidth();
+    }
+}
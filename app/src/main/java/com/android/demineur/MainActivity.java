@@ -10,7 +10,8 @@ import android.database.Cursor;
 import android.graphics.Typeface;
 import android.media.MediaPlayer;
 import android.os.Bundle;
-import android.os.Message;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.preference.PreferenceManager;
 import android.provider.MediaStore;
@@ -27,24 +28,26 @@ import android.view.animation.AnimationUtils;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
-import android.widget.GridLayout;
 import android.widget.ImageButton;
-import android.widget.ImageView;
 import android.widget.ListView;
+import android.widget.ProgressBar;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.google.gson.Gson;
-
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -52,14 +55,18 @@ public class MainActivity extends AppCompatActivity {
      * Game operations
      */
     private DemineurModel model;
+    private NoGuessGenerator noGuessGenerator;
+    private DemineurModel dealing; // the game whose first move waits for a no-guess grid
+    private BoardPool boardPool;
     private AlertDialog.Builder replayDialog;
     private Menu menu;
 
     /**
      * UI operations
      */
-    private GridLayout gridLayout;
+    private BoardView boardView;
     private ImageButton flagButton;
+    private ProgressBar dealProgress;
     private TextView minesCountText;
     private Animation animation;
 
@@ -77,15 +84,20 @@ public class MainActivity extends AppCompatActivity {
     /**
      * Timer operations
      */
-    private Timer timer;
     private TextView timeText;
-    private CustomHandler customHandler;
+    private Handler clockHandler;
 
     /**
      * Scores operations
      */
     private Dialog scoreDialog;
     private Dialog winDialog;
+    private Leaderboard leaderboard;
+    private GameStatistics statistics;
+    private int newScoreRank; // rank of the last won game, -1 if it isn't among the best scores
+    private final static int[][] presets = {{9, 9, 10}, {16, 16, 40}, {30, 16, 99}};
+    private final static int shownScores = 3;
+    private final static int[] marathon = {10000, 10000, 16000000}; // stored by chunks, only the explored area takes memory
 
     /**
      * Help operations
@@ -110,13 +122,20 @@ public class MainActivity extends AppCompatActivity {
     public final static String prefMusicPaused = "musicPaused";
     public final static String prefMusicTitle = "lastMusicTitle";
     public final static String prefMusicLength = "musicLength";
-    public final static String prefModel = "model";
-    public final static String prefScoreBeginner = "beginnerScore";
+    public final static String prefModel = "model"; // game saved in JSON by the previous versions
+    public final static String saveFile = "game.bin";
+    public final static String scoreFile = "scores.bin";
+    public final static String statisticsFile = "statistics.bin";
+    public final static String gamesLogFile = "games.log"; // one GameRecord per finished game
+    public final static String prefScoreBeginner = "beginnerScore"; // scores saved as strings by the previous versions
     public final static String prefScoreIntermediate = "intermediateScore";
     public final static String prefScoreExpert = "expertScore";
     public final static String prefGridSize = "gridSizePrefId";
     public final static String prefAnimation = "animPrefId";
     public final static String prefVibration = "vibrationPrefId";
+    public final static String prefNoGuess = "noGuessPrefId";
+    public final static long noGuessTimeout = 500; // milliseconds before keeping a random grid
+    public final static int poolCapacity = 4; // grids generated in advance for each difficulty
     public final static String prefGameTotal = "gameTotal";
     public final static String prefGameWin = "gameWin";
 
@@ -126,9 +145,11 @@ public class MainActivity extends AppCompatActivity {
         assert getSupportActionBar() != null; // Prevent from the possible NullPointerException warning
         getSupportActionBar().setDisplayShowTitleEnabled(false); // Un-show game title in the action bar
         setContentView(R.layout.grid_layout);
-        gridLayout = (GridLayout) findViewById(R.id.gridId);
+        boardView = (BoardView) findViewById(R.id.boardId);
+        boardView.setOnCellClickListener(cellListener);
         flagButton = (ImageButton) findViewById(R.id.flagButtonId);
         flagButton.setOnClickListener(flagModeListener);
+        dealProgress = (ProgressBar) findViewById(R.id.dealProgressId);
         minesCountText = (TextView) findViewById(R.id.minesId);
         timeText = (TextView) findViewById(R.id.timeId);
         replayDialog = new AlertDialog.Builder(this);
@@ -136,8 +157,11 @@ public class MainActivity extends AppCompatActivity {
         replayDialog.setMessage(getResources().getString(R.string.dialog_replay)).
                 setPositiveButton(getResources().getString(R.string.yes), settingsDialogListener).
                 setNegativeButton(getResources().getString(R.string.no), settingsDialogListener);
-        customHandler = new CustomHandler();
+        clockHandler = new Handler();
         preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        boardPool = new BoardPool(poolCapacity);
+        initLeaderboard();
+        initStatistics();
         initModel();
         initSettingsDialog();
         initScoreDialog();
@@ -169,11 +193,15 @@ public class MainActivity extends AppCompatActivity {
         super.onStop();
         model.setPause(true);
         stopTimer();
-        Gson gson = new Gson();
-        String json = gson.toJson(model);
-        SharedPreferences.Editor preferencesEditor = preferences.edit();
-        preferencesEditor.putString(prefModel, json);
-        preferencesEditor.apply();
+        saveModel();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if(noGuessGenerator != null)
+            noGuessGenerator.shutdown();
+        boardPool.shutdown();
     }
 
     /**
@@ -243,18 +271,21 @@ public class MainActivity extends AppCompatActivity {
         final TextView totalScoreTextView = (TextView) scoreLayout.findViewById(R.id.totalScoreId);
         final TextView winScoreTextView = (TextView) scoreLayout.findViewById(R.id.winScoreId);
         final TextView winPercentageScoreTextView = (TextView) scoreLayout.findViewById(R.id.percentageScoreId);
-        final String[] keys = {prefScoreBeginner, prefScoreIntermediate, prefScoreExpert};
+        final TextView statisticsTextView = (TextView) scoreLayout.findViewById(R.id.statisticsScoreId);
         Button clearButton = (Button) scoreLayout.findViewById(R.id.clearButton);
         clearButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                SharedPreferences.Editor editor = preferences.edit();
-                editor.putString(prefScoreBeginner, null).putString(prefScoreIntermediate, null).putString(prefScoreExpert, null).
-                        putInt(prefGameWin, 0).putInt(prefGameTotal, 0).apply();
-                for(int i = 0; i < keys.length; i++) {
-                    String[] bestScores = getBestScores(keys[i]);
-                    for(int j = 0; j < scoreTextViews.length / keys.length; j++)
-                        scoreTextViews[i * keys.length + j].setText(bestScores[j]);
+                preferences.edit().putInt(prefGameWin, 0).putInt(prefGameTotal, 0).apply();
+                leaderboard.clear();
+                saveLeaderboard();
+                statistics.clear();
+                deleteFile(gamesLogFile);
+                saveStatistics();
+                for(int i = 0; i < presets.length; i++) {
+                    String[] bestScores = getBestScores(presets[i][0], presets[i][1], presets[i][2]);
+                    for(int j = 0; j < shownScores; j++)
+                        scoreTextViews[i * shownScores + j].setText(bestScores[j]);
                 }
                 int totalGameCount = preferences.getInt(prefGameTotal, 0);
                 int winGameCount = preferences.getInt(prefGameWin, 0);
@@ -262,15 +293,16 @@ public class MainActivity extends AppCompatActivity {
                 totalScoreTextView.setText(getResources().getString(R.string.scoreTotalLine, totalGameCount));
                 winScoreTextView.setText(getResources().getString(R.string.scoreWinLine, winGameCount));
                 winPercentageScoreTextView.setText(getResources().getString(R.string.scorePercentageLine, winPercentage));
+                statisticsTextView.setText(getStatisticsLine());
             }
         });
         scoreDialog.setOnShowListener(new DialogInterface.OnShowListener() {
             @Override
             public void onShow(DialogInterface dialog) {
-                for(int i = 0; i < keys.length; i++) {
-                    String[] bestScores = getBestScores(keys[i]);
-                    for(int j = 0; j < scoreTextViews.length / keys.length; j++)
-                        scoreTextViews[i * keys.length + j].setText(bestScores[j]);
+                for(int i = 0; i < presets.length; i++) {
+                    String[] bestScores = getBestScores(presets[i][0], presets[i][1], presets[i][2]);
+                    for(int j = 0; j < shownScores; j++)
+                        scoreTextViews[i * shownScores + j].setText(bestScores[j]);
                 }
                 int totalGameCount = preferences.getInt(prefGameTotal, 0);
                 int winGameCount = preferences.getInt(prefGameWin, 0);
@@ -278,6 +310,7 @@ public class MainActivity extends AppCompatActivity {
                 totalScoreTextView.setText(getResources().getString(R.string.scoreTotalLine, totalGameCount));
                 winScoreTextView.setText(getResources().getString(R.string.scoreWinLine, winGameCount));
                 winPercentageScoreTextView.setText(getResources().getString(R.string.scorePercentageLine, winPercentage));
+                statisticsTextView.setText(getStatisticsLine());
             }
         });
     }
@@ -315,34 +348,19 @@ public class MainActivity extends AppCompatActivity {
                 scores[1] = (TextView) winLayout.findViewById(R.id.secondScoreId);
                 scores[2] = (TextView) winLayout.findViewById(R.id.thirdScoreId);
 
-                String[] bestScores;
-                if (model.getWidth() == 9) {
+                if(model.getWidth() == 9 && model.getHeight() == 9 && model.getMines() == 10)
                     modeText.setText(getResources().getString(R.string.beginner));
-                    bestScores = getBestScores(prefScoreBeginner);
-                } else if (model.getWidth() == 16) {
+                else if(model.getWidth() == 16 && model.getHeight() == 16 && model.getMines() == 40)
                     modeText.setText(getResources().getString(R.string.intermediate));
-                    bestScores = getBestScores(prefScoreIntermediate);
-                } else {
+                else if(model.getWidth() == 30 && model.getHeight() == 16 && model.getMines() == 99)
                     modeText.setText(getResources().getString(R.string.expert));
-                    bestScores = getBestScores(prefScoreExpert);
-                }
+                else
+                    modeText.setText(getResources().getString(R.string.customMode, model.getWidth(), model.getHeight(), model.getMines()));
                 // Show the three best scores and make the new score line bold
-                boolean bold = false;
-                for(int i = 0; i < 3; i++) {
+                String[] bestScores = getBestScores(model.getWidth(), model.getHeight(), model.getMines());
+                for(int i = 0; i < shownScores; i++) {
                     scores[i].setText(bestScores[i]);
-                    String[] times = bestScores[i].substring(2).split(":");
-                    if(times.length == 2) {
-                        int min = Integer.parseInt(times[0]);
-                        int sec = Integer.parseInt(times[1]);
-                        if(min * 60 + sec == model.getElapsedTime() && !bold) {
-                            scores[i].setTypeface(null, Typeface.BOLD);
-                            bold = true;
-                        }
-                        else
-                            scores[i].setTypeface(null, Typeface.NORMAL);
-                    }
-                    else
-                        scores[i].setTypeface(null, Typeface.NORMAL);
+                    scores[i].setTypeface(null, i == newScoreRank ? Typeface.BOLD : Typeface.NORMAL);
                 }
             }
         });
@@ -444,56 +462,42 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Initialize a new grid with fresh ImageViews
+     * Start the clock of the model and show the time each time a second has passed
      */
-    private void initGrid() {
-        gridLayout.removeAllViews();
-        gridLayout.setColumnCount(model.getWidth());
-        gridLayout.setRowCount(model.getHeight());
-        for(int i = 0; i < model.getHeight(); i++) {
-            for(int j = 0; j < model.getWidth(); j++) {
-                ImageView imageView = new ImageView(this);
-                imageView.setImageResource(R.drawable.case_normale);
-                imageView.setPadding(0, 0, 0, 0);
-                imageView.setAdjustViewBounds(true);
-                imageView.setTag(i + "-" + j);
-                imageView.setOnClickListener(cellListener);
-                imageView.setOnLongClickListener(cellLongListener);
-                gridLayout.addView(imageView, i * model.getWidth() + j);
-            }
-        }
+    private void initTimer() {
+        model.startClock(SystemClock.elapsedRealtime());
+        clockHandler.removeCallbacks(clockTick);
+        clockHandler.post(clockTick);
     }
 
     /**
-     * Initialize the timer, increments the time each second
+     * Stop the clock of the model and its display
      */
-    private void initTimer() {
-        TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
-                if(!model.isPause()) {
-                    int time = model.getElapsedTime();
-                    time++;
-                    model.setElapsedTime(time);
-                    Message msg = customHandler.obtainMessage(0, time/60, time%60, timeText);
-                    customHandler.sendMessage(msg);
-                }
-            }
-        };
-        timer = new Timer();
-        timer.scheduleAtFixedRate(task, 0, 1000);
-        model.setPause(false);
+    private void stopTimer() {
+        clockHandler.removeCallbacks(clockTick);
+        model.stopClock(SystemClock.elapsedRealtime());
+        showTime(model.getElapsedTime());
     }
 
     /**
-     * Properly stop the timer
+     * Show the time, then runs again on the main thread when the next second begins
      */
-    private void stopTimer() {
-        if(timer != null) {
-            timer.cancel();
-            timer.purge();
-            timer = null;
+    private final Runnable clockTick = new Runnable() {
+        @Override
+        public void run() {
+            long elapsed = model.getElapsedMillis(SystemClock.elapsedRealtime());
+            showTime((int) (elapsed / 1000));
+            if(model.isClockRunning())
+                clockHandler.postDelayed(this, 1000 - elapsed % 1000);
         }
+    };
+
+    /**
+     * Update the time text
+     * @param time : the elapsed time in seconds
+     */
+    private void showTime(int time) {
+        timeText.setText(getResources().getString(R.string.timer, time / 60, time % 60));
     }
 
     /**
@@ -552,15 +556,51 @@ public class MainActivity extends AppCompatActivity {
             musicCursor.close();
     }
 
+    /**
+     * Writes the model in the private save file
+     */
+    private void saveModel() {
+        try {
+            OutputStream out = new BufferedOutputStream(openFileOutput(saveFile, MODE_PRIVATE));
+            try {
+                DemineurSnapshot.save(model, out);
+            } finally {
+                out.close();
+            }
+        } catch(IOException e) {
+            Log.e("MainActivity", "SaveModel exception", e);
+        }
+    }
+
+    /**
+     * Reads the model from the private save file
+     * @return the saved model, or null if there is none
+     */
+    private DemineurModel loadModel() {
+        try {
+            InputStream in = new BufferedInputStream(openFileInput(saveFile));
+            try {
+                return DemineurSnapshot.load(in);
+            } finally {
+                in.close();
+            }
+        } catch(FileNotFoundException e) {
+            return null;
+        } catch(IOException e) {
+            Log.e("MainActivity", "LoadModel exception", e);
+            return null;
+        }
+    }
+
     /**
      * Retrieves the model if it has been saved, otherwise creates a new model
      */
     private void initModel() {
+        if(preferences.contains(prefModel))
+            preferences.edit().remove(prefModel).apply(); // the JSON save format isn't read anymore
         model = (DemineurModel) getLastCustomNonConfigurationInstance();
         if(model == null) {
-            Gson gson = new Gson();
-            String json = preferences.getString(prefModel, "");
-            model = gson.fromJson(json, DemineurModel.class);
+            model = loadModel();
             if(model != null && model.isGameOver()) // Begin a new game if the old one is done or hasn't started
                 model = null;
         }
@@ -583,41 +623,148 @@ public class MainActivity extends AppCompatActivity {
      */
     private void newGame(int width, int height, int mines) {
         stopTimer();
+        stopDealing();
         model = new DemineurModel(width, height, mines);
-        initGrid();
+        boardView.setModel(model);
+        prefillBoards();
         if(preferences.getBoolean(prefAnimation, true)) {
             animation = AnimationUtils.loadAnimation(this, R.anim.move);
-            gridLayout.startAnimation(animation);
+            boardView.startAnimation(animation);
         }
         minesCountText.setText(getResources().getString(R.string.count_mines, model.getRemainingCountMines()));
-        timeText.setText(getResources().getString(R.string.timer, 0, 0));
+        showTime(0);
         flagButton.setImageResource(R.drawable.just_flag);
         if(menu != null)
             updateJokerButton();
     }
 
+    /**
+     * Replace the game not started yet by a grid of the pool fitting the (i, j) cell, or start the search
+     * of a no-guess grid if the pool has none
+     * @return true if the first move has to wait for the search, which plays it once done
+     */
+    private boolean dealGrid(int i, int j) {
+        if(model.isChunked())
+            return false; // a chunked grid is generated chunk by chunk, it can't be prepared nor checked as a whole
+        boolean noGuess = preferences.getBoolean(prefNoGuess, false);
+        MineLayout layout = boardPool.take(model.getWidth(), model.getHeight(), model.getMines(), noGuess, i, j);
+        if(layout != null)
+            replaceGrid(new DemineurModel(layout));
+        else if(noGuess) {
+            dealNoGuessGrid(i, j);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Search a grid that can be cleared without guessing from the (i, j) cell on a background thread,
+     * the (i, j) move is then played on the found grid, or on the current one if no grid is found in time
+     */
+    private void dealNoGuessGrid(final int i, final int j) {
+        if(noGuessGenerator == null || noGuessGenerator.getWidth() != model.getWidth() ||
+                noGuessGenerator.getHeight() != model.getHeight() || noGuessGenerator.getMines() != model.getMines()) {
+            if(noGuessGenerator != null)
+                noGuessGenerator.shutdown();
+            noGuessGenerator = new NoGuessGenerator(model.getWidth(), model.getHeight(), model.getMines());
+        }
+        final NoGuessGenerator generator = noGuessGenerator;
+        final DemineurModel waiting = model;
+        dealing = waiting;
+        dealProgress.setVisibility(View.VISIBLE);
+        Thread search = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Long seed = null;
+                try {
+                    seed = generator.generate(i, j, noGuessTimeout, TimeUnit.MILLISECONDS);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch(TimeoutException e) {
+                    Log.w("MainActivity", "No grid without guess found in time");
+                } catch(IllegalStateException | RejectedExecutionException e) {
+                    Log.w("MainActivity", "No-guess search stopped", e); // the generator has been shut down
+                }
+                final Long found = seed;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        finishDealing(waiting, found, i, j);
+                    }
+                });
+            }
+        }, "no-guess-deal");
+        search.setDaemon(true);
+        search.start();
+    }
+
+    /**
+     * Play the first move waiting for a no-guess grid, unless another game has been started meanwhile
+     * @param waiting : the game the search has been started for
+     * @param seed : the seed of the found grid, or null to keep the current grid
+     */
+    private void finishDealing(DemineurModel waiting, Long seed, int i, int j) {
+        if(dealing != waiting || model != waiting)
+            return;
+        stopDealing();
+        if(seed != null)
+            replaceGrid(new DemineurModel(model.getWidth(), model.getHeight(), model.getMines(), seed));
+        playMove(i, j);
+    }
+
+    /**
+     * Forget the no-guess search in progress, its result will be ignored
+     */
+    private void stopDealing() {
+        dealing = null;
+        dealProgress.setVisibility(View.GONE);
+    }
+
+    /**
+     * Replace the game not started yet by another one, keeping the joker already chosen
+     * @param grid : the new game
+     */
+    private void replaceGrid(DemineurModel grid) {
+        if(model.isSafeModeJoker())
+            grid.activateSafeModeJoker();
+        if(model.isBurstModeJoker())
+            grid.activateBurstModeJoker();
+        model = grid;
+        boardView.setModel(model);
+    }
+
+    /**
+     * Prepare grids of the current difficulty in the background
+     */
+    private void prefillBoards() {
+        if(model.isChunked())
+            return;
+        boardPool.prefill(model.getWidth(), model.getHeight(), model.getMines(), preferences.getBoolean(prefNoGuess, false));
+    }
+
     /**
      * Initialize the UI with an existing model
      */
     private void restartGame() {
-        initGrid();
-        updateGrid();
+        stopDealing();
+        boardView.setModel(model);
+        updateGameState();
         updateFlagButton();
-        int time = model.getElapsedTime();
-        Message msg = customHandler.obtainMessage(0, time/ 60, time%60, timeText);
-        customHandler.sendMessage(msg);
+        showTime(model.getElapsedTime());
     }
 
     /**
      * Show the winning dialog and replay buttons
      */
     private void win() {
+        recordGame();
         boolean updated = updateScore();
         Toast.makeText(MainActivity.this, getResources().getString(R.string.game_win), Toast.LENGTH_SHORT).show();
         SharedPreferences.Editor edit = preferences.edit();
         edit.putInt(prefGameWin, preferences.getInt(prefGameWin, 0) + 1);
         edit.putInt(prefGameTotal, preferences.getInt(prefGameTotal, 0) + 1);
         edit.apply();
+        prefillBoards(); // while the dialogs are up
         if(updated)
             winDialog.show();
         else
@@ -630,90 +777,173 @@ public class MainActivity extends AppCompatActivity {
     private void lose() {
         if(preferences.getBoolean(prefAnimation, true)) {
             animation = AnimationUtils.loadAnimation(this, R.anim.explosion);
-            gridLayout.startAnimation(animation);
+            boardView.startAnimation(animation);
         }
         if(preferences.getBoolean(prefVibration, true)) {
             Vibrator vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
             vibrator.vibrate(500);
         }
         preferences.edit().putInt(prefGameTotal, preferences.getInt(prefGameTotal, 0) + 1).apply();
+        recordGame();
+        prefillBoards();
     }
 
     /**
      * Update high score
-     * @return true if scores have been updated
+     * @return true if the time is among the shown best scores of the grid configuration
      */
     private boolean updateScore() {
-        String key = null;
-        if(model.getWidth() == 9 && model.getHeight() == 9 && model.getMines() == 10) {
-            key = prefScoreBeginner;
+        newScoreRank = leaderboard.add(model.getWidth(), model.getHeight(), model.getMines(), model.getElapsedMillis(SystemClock.elapsedRealtime()));
+        if(newScoreRank < 0)
+            return false;
+        saveLeaderboard();
+        return newScoreRank < shownScores;
+    }
+
+    /**
+     * Format the best scores of a grid configuration
+     * @return the string array containing the three best scores of the configuration
+     */
+    private String[] getBestScores(int width, int height, int mines) {
+        String[] result = new String[shownScores];
+        int count = leaderboard.getCount(width, height, mines);
+        for(int i = 0; i < shownScores; i++) {
+            if(i < count) {
+                int time = leaderboard.getTime(width, height, mines, i);
+                result[i] = getResources().getString(R.string.scoreTime, time / 60000, time / 1000 % 60, time % 1000);
+            }
+            else
+                result[i] = getResources().getString(R.string.noScore);
         }
-        else if(model.getWidth() == 16 && model.getHeight() == 16 && model.getMines() == 40) {
-            key = prefScoreIntermediate;
+        return result;
+    }
+
+    /**
+     * Reads the leaderboard from its private file, and moves there the scores saved as strings by the previous versions
+     */
+    private void initLeaderboard() {
+        try {
+            InputStream in = new BufferedInputStream(openFileInput(scoreFile));
+            try {
+                leaderboard = Leaderboard.load(in);
+            } finally {
+                in.close();
+            }
+        } catch(FileNotFoundException e) {
+            leaderboard = new Leaderboard(Leaderboard.DEFAULT_CAPACITY);
+        } catch(IOException e) {
+            Log.e("MainActivity", "LoadLeaderboard exception", e);
+            leaderboard = new Leaderboard(Leaderboard.DEFAULT_CAPACITY);
         }
-        else if(model.getWidth() == 30 && model.getHeight() == 16 && model.getMines() == 99) {
-            key = prefScoreExpert;
+        String[] keys = {prefScoreBeginner, prefScoreIntermediate, prefScoreExpert};
+        boolean migrated = false;
+        for(int i = 0; i < keys.length; i++) {
+            Set<String> scores = preferences.getStringSet(keys[i], null);
+            if(scores == null)
+                continue;
+            for(String score : scores)
+                leaderboard.add(presets[i][0], presets[i][1], presets[i][2], Integer.parseInt(score) * 1000L);
+            preferences.edit().remove(keys[i]).apply();
+            migrated = true;
         }
-        if(key == null)
-            return false;
-        String newScore = model.getElapsedTime() + "";
-        Set<String> score = preferences.getStringSet(key, null);
-        TreeSet<String> orderedScore = new TreeSet<>(new Comparator<String>(){
-            public int compare(String a, String b){
-                return Integer.valueOf(a).compareTo(Integer.valueOf(b));
+        if(migrated)
+            saveLeaderboard();
+    }
+
+    /**
+     * Reads the statistics from their private file, or rebuilds them from the games log if the file can't be read
+     */
+    private void initStatistics() {
+        try {
+            InputStream in = new BufferedInputStream(openFileInput(statisticsFile));
+            try {
+                statistics = GameStatistics.load(in);
+                return;
+            } finally {
+                in.close();
             }
-        });
-        if(score == null)
-            orderedScore.add(newScore);
-        else {
-            orderedScore.addAll(score);
-            if(orderedScore.size() == 3 ) {
-                String higher = orderedScore.higher(newScore);
-                if(higher != null) {
-                    if(!orderedScore.contains(newScore)) {
-                        orderedScore.remove(orderedScore.last());
-                        orderedScore.add(newScore);
-                    }
-                }
-                else
-                    return false;
+        } catch(FileNotFoundException e) {
+            statistics = new GameStatistics();
+        } catch(IOException e) {
+            Log.e("MainActivity", "LoadStatistics exception", e);
+        }
+        try {
+            InputStream in = new BufferedInputStream(openFileInput(gamesLogFile));
+            try {
+                statistics = GameStatistics.rebuild(in);
+            } finally {
+                in.close();
             }
-            else
-                orderedScore.add(newScore);
+        } catch(FileNotFoundException e) {
+            statistics = new GameStatistics();
+        } catch(IOException e) {
+            Log.e("MainActivity", "RebuildStatistics exception", e);
+            statistics = new GameStatistics();
         }
-        preferences.edit().putStringSet(key, orderedScore).apply();
-        return true;
     }
 
     /**
-     * Update the given mode score displayed in the score dialog
-     * @param key : the mode key
-     * @return the string array containing the three best scores in the given mode
+     * Appends the finished game to the games log and updates the statistics
      */
-    private String[] getBestScores(String key) {
-        Set<String> scores = preferences.getStringSet(key, null);
-        String[] result = new String[3];
-        if(scores == null)
-            for(int i = 0; i < 3; i++)
-                result[i] = getResources().getString(R.string.noScore);
-        else {
-            TreeSet<String> orderedScore = new TreeSet<>(new Comparator<String>(){
-                public int compare(String a, String b){
-                    return Integer.valueOf(a).compareTo(Integer.valueOf(b));
-                }
-            });
-            orderedScore.addAll(scores);
-            int i = 0;
-            for(String score : orderedScore) {
-                int intScore = Integer.parseInt(score);
-                result[i] = getResources().getString(R.string.timer, intScore / 60, intScore % 60);
-                i++;
+    private void recordGame() {
+        GameRecord record = GameRecord.of(model, model.getElapsedMillis(SystemClock.elapsedRealtime()), System.currentTimeMillis());
+        statistics.add(record);
+        try {
+            OutputStream out = openFileOutput(gamesLogFile, MODE_APPEND);
+            try {
+                GameStatistics.append(record, out);
+            } finally {
+                out.close();
             }
-            for(; i < 3; i++) {
-               result[i] = getResources().getString(R.string.noScore);
+        } catch(IOException e) {
+            Log.e("MainActivity", "RecordGame exception", e);
+        }
+        saveStatistics();
+    }
+
+    /**
+     * Writes the statistics in their private file
+     */
+    private void saveStatistics() {
+        try {
+            OutputStream out = new BufferedOutputStream(openFileOutput(statisticsFile, MODE_PRIVATE));
+            try {
+                statistics.save(out);
+            } finally {
+                out.close();
             }
+        } catch(IOException e) {
+            Log.e("MainActivity", "SaveStatistics exception", e);
+        }
+    }
+
+    /**
+     *
+     * @return the statistics line of the current grid configuration
+     */
+    private String getStatisticsLine() {
+        int width = model.getWidth();
+        int height = model.getHeight();
+        int mines = model.getMines();
+        long median = statistics.getPercentileTime(width, height, mines, 0.5);
+        return getResources().getString(R.string.scoreStatisticsLine, width, height, mines, median / 60000, median / 1000 % 60,
+                statistics.getMeanThreeBVPerSecond(width, height, mines), 100 * statistics.getMeanEfficiency(width, height, mines));
+    }
+
+    /**
+     * Writes the leaderboard in its private file
+     */
+    private void saveLeaderboard() {
+        try {
+            OutputStream out = new BufferedOutputStream(openFileOutput(scoreFile, MODE_PRIVATE));
+            try {
+                leaderboard.save(out);
+            } finally {
+                out.close();
+            }
+        } catch(IOException e) {
+            Log.e("MainActivity", "SaveLeaderboard exception", e);
         }
-        return result;
     }
 
     @Override
@@ -748,6 +978,9 @@ public class MainActivity extends AppCompatActivity {
             case R.id.newExpertMenuId:
                 newGame(30, 16, 99);
                 return true;
+            case R.id.newMarathonMenuId:
+                newGame(marathon[0], marathon[1], marathon[2]);
+                return true;
             case R.id.newRandomMenuId:
                 Random rand = new Random();
                 int width = rand.nextInt(DemineurModel.MAX_WIDTH - DemineurModel.MIN_WIDTH) + DemineurModel.MIN_WIDTH;
@@ -870,40 +1103,44 @@ public class MainActivity extends AppCompatActivity {
     /**
      * The cells click listener
      */
-    View.OnClickListener cellListener = new View.OnClickListener(){
+    BoardView.OnCellClickListener cellListener = new BoardView.OnCellClickListener() {
         @Override
-        public void onClick(View v) {
-            ImageView imageView = (ImageView) v;
-            String[] position = ((String) imageView.getTag()).split("-");
-            int i = Integer.parseInt(position[0] + "");
-            int j = Integer.parseInt(position[1] + "");
-            model.move(i, j);
-            updateJokerButton();
-            if(timer == null)
-                initTimer(); // the cloak starts after the first move
-            updateGrid();
+        public void onCellClick(int i, int j) {
+            if(model.isLost() || model.isWon())
+                return; // the grid is frozen once the game is over
+            if(dealing == model)
+                return; // the first move is played once the no-guess grid is found
+            if(!model.isGenerated() && !model.isFlagMode() && dealGrid(i, j))
+                return;
+            playMove(i, j);
         }
 
-    };
-
-    /**
-     * The cells long click listener
-     */
-    View.OnLongClickListener cellLongListener = new View.OnLongClickListener() {
         @Override
-        public boolean onLongClick(View v) {
+        public void onCellLongClick(int i, int j) {
+            if(model.isLost() || model.isWon())
+                return;
             boolean flag = model.isFlagMode();
             model.setFlagMode(true);
-            v.performClick();
+            onCellClick(i, j);
             model.setFlagMode(flag);
             if(preferences.getBoolean(prefVibration, true)) {
                 Vibrator vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
                 vibrator.vibrate(50);
             }
-            return true;
         }
     };
 
+    /**
+     * Play in the (i, j) cell and update the screen
+     */
+    private void playMove(int i, int j) {
+        ChangeSet changes = model.move(i, j);
+        updateJokerButton();
+        if(!model.isClockRunning())
+            initTimer(); // the clock starts after the first move
+        updateGrid(changes);
+    }
+
     /**
      * Update the flag button icon
      */
@@ -961,71 +1198,14 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Update the grid depending on the current model state
+     * Update only the cells changed by the last move
+     * @param changes : the changes returned by the model
      */
-    private void updateGrid() {
-        minesCountText.setText(getResources().getString(R.string.count_mines, model.getRemainingCountMines()));
-        for(int i = 0; i < model.getHeight(); i++) {
-            for (int j = 0; j < model.getWidth(); j++) {
-                ImageView imageView = (ImageView) gridLayout.getChildAt(i * model.getWidth() + j);
-                if(model.isMarked(i, j))
-                    imageView.setImageResource(R.drawable.case_marquee_minee);
-                else if(!model.isDiscovered(i, j)) {
-                    imageView.setImageResource(R.drawable.case_normale);
-                }
-                else {
-                    switch(model.getCell(i, j)) {
-                        case MINE:
-                            //assert(false);
-                        case EMPTY:
-                            imageView.setImageResource(R.drawable.case_0);
-                            break;
-                        case ONE:
-                            imageView.setImageResource(R.drawable.case_1);
-                            break;
-                        case TWO:
-                            imageView.setImageResource(R.drawable.case_2);
-                            break;
-                        case THREE:
-                            imageView.setImageResource(R.drawable.case_3);
-                            break;
-                        case FOUR:
-                            imageView.setImageResource(R.drawable.case_4);
-                            break;
-                        case FIVE:
-                            imageView.setImageResource(R.drawable.case_5);
-                            break;
-                        case SIX:
-                            imageView.setImageResource(R.drawable.case_6);
-                            break;
-                        case SEVEN:
-                            imageView.setImageResource(R.drawable.case_7);
-                            break;
-                        case EIGHT:
-                            imageView.setImageResource(R.drawable.case_8);
-                            break;
-                    }
-                }
-                if((model.isLost() || model.isWon()) ) {
-                    stopTimer();
-                    if(model.getCell(i, j) == DemineurModel.Cell.MINE) {
-                        if (!model.isDiscovered(i, j)) {
-                            if (model.isMarked(i, j))
-                                imageView.setImageResource(R.drawable.case_mine_trouvee); // the player put a flag on a cell that is a mine
-                            else
-                                imageView.setImageResource(R.drawable.case_mine); // show all the mines if the game is over
-                        }
-                        else
-                            imageView.setImageResource(R.drawable.case_mine_explosee); // the player lost here
-                    }
-                    else {
-                        if(model.isMarked(i, j))
-                            imageView.setImageResource(R.drawable.wrong_flag); // the player put a flag on a cell that is not a mine
-                    }
-                    imageView.setEnabled(false);
-                }
-            }
-        }
+    private void updateGrid(ChangeSet changes) {
+        boardView.invalidateCells(changes);
+        updateGameState();
+        // the moves are only played on a running game, so it has just ended and is recorded once,
+        // not again when a finished game is shown after a rotation
         if (model.isWon()) {
             win();
         }
@@ -1033,4 +1213,13 @@ public class MainActivity extends AppCompatActivity {
             lose();
         }
     }
+
+    /**
+     * Update the mines count and stop the clock if the game is over
+     */
+    private void updateGameState() {
+        minesCountText.setText(getResources().getString(R.string.count_mines, model.getRemainingCountMines()));
+        if(model.isLost() || model.isWon())
+            stopTimer();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.android.demineur.benchmark;
+
+import com.android.demineur.DemineurModel;
+
+/**
+ * Grids shared by the benchmarks, described as "width x height x mines"
+ */
+final class Boards {
+
+    /**
+     * Seed of every benchmarked grid, so each run measures the same boards
+     */
+    static final long SEED = 42;
+
+    /**
+     * Number of boards prepared before an iteration of a benchmark whose move lasts a few microseconds,
+     * each board can only take the move once so they are all played in a single timed invocation
+     */
+    static final int BATCH = 64;
+
+    private Boards() {
+    }
+
+    /**
+     * Creates a model whose grid hasn't been generated yet
+     * @param config : the grid description, for example "30x16x99"
+     * @return the new model
+     */
+    static DemineurModel create(String config) {
+        String[] values = config.split("x");
+        return new DemineurModel(Integer.parseInt(values[0]), Integer.parseInt(values[1]), Integer.parseInt(values[2]), SEED);
+    }
+
+    /**
+     * Creates a model and generates its grid around the center cell without discovering anything.
+     * The center cell is flagged then unflagged, which triggers the generation but leaves the grid untouched
+     * @param config : the grid description
+     * @return the model with a generated grid
+     */
+    static DemineurModel generate(String config) {
+        DemineurModel model = create(config);
+        int i = model.getHeight() / 2;
+        int j = model.getWidth() / 2;
+        model.setFlagMode(true);
+        model.move(i, j);
+        model.move(i, j);
+        model.setFlagMode(false);
+        return model;
+    }
+
+    /**
+     * Creates a batch of models with generated grids, all the same as generate(config)
+     * @param config : the grid description
+     * @param count : the number of models
+     * @return the models
+     */
+    static DemineurModel[] generate(String config, int count) {
+        DemineurModel models[] = new DemineurModel[count];
+        for(int k = 0; k < count; k++)
+            models[k] = generate(config);
+        return models;
+    }
+}
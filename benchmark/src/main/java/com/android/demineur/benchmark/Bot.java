@@ -0,0 +1,20 @@
+package com.android.demineur.benchmark;
+
+import com.android.demineur.DemineurModel;
+
+import java.util.Random;
+
+/**
+ * Strategy of the simulated player.
+ * Each worker thread has its own bot, which plays every game of the worker on the same model
+ */
+interface Bot {
+
+    /**
+     * Plays a new game until it is over
+     * @param model : the game, reset since the previous game of the worker
+     * @param random : the random generator of the worker, for the guesses
+     * @return the number of guesses made, the first move excluded
+     */
+    int play(DemineurModel model, Random random);
+}
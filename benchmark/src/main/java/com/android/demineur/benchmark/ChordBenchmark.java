@@ -0,0 +1,97 @@
+package com.android.demineur.benchmark;
+
+import com.android.demineur.ChangeSet;
+import com.android.demineur.DemineurModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Move on a discovered number whose mines are all flagged, which discovers its other neighbours.
+ * Each iteration is a single invocation chording on Boards.BATCH grids prepared before it
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 50)
+@Measurement(iterations = 50)
+public class ChordBenchmark {
+
+    @Param({"9x9x10", "16x16x40", "30x16x99", "100x100x2000", "1000x1000x200000"})
+    public String config;
+
+    private DemineurModel models[];
+
+    /**
+     * Cell index of the chord move of each grid
+     */
+    private final int chords[] = new int[Boards.BATCH];
+
+    /**
+     * Opens the grids, then flags the mines around the first opened number that still has hidden safe neighbours
+     */
+    @Setup(Level.Iteration)
+    public void prepare() {
+        models = Boards.generate(config, Boards.BATCH);
+        for(int k = 0; k < models.length; k++)
+            chords[k] = prepare(models[k]);
+    }
+
+    private int prepare(DemineurModel model) {
+        ChangeSet changes = model.move(model.getHeight() / 2, model.getWidth() / 2);
+        int width = model.getWidth();
+        for(int k = 0; k < changes.size(); k++) {
+            // The flag moves reuse the change set, the cell is read before them
+            int cell = changes.get(k);
+            int i = cell / width;
+            int j = cell % width;
+            if(model.getCell(i, j) != DemineurModel.Cell.EMPTY && hasHiddenSafeNeighbour(model, i, j)) {
+                flagAdjacentMines(model, i, j);
+                return cell;
+            }
+        }
+        throw new IllegalStateException("No cell to chord on " + config);
+    }
+
+    private static boolean hasHiddenSafeNeighbour(DemineurModel model, int i, int j) {
+        for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, model.getHeight() - 1); m++) {
+            for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, model.getWidth() - 1); n++) {
+                if(!model.isDiscovered(m, n) && model.getCell(m, n) != DemineurModel.Cell.MINE)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static void flagAdjacentMines(DemineurModel model, int i, int j) {
+        model.setFlagMode(true);
+        for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, model.getHeight() - 1); m++) {
+            for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, model.getWidth() - 1); n++) {
+                if(model.getCell(m, n) == DemineurModel.Cell.MINE)
+                    model.move(m, n);
+            }
+        }
+        model.setFlagMode(false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Boards.BATCH)
+    public int chord() {
+        int opened = 0;
+        for(int k = 0; k < models.length; k++)
+            opened += models[k].move(chords[k] / models[k].getWidth(), chords[k] % models[k].getWidth()).size();
+        return opened;
+    }
+}
@@ -0,0 +1,82 @@
+package com.android.demineur.benchmark;
+
+import com.android.demineur.DemineurModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening of an empty region on grids with about 1% of mines, so the first move opens most of the grid,
+ * without the generation cost.
+ * Each iteration is a single invocation playing on grids generated before it, so the timing doesn't include
+ * the setup of a fresh grid for every move
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FloodFillBenchmark {
+
+    /**
+     * Grids opened in a few microseconds, played by batches of Boards.BATCH grids
+     */
+    @State(Scope.Thread)
+    public static class SmallGrids {
+
+        @Param({"9x9x2", "16x16x3", "30x16x5", "100x100x100"})
+        public String config;
+
+        DemineurModel models[];
+
+        @Setup(Level.Iteration)
+        public void generate() {
+            models = Boards.generate(config, Boards.BATCH);
+        }
+    }
+
+    /**
+     * Grids whose opening lasts long enough to be timed alone, and takes too much memory to prepare a batch
+     */
+    @State(Scope.Thread)
+    public static class LargeGrids {
+
+        @Param({"1000x1000x10000", "4000x4000x1500"})
+        public String config;
+
+        DemineurModel model;
+
+        @Setup(Level.Iteration)
+        public void generate() {
+            model = Boards.generate(config);
+        }
+    }
+
+    @Benchmark
+    @Warmup(iterations = 50)
+    @Measurement(iterations = 50)
+    @OperationsPerInvocation(Boards.BATCH)
+    public int open(SmallGrids grids) {
+        int opened = 0;
+        for(DemineurModel model : grids.models)
+            opened += model.move(model.getHeight() / 2, model.getWidth() / 2).size();
+        return opened;
+    }
+
+    @Benchmark
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public int openLarge(LargeGrids grids) {
+        DemineurModel model = grids.model;
+        return model.move(model.getHeight() / 2, model.getWidth() / 2).size();
+    }
+}
@@ -0,0 +1,40 @@
+package com.android.demineur.benchmark;
+
+import com.android.demineur.DemineurModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Model construction and first move, which places the mines and opens the first region
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GenerationBenchmark {
+
+    /**
+     * Beginner, intermediate and expert grids, then large custom grids with the expert density
+     */
+    @Param({"9x9x10", "16x16x40", "30x16x99", "100x100x2000", "1000x1000x200000"})
+    public String config;
+
+    @Benchmark
+    public DemineurModel construct() {
+        return Boards.create(config);
+    }
+
+    @Benchmark
+    public DemineurModel firstMove() {
+        DemineurModel model = Boards.create(config);
+        model.move(model.getHeight() / 2, model.getWidth() / 2);
+        return model;
+    }
+}
@@ -0,0 +1,89 @@
+package com.android.demineur.benchmark;
+
+import com.android.demineur.ChangeSet;
+import com.android.demineur.DemineurModel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Safe and burst joker moves on a hidden cell of an opened grid.
+ * Each iteration is a single invocation playing the joker on Boards.BATCH grids prepared before it
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 50)
+@Measurement(iterations = 50)
+public class JokerBenchmark {
+
+    @Param({"9x9x10", "16x16x40", "30x16x99", "100x100x2000", "1000x1000x200000"})
+    public String config;
+
+    private DemineurModel models[];
+
+    /**
+     * Cell index of the joker move of each grid
+     */
+    private final int hidden[] = new int[Boards.BATCH];
+
+    /**
+     * Opens the grids and picks a hidden safe cell next to the opened region
+     */
+    @Setup(Level.Iteration)
+    public void prepare() {
+        models = Boards.generate(config, Boards.BATCH);
+        for(int k = 0; k < models.length; k++)
+            hidden[k] = prepare(models[k]);
+    }
+
+    private int prepare(DemineurModel model) {
+        ChangeSet changes = model.move(model.getHeight() / 2, model.getWidth() / 2);
+        int width = model.getWidth();
+        for(int k = 0; k < changes.size(); k++) {
+            int i = changes.get(k) / width;
+            int j = changes.get(k) % width;
+            for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, model.getHeight() - 1); m++) {
+                for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++) {
+                    if(!model.isDiscovered(m, n) && model.getCell(m, n) != DemineurModel.Cell.MINE)
+                        return m * width + n;
+                }
+            }
+        }
+        throw new IllegalStateException("No hidden cell on " + config);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Boards.BATCH)
+    public int safeJoker() {
+        int changed = 0;
+        for(int k = 0; k < models.length; k++) {
+            models[k].activateSafeModeJoker();
+            changed += models[k].move(hidden[k] / models[k].getWidth(), hidden[k] % models[k].getWidth()).size();
+        }
+        return changed;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Boards.BATCH)
+    public int burstJoker() {
+        int changed = 0;
+        for(int k = 0; k < models.length; k++) {
+            models[k].activateBurstModeJoker();
+            changed += models[k].move(hidden[k] / models[k].getWidth(), hidden[k] % models[k].getWidth()).size();
+        }
+        return changed;
+    }
+}
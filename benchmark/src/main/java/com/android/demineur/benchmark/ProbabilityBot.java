@@ -0,0 +1,26 @@
+package com.android.demineur.benchmark;
+
+import com.android.demineur.DemineurModel;
+import com.android.demineur.MineProbability;
+
+import java.util.Random;
+
+/**
+ * Plays like SolverBot, but guesses the cell least likely to be a mine
+ */
+class ProbabilityBot extends SolverBot {
+
+    private MineProbability probability;
+    private DemineurModel computed;
+
+    @Override
+    protected int guess(DemineurModel model, Random random) {
+        if(model != computed) {
+            probability = new MineProbability(model);
+            computed = model;
+        }
+        if(!probability.compute())
+            return super.guess(model, random);
+        return probability.getSafestCell();
+    }
+}
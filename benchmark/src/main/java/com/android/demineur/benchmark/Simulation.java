@@ -0,0 +1,75 @@
+package com.android.demineur.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Plays many games with a bot on every core and reports the win rate of each difficulty.
+ * Arguments, all optional: -games N, -strategy solver|probability, -threads N, -seed N, then grid descriptions
+ * such as 30x16x99, the three presets by default.
+ * For example ./gradlew :benchmark:simulate -PsimArgs="-games 1000000 16x16x40"
+ */
+public final class Simulation {
+
+    /**
+     * Strategies of the simulated player
+     */
+    enum Strategy {
+        SOLVER {
+            @Override
+            Bot create() {
+                return new SolverBot();
+            }
+        },
+        PROBABILITY {
+            @Override
+            Bot create() {
+                return new ProbabilityBot();
+            }
+        };
+
+        abstract Bot create();
+    }
+
+    private static final String[] PRESETS = {"9x9x10", "16x16x40", "30x16x99"};
+
+    private Simulation() {
+    }
+
+    public static void main(String[] args) {
+        long games = 100000;
+        Strategy strategy = Strategy.SOLVER;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 0;
+        List<String> configs = new ArrayList<>();
+        for(int k = 0; k < args.length; k++) {
+            switch(args[k]) {
+                case "-games": games = Long.parseLong(args[++k]); break;
+                case "-strategy": strategy = Strategy.valueOf(args[++k].toUpperCase(Locale.ROOT)); break;
+                case "-threads": threads = Integer.parseInt(args[++k]); break;
+                case "-seed": seed = Long.parseLong(args[++k]); break;
+                default: configs.add(args[k]); break;
+            }
+        }
+        if(configs.isEmpty()) {
+            for(String preset : PRESETS)
+                configs.add(preset);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        System.out.println(String.format(Locale.ROOT, "%d games per grid, %s bot, %d threads", games, strategy.name().toLowerCase(Locale.ROOT), threads));
+        for(String config : configs) {
+            String[] values = config.split("x");
+            int width = Integer.parseInt(values[0]);
+            int height = Integer.parseInt(values[1]);
+            int mines = Integer.parseInt(values[2]);
+            long start = System.nanoTime();
+            SimulationResult result = pool.invoke(new SimulationTask(width, height, mines, strategy, seed, 0, games));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format(Locale.ROOT, "%-10s won %6.2f%%  %.2f guesses/game  %.0f games/s",
+                    config, 100 * result.getWinRate(), (double) result.guesses / result.games, result.games / seconds));
+        }
+        pool.shutdown();
+    }
+}
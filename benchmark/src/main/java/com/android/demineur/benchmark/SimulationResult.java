@@ -0,0 +1,32 @@
+package com.android.demineur.benchmark;
+
+/**
+ * Counters of simulated games, filled by one task then merged when the tasks are joined
+ */
+final class SimulationResult {
+
+    long games;
+
+    long wins;
+
+    /**
+     * Guesses made by the bots, the first moves excluded
+     */
+    long guesses;
+
+    /**
+     * Adds the counters of another task
+     * @param other : the result of the other task
+     * @return this result
+     */
+    SimulationResult merge(SimulationResult other) {
+        games += other.games;
+        wins += other.wins;
+        guesses += other.guesses;
+        return this;
+    }
+
+    double getWinRate() {
+        return games == 0 ? 0 : (double) wins / games;
+    }
+}
@@ -0,0 +1,105 @@
+package com.android.demineur.benchmark;
+
+import com.android.demineur.DemineurModel;
+
+import java.util.Random;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays a range of games, split in halves until the range is small enough for one worker.
+ * Game k always uses the k-th seed of the base series, so a run gives the same results whatever the number of cores
+ */
+final class SimulationTask extends RecursiveTask<SimulationResult> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of games played by a task without splitting it
+     */
+    private static final int THRESHOLD = 64;
+
+    /**
+     * Model, bot and random generator of each worker thread, reused by all the games of the thread
+     */
+    private static final ThreadLocal<Worker> WORKERS = new ThreadLocal<>();
+
+    private final int width;
+
+    private final int height;
+
+    private final int mines;
+
+    private final Simulation.Strategy strategy;
+
+    private final long base;
+
+    private final long from;
+
+    private final long to;
+
+    SimulationTask(int width, int height, int mines, Simulation.Strategy strategy, long base, long from, long to) {
+        this.width = width;
+        this.height = height;
+        this.mines = mines;
+        this.strategy = strategy;
+        this.base = base;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected SimulationResult compute() {
+        if(to - from > THRESHOLD) {
+            long middle = (from + to) >>> 1;
+            SimulationTask left = new SimulationTask(width, height, mines, strategy, base, from, middle);
+            SimulationTask right = new SimulationTask(width, height, mines, strategy, base, middle, to);
+            left.fork();
+            SimulationResult result = right.compute();
+            return result.merge(left.join());
+        }
+        Worker worker = getWorker();
+        SimulationResult result = new SimulationResult();
+        for(long k = from; k < to; k++) {
+            long seed = DemineurModel.getSeriesSeed(base, k);
+            worker.model.reset(seed);
+            worker.random.setSeed(~seed);
+            result.guesses += worker.bot.play(worker.model, worker.random);
+            result.games++;
+            if(worker.model.isWon())
+                result.wins++;
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @return the worker of the current thread, created again if its model doesn't match this task
+     */
+    private Worker getWorker() {
+        Worker worker = WORKERS.get();
+        if(worker == null || worker.strategy != strategy || worker.model.getWidth() != width ||
+                worker.model.getHeight() != height || worker.model.getMines() != mines) {
+            worker = new Worker(new DemineurModel(width, height, mines, base), strategy);
+            WORKERS.set(worker);
+        }
+        return worker;
+    }
+
+    private static final class Worker {
+
+        final DemineurModel model;
+
+        final Simulation.Strategy strategy;
+
+        final Bot bot;
+
+        final Random random;
+
+        Worker(DemineurModel model, Simulation.Strategy strategy) {
+            this.model = model;
+            this.strategy = strategy;
+            this.bot = strategy.create();
+            this.random = new Random();
+        }
+    }
+}
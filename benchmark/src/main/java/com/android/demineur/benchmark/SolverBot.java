@@ -0,0 +1,63 @@
+package com.android.demineur.benchmark;
+
+import com.android.demineur.DemineurModel;
+import com.android.demineur.DemineurSolver;
+
+import java.util.Random;
+
+/**
+ * Plays the centre first, then every deduction of the solver, and a random hidden cell when it is stuck
+ */
+class SolverBot implements Bot {
+
+    /**
+     * Solver of the model of the last game, reused while the worker keeps the same model
+     */
+    private DemineurSolver solver;
+    private DemineurModel solved;
+
+    @Override
+    public int play(DemineurModel model, Random random) {
+        if(model != solved) {
+            solver = new DemineurSolver(model);
+            solved = model;
+        }
+        int width = model.getWidth();
+        solver.reset();
+        solver.update(model.move(model.getHeight() / 2, width / 2));
+        int guesses = 0;
+        while(!model.isLost() && !model.isWon()) {
+            if(solver.solve()) {
+                model.setFlagMode(true);
+                for(int k = 0; k < solver.getMineCount(); k++)
+                    solver.update(model.move(solver.getMine(k) / width, solver.getMine(k) % width));
+                model.setFlagMode(false);
+                for(int k = 0; k < solver.getSafeCount(); k++) {
+                    int cell = solver.getSafe(k);
+                    if(!model.isDiscovered(cell / width, cell % width))
+                        solver.update(model.move(cell / width, cell % width));
+                }
+            }
+            else {
+                int cell = guess(model, random);
+                solver.update(model.move(cell / width, cell % width));
+                guesses++;
+            }
+        }
+        return guesses;
+    }
+
+    /**
+     *
+     * @return the hidden unmarked cell to play when no deduction is left
+     */
+    protected int guess(DemineurModel model, Random random) {
+        int width = model.getWidth();
+        int cells = width * model.getHeight();
+        int cell;
+        do {
+            cell = random.nextInt(cells);
+        } while(model.isDiscovered(cell / width, cell % width) || model.isMarked(cell / width, cell % width));
+        return cell;
+    }
+}
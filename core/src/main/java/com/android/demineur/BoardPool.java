@@ -0,0 +1,170 @@
+package com.android.demineur;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Grids generated ahead of time for each difficulty, on a low priority background thread,
+ * so that the first move only has to apply a layout already made
+ */
+public final class BoardPool {
+
+    /**
+     * Number of layouts kept for each difficulty
+     */
+    private final int capacity;
+
+    /**
+     * Layouts ready for each difficulty, by key
+     */
+    private final Map<String, Deque<MineLayout>> layouts;
+
+    /**
+     * True for each difficulty being filled by the background thread, claimed by compareAndSet so a single
+     * fill is queued per difficulty
+     */
+    private final Map<String, AtomicBoolean> filling;
+
+    private final ExecutorService filler;
+
+    private final Random random;
+
+    /**
+     * Construct an empty pool, filled on demand by prefill
+     * @param capacity : the number of layouts kept for each difficulty
+     */
+    public BoardPool(int capacity) {
+        this.capacity = capacity;
+        this.layouts = new HashMap<>();
+        this.filling = new HashMap<>();
+        this.random = new Random();
+        this.filler = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "board-pool");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Generates layouts in the background until the difficulty has as many layouts as the capacity of the pool
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     * @param noGuess : true for grids that can be cleared without guessing
+     */
+    public void prefill(final int width, final int height, final int mines, final boolean noGuess) {
+        final String key = getKey(width, height, mines, noGuess);
+        final AtomicBoolean flag = getFilling(key);
+        if(!flag.compareAndSet(false, true))
+            return;
+        filler.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while(size(width, height, mines, noGuess) < capacity && !Thread.currentThread().isInterrupted()) {
+                        MineLayout layout = generate(width, height, mines, noGuess);
+                        synchronized(BoardPool.this) {
+                            getLayouts(key).add(layout);
+                        }
+                    }
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    flag.set(false);
+                }
+                // a layout taken between the last size check and the release of the flag found the fill running
+                if(size(width, height, mines, noGuess) < capacity && !Thread.currentThread().isInterrupted())
+                    prefill(width, height, mines, noGuess);
+            }
+        });
+    }
+
+    /**
+     * Takes a layout fitting the first move, and refills the difficulty in the background
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     * @param noGuess : true for grids that can be cleared without guessing
+     * @param i : the row of the first move
+     * @param j : the column of the first move
+     * @return the layout, or null if none of the ready layouts fits the first move
+     */
+    public MineLayout take(int width, int height, int mines, boolean noGuess, int i, int j) {
+        MineLayout found = null;
+        synchronized(this) {
+            Iterator<MineLayout> iterator = getLayouts(getKey(width, height, mines, noGuess)).iterator();
+            while(iterator.hasNext() && found == null) {
+                MineLayout layout = iterator.next();
+                if(layout.getSymmetry(i * width + j) >= 0) {
+                    iterator.remove();
+                    found = layout;
+                }
+            }
+        }
+        prefill(width, height, mines, noGuess);
+        return found;
+    }
+
+    /**
+     *
+     * @return the number of layouts ready for the difficulty
+     */
+    public synchronized int size(int width, int height, int mines, boolean noGuess) {
+        return getLayouts(getKey(width, height, mines, noGuess)).size();
+    }
+
+    /**
+     * Stops the background thread, the pool can't be filled afterwards
+     */
+    public void shutdown() {
+        filler.shutdownNow();
+    }
+
+    /**
+     * Generates a layout from the centre of the grid, which gives no-guess layouts the widest openings
+     * @throws InterruptedException if the thread is interrupted while looking for a no-guess grid
+     */
+    private MineLayout generate(int width, int height, int mines, boolean noGuess) throws InterruptedException {
+        int origin = (height / 2) * width + width / 2;
+        long seed = random.nextLong();
+        if(noGuess) {
+            while(!NoGuessGenerator.isSolvable(new DemineurModel(width, height, mines, seed), origin / width, origin % width))
+                seed = random.nextLong();
+        }
+        return MineLayout.create(width, height, mines, seed, origin, noGuess);
+    }
+
+    private synchronized AtomicBoolean getFilling(String key) {
+        AtomicBoolean flag = filling.get(key);
+        if(flag == null) {
+            flag = new AtomicBoolean();
+            filling.put(key, flag);
+        }
+        return flag;
+    }
+
+    private Deque<MineLayout> getLayouts(String key) {
+        Deque<MineLayout> deque = layouts.get(key);
+        if(deque == null) {
+            deque = new ArrayDeque<>();
+            layouts.put(key, deque);
+        }
+        return deque;
+    }
+
+    private static String getKey(int width, int height, int mines, boolean noGuess) {
+        return width + "x" + height + "x" + mines + (noGuess ? "/no-guess" : "");
+    }
+}
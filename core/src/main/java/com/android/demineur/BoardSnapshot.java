@@ -0,0 +1,140 @@
+package com.android.demineur;
+
+/**
+ * Immutable state of a grid as of the end of a move, published by the model for readers on other threads
+ * such as solvers and renderers, or built on demand for the thread playing the game. Reading a snapshot never takes a lock,
+ * the chunks of a large grid no move changed are computed in a cache of the reading thread, and a snapshot never holds
+ * part of a move
+ */
+public final class BoardSnapshot {
+
+    /**
+     * Cell contents indexed by the packed cell bits
+     */
+    private static final DemineurModel.Cell[] CELLS = DemineurModel.Cell.values();
+
+    /**
+     * Number of changes of the grid before this snapshot
+     */
+    private final long version;
+
+    private final int width;
+
+    private final int height;
+
+    private final int mines;
+
+    private final boolean generated;
+
+    private final boolean lost;
+
+    private final boolean won;
+
+    private final int countDiscoveredCells;
+
+    private final int countMarkedCells;
+
+    /**
+     * The packed cells, a copy of the small grids or the chunks of a large grid shared until the model changes them
+     */
+    private final CellStorage state;
+
+    BoardSnapshot(long version, int width, int height, int mines, boolean generated, boolean lost, boolean won,
+                  int countDiscoveredCells, int countMarkedCells, CellStorage state) {
+        this.version = version;
+        this.width = width;
+        this.height = height;
+        this.mines = mines;
+        this.generated = generated;
+        this.lost = lost;
+        this.won = won;
+        this.countDiscoveredCells = countDiscoveredCells;
+        this.countMarkedCells = countMarkedCells;
+        this.state = state;
+    }
+
+    /**
+     *
+     * @return the number of changes of the grid before this snapshot, a newer snapshot has a greater version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMines() {
+        return mines;
+    }
+
+    /**
+     *
+     * @return true once the mines have been placed, by the first move
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    public boolean isLost() {
+        return lost;
+    }
+
+    public boolean isWon() {
+        return won;
+    }
+
+    public int getCountDiscoveredCells() {
+        return countDiscoveredCells;
+    }
+
+    public int getCountMarkedCells() {
+        return countMarkedCells;
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return the (i, j) cell content
+     */
+    public DemineurModel.Cell getCell(int i, int j) {
+        int value = state.get(index(i, j));
+        if((value & DemineurModel.MINE_BIT) != 0)
+            return DemineurModel.Cell.MINE;
+        return CELLS[(value & DemineurModel.ADJACENT_MASK) + 1];
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return true if the (i, j) cell has been discovered
+     */
+    public boolean isDiscovered(int i, int j) {
+        int cell = index(i, j);
+        return !state.isPristine(cell) && (state.get(cell) & DemineurModel.DISCOVERED_BIT) != 0;
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return true if the (i, j) cell has been marked
+     */
+    public boolean isMarked(int i, int j) {
+        int cell = index(i, j);
+        return !state.isPristine(cell) && (state.get(cell) & DemineurModel.MARKED_BIT) != 0;
+    }
+
+    private int index(int i, int j) {
+        if(i < 0 || i >= height || j < 0 || j >= width)
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ")");
+        return i * width + j;
+    }
+}
@@ -0,0 +1,95 @@
+package com.android.demineur;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Storage of the packed cells of a grid, indexed by i * width + j.
+ * The dense storage keeps one byte per cell, the chunked storage only keeps the parts of the grid the player changed
+ */
+abstract class CellStorage {
+
+    /**
+     *
+     * @param cell : the cell index
+     * @return the packed cell
+     */
+    abstract byte get(int cell);
+
+    /**
+     *
+     * @param cell : the cell index
+     * @param value : the packed cell
+     */
+    abstract void set(int cell, byte value);
+
+    /**
+     * Empties every cell, before a new game
+     */
+    abstract void clear();
+
+    /**
+     *
+     * @return true if the storage places the mines itself instead of keeping the ones set by the model
+     */
+    boolean isSparse() {
+        return false;
+    }
+
+    /**
+     * Places the mines of a sparse storage, the first cell is never a mine
+     * @param seed : seed of the mine placement
+     * @param first : the cell index of the first move
+     */
+    void generate(long seed, int first) {
+        throw new UnsupportedOperationException("The model places the mines");
+    }
+
+    /**
+     *
+     * @param cell : the cell index
+     * @return true if the cell is in a part of the grid no move has changed, so it is hidden and unmarked
+     */
+    boolean isPristine(int cell) {
+        return false;
+    }
+
+    /**
+     * Tells if the cell can be set from another thread than the one playing the game, while nothing else changes
+     * the grid and each cell is set by a single thread
+     * @param cell : the cell index
+     * @return true if setting the cell doesn't change how the grid is stored, only its cell
+     */
+    boolean isWritable(int cell) {
+        return true;
+    }
+
+    /**
+     * Finds the next cell in a part of the grid held in memory, every cell for a dense storage
+     * @param cell : the cell index to start from
+     * @return the first cell index from the given one whose part of the grid is held in memory, or -1 if there is none
+     */
+    abstract int nextStored(int cell);
+
+    /**
+     * Copies the grid for readers on other threads, the copy doesn't change with the grid and can't be changed
+     * @return the read only copy
+     */
+    abstract CellStorage snapshot();
+
+    /**
+     * Writes the cells held in memory
+     * @param out : the destination
+     * @throws IOException if the cells cannot be written
+     */
+    abstract void writeTo(DataOutput out) throws IOException;
+
+    /**
+     * Reads the cells written by writeTo
+     * @param in : the source
+     * @param seed : seed of the mine placement of the game
+     * @throws IOException if the cells cannot be read
+     */
+    abstract void readFrom(DataInput in, long seed) throws IOException;
+}
@@ -0,0 +1,83 @@
+package com.android.demineur;
+
+/**
+ * Cells whose state changed during the last move, each cell appearing once.
+ * The set is reused by the model and is only valid until its next move
+ */
+public final class ChangeSet {
+
+    /**
+     * Indexes of the changed cells, i * width + j
+     */
+    private int cells[];
+
+    /**
+     * Packed state of each changed cell before the move
+     */
+    private byte previous[];
+
+    /**
+     * Number of changed cells
+     */
+    private int size;
+
+    ChangeSet() {
+        cells = new int[16];
+        previous = new byte[16];
+        size = 0;
+    }
+
+    /**
+     *
+     * @return the number of changed cells
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @param k : the position in the set, between 0 and size() - 1
+     * @return the index of the k-th changed cell, i * width + j
+     */
+    public int get(int k) {
+        if(k < 0 || k >= size)
+            throw new IndexOutOfBoundsException(k + "");
+        return cells[k];
+    }
+
+    /**
+     *
+     * @param k : the position in the set
+     * @return the packed state of the k-th changed cell before the move
+     */
+    byte getPrevious(int k) {
+        return previous[k];
+    }
+
+    /**
+     * Adds a cell to the set, the model guarantees that it isn't already there
+     * @param cell : the cell index
+     * @param state : the packed state of the cell before the move
+     */
+    void add(int cell, byte state) {
+        if(size == cells.length) {
+            int grownCells[] = new int[cells.length * 2];
+            byte grownPrevious[] = new byte[cells.length * 2];
+            System.arraycopy(cells, 0, grownCells, 0, size);
+            System.arraycopy(previous, 0, grownPrevious, 0, size);
+            cells = grownCells;
+            previous = grownPrevious;
+        }
+        cells[size] = cell;
+        previous[size] = state;
+        size++;
+    }
+
+    /**
+     * Empties the set, keeping its buffer
+     */
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,273 @@
+package com.android.demineur;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * File holding the chunks of an infinite grid that the player changed and that have been dropped from memory.
+ * Only the discovered and marked bits of a chunk are kept, the mines being computed again from the seed,
+ * and they are compressed since an explored chunk is mostly made of runs of discovered cells.
+ * The file is append only: a chunk written again supersedes its previous record, and the index of the latest record
+ * of each chunk is kept in memory. It starts with a header, then each record holds the chunk key, the length
+ * of the compressed bits and the compressed bits, so the index is rebuilt by reading the records when the file
+ * is opened again. The index takes 16 bytes per slot, so the store is limited to MAX_CHUNKS chunks
+ */
+public final class ChunkStore implements Closeable {
+
+    /**
+     * Max number of chunks in a store, 2^30 cells, whose index takes 8MB
+     */
+    public static final int MAX_CHUNKS = 1 << 18;
+
+    /**
+     * First bytes of every store, "DMCS"
+     */
+    private static final int MAGIC = 0x444D4353;
+
+    /**
+     * Current version of the format
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the header, the magic number and the version
+     */
+    private static final int HEADER_SIZE = 5;
+
+    /**
+     * Size of the key and of the length before the compressed bits of a record
+     */
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    private final RandomAccessFile file;
+
+    /**
+     * Index of the latest record of each chunk: open addressing table of the chunk keys and the position of their record,
+     * a position of 0 marks a free slot since the records come after the header
+     */
+    private long keys[];
+    private long offsets[];
+
+    /**
+     * Number of chunks in the index
+     */
+    private int size;
+
+    private final Deflater deflater;
+
+    private final Inflater inflater;
+
+    /**
+     * Compressed record, reused between chunks
+     */
+    private byte buffer[];
+
+    /**
+     * Opens a store, created empty if the file doesn't exist, or holding the chunks written to the file before.
+     * A record cut by the end of the file, left by a write that didn't complete, is dropped
+     * @param path : the file of the store, in the private storage of the application
+     * @throws IOException if the file cannot be opened or isn't a store
+     */
+    public ChunkStore(File path) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+        this.keys = new long[64];
+        this.offsets = new long[64];
+        this.deflater = new Deflater(Deflater.BEST_SPEED);
+        this.inflater = new Inflater();
+        this.buffer = new byte[256];
+        try {
+            if(file.length() == 0) {
+                file.writeInt(MAGIC);
+                file.writeByte(VERSION);
+            }
+            else
+                readIndex();
+        } catch(IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks the header and finds the latest record of each chunk
+     * @throws IOException if the file isn't a store of a known version
+     */
+    private void readIndex() throws IOException {
+        long length = file.length();
+        if(length < HEADER_SIZE || file.readInt() != MAGIC)
+            throw new IOException("Not a chunk store");
+        int version = file.readUnsignedByte();
+        if(version != VERSION)
+            throw new IOException("Unknown chunk store version " + version);
+        long offset = HEADER_SIZE;
+        while(offset + RECORD_HEADER_SIZE <= length) {
+            file.seek(offset);
+            long key = file.readLong();
+            int size = file.readInt();
+            if(size <= 0)
+                throw new IOException("Corrupted record at " + offset);
+            if(offset + RECORD_HEADER_SIZE + size > length)
+                break;
+            put(key, offset);
+            offset += RECORD_HEADER_SIZE + size;
+        }
+        if(offset < length)
+            file.setLength(offset);
+    }
+
+    /**
+     *
+     * @return the number of chunks in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @return the size of the file in bytes, superseded records included
+     * @throws IOException if the file cannot be read
+     */
+    public long getLength() throws IOException {
+        return file.length();
+    }
+
+    /**
+     *
+     * @param key : the chunk key
+     * @return true if the chunk has been written
+     */
+    boolean contains(long key) {
+        return offsets[find(key)] != 0;
+    }
+
+    /**
+     *
+     * @return the keys of the chunks in the store, in no particular order
+     */
+    long[] getKeys() {
+        long stored[] = new long[size];
+        int count = 0;
+        for(int slot = 0; slot < keys.length; slot++) {
+            if(offsets[slot] != 0)
+                stored[count++] = keys[slot];
+        }
+        return stored;
+    }
+
+    /**
+     * Appends the player state of a chunk
+     * @param key : the chunk key
+     * @param bits : the discovered bits then the marked bits of the chunk cells
+     * @throws IOException if the chunk cannot be written, or if it is a new chunk and the store holds MAX_CHUNKS chunks
+     */
+    void write(long key, byte bits[]) throws IOException {
+        if(size == MAX_CHUNKS && !contains(key))
+            throw new IOException("The store is full, " + MAX_CHUNKS + " chunks");
+        deflater.reset();
+        deflater.setInput(bits);
+        deflater.finish();
+        int length = 0;
+        while(!deflater.finished()) {
+            if(length == buffer.length) {
+                byte grown[] = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        long offset = file.length();
+        file.seek(offset);
+        file.writeLong(key);
+        file.writeInt(length);
+        file.write(buffer, 0, length);
+        put(key, offset);
+    }
+
+    /**
+     * Reads the latest player state written for a chunk
+     * @param key : the chunk key
+     * @param bits : filled with the discovered bits then the marked bits of the chunk cells
+     * @return false if the chunk has never been written
+     * @throws IOException if the chunk cannot be read
+     */
+    boolean read(long key, byte bits[]) throws IOException {
+        long offset = offsets[find(key)];
+        if(offset == 0)
+            return false;
+        file.seek(offset + 8); // after the key
+        int length = file.readInt();
+        if(length > buffer.length)
+            buffer = new byte[length];
+        file.readFully(buffer, 0, length);
+        inflater.reset();
+        inflater.setInput(buffer, 0, length);
+        try {
+            if(inflater.inflate(bits) != bits.length)
+                throw new IOException("Truncated chunk " + key);
+        } catch(DataFormatException e) {
+            throw new IOException("Corrupted chunk " + key, e);
+        }
+        return true;
+    }
+
+    /**
+     *
+     * @param key : the chunk key
+     * @return the slot of the key in the index, or the free slot where it would be added
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (ChunkedStorage.mix(key, 0) >>> 32) & mask;
+        while(offsets[slot] != 0 && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Sets the position of the latest record of a chunk, doubling the index when it is half full
+     * @param key : the chunk key
+     * @param offset : the position of the record
+     * @throws IOException if it is a new chunk and the store holds MAX_CHUNKS chunks
+     */
+    private void put(long key, long offset) throws IOException {
+        int slot = find(key);
+        if(offsets[slot] == 0) {
+            if(size == MAX_CHUNKS)
+                throw new IOException("The store is full, " + MAX_CHUNKS + " chunks");
+            if(2 * (size + 1) > keys.length) {
+                long oldKeys[] = keys;
+                long oldOffsets[] = offsets;
+                keys = new long[oldKeys.length * 2];
+                offsets = new long[oldOffsets.length * 2];
+                for(int k = 0; k < oldKeys.length; k++) {
+                    if(oldOffsets[k] != 0) {
+                        int free = find(oldKeys[k]);
+                        keys[free] = oldKeys[k];
+                        offsets[free] = oldOffsets[k];
+                    }
+                }
+                slot = find(key);
+            }
+            size++;
+        }
+        keys[slot] = key;
+        offsets[slot] = offset;
+    }
+
+    /**
+     * Closes the file, the store can't be used afterwards
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        inflater.end();
+        file.close();
+    }
+}
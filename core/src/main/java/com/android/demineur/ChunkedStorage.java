@@ -0,0 +1,536 @@
+package com.android.demineur;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Storage of the large grids by square chunks of CHUNK_SIZE cells a side.
+ * The mines are never placed all at once: the first move splits the number of mines between the chunks,
+ * and the content of a chunk is computed from the seed and its share when it is read.
+ * A chunk only takes memory once a move changes one of its cells, the chunks only read are kept in a small cache,
+ * so the memory grows with the explored area and not with the size of the grid.
+ * A snapshot shares the chunks of the grid, which copies a shared chunk before changing it.
+ * Each thread reading the game keeps its own cache of the chunks only read, so the readers never take a lock
+ */
+final class ChunkedStorage extends CellStorage {
+
+    /**
+     * Side of a chunk, a power of two
+     */
+    static final int CHUNK_SHIFT = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Number of chunks of a page of the chunk index, the unit copied when a snapshot shares the index
+     */
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+    /**
+     * Number of chunks read but not changed kept computed by each reading thread
+     */
+    private static final int CACHED_CHUNKS = 32;
+
+    /**
+     * Above this number of mines the share of a half of the grid is drawn from the normal approximation
+     * of the hypergeometric law instead of mine by mine
+     */
+    private static final int EXACT_SPLIT_MINES = 64;
+
+    /**
+     * Content of every chunk before the first move
+     */
+    private static final byte EMPTY[] = new byte[CHUNK_SIZE * CHUNK_SIZE];
+
+    private final int width;
+
+    private final int height;
+
+    private final int mines;
+
+    /**
+     * Number of chunks on a row and on a column of the grid
+     */
+    private final int columns;
+    private final int rows;
+
+    /**
+     * Number of chunks of the grid
+     */
+    private final int chunkCount;
+
+    /**
+     * Packed cells of the chunks changed by a move, indexed by chunk row * columns + chunk column, null for the others.
+     * The index is split in pages of 1 << PAGE_SHIFT chunks
+     */
+    private byte pages[][][];
+
+    /**
+     * True while the array of the pages is shared with the last snapshot
+     */
+    private boolean published;
+
+    /**
+     * Number of snapshots taken, and the value it had when each page and each chunk was last copied.
+     * A page or a chunk copied before the last snapshot is shared with it
+     */
+    private int generation;
+    private final int pageOwners[];
+    private final int owners[];
+
+    /**
+     * Number of chunks changed by a move
+     */
+    private int touched;
+
+    /**
+     * Chunks of the game read but not changed by each reading thread, shared with the snapshots, null before the first move
+     */
+    private ThreadLocal<ComputedChunks> computed;
+
+    /**
+     * Number of mines of each chunk, null before the first move
+     */
+    private int quotas[];
+
+    private long seed;
+
+    /**
+     * Cell of the first move, or -1 before it
+     */
+    private int first;
+
+    /**
+     * Construct an empty grid
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     */
+    ChunkedStorage(int width, int height, int mines) {
+        this.width = width;
+        this.height = height;
+        this.mines = Math.min(mines, width * height - 1);
+        this.columns = (width + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.rows = (height + CHUNK_MASK) >> CHUNK_SHIFT;
+        this.chunkCount = columns * rows;
+        this.pages = new byte[((chunkCount - 1) >>> PAGE_SHIFT) + 1][1 << PAGE_SHIFT][];
+        this.pageOwners = new int[pages.length];
+        this.owners = new int[chunkCount];
+        this.first = -1;
+    }
+
+    /**
+     * Construct a read only copy sharing the chunks of a grid
+     * @param grid : the grid
+     */
+    private ChunkedStorage(ChunkedStorage grid) {
+        this.width = grid.width;
+        this.height = grid.height;
+        this.mines = grid.mines;
+        this.columns = grid.columns;
+        this.rows = grid.rows;
+        this.chunkCount = grid.chunkCount;
+        this.pages = grid.pages;
+        this.touched = grid.touched;
+        this.computed = grid.computed;
+        this.pageOwners = null;
+        this.owners = null;
+        this.quotas = grid.quotas;
+        this.seed = grid.seed;
+        this.first = grid.first;
+    }
+
+    @Override
+    byte get(int cell) {
+        int i = cell / width;
+        int j = cell - i * width;
+        int chunk = (i >> CHUNK_SHIFT) * columns + (j >> CHUNK_SHIFT);
+        byte cells[] = getChunk(chunk);
+        if(cells == null)
+            cells = getComputed(chunk);
+        return cells[(i & CHUNK_MASK) << CHUNK_SHIFT | (j & CHUNK_MASK)];
+    }
+
+    @Override
+    void set(int cell, byte value) {
+        if(owners == null)
+            throw new UnsupportedOperationException("Read only grid");
+        int i = cell / width;
+        int j = cell - i * width;
+        int chunk = (i >> CHUNK_SHIFT) * columns + (j >> CHUNK_SHIFT);
+        byte cells[] = getChunk(chunk);
+        if(cells == null) {
+            cells = getComputed(chunk).clone();
+            putChunk(chunk, cells);
+            touched++;
+        }
+        else if(owners[chunk] != generation) {
+            cells = cells.clone();
+            putChunk(chunk, cells);
+        }
+        cells[(i & CHUNK_MASK) << CHUNK_SHIFT | (j & CHUNK_MASK)] = value;
+    }
+
+    /**
+     * Only the pages owned by the grid are emptied, the ones still shared with a snapshot are replaced
+     */
+    @Override
+    void clear() {
+        if(published) {
+            pages = pages.clone();
+            published = false;
+        }
+        for(int page = 0; page < pages.length; page++) {
+            if(pageOwners[page] == generation)
+                Arrays.fill(pages[page], null);
+            else {
+                pages[page] = new byte[1 << PAGE_SHIFT][];
+                pageOwners[page] = generation;
+            }
+        }
+        touched = 0;
+        computed = null;
+        quotas = null;
+        first = -1;
+    }
+
+    @Override
+    boolean isSparse() {
+        return true;
+    }
+
+    /**
+     * Splits the mines between the chunks, the content of the chunks is computed when they are read
+     * @param seed : seed of the mine placement
+     * @param first : the cell index of the first move
+     */
+    @Override
+    void generate(long seed, int first) {
+        this.seed = seed;
+        this.first = first;
+        computed = new ThreadLocal<ComputedChunks>() {
+            @Override
+            protected ComputedChunks initialValue() {
+                return new ComputedChunks();
+            }
+        };
+        long sums[] = new long[chunkCount + 1]; // number of cells that can hold a mine before each chunk
+        for(int chunk = 0; chunk < chunkCount; chunk++)
+            sums[chunk + 1] = sums[chunk] + getCandidates(chunk);
+        quotas = new int[chunkCount];
+        split(0, chunkCount, mines, sums, new Random(seed));
+    }
+
+    /**
+     * Only the chunks held in memory and not shared with a snapshot are written in place
+     */
+    @Override
+    boolean isWritable(int cell) {
+        if(owners == null)
+            return false;
+        int i = cell / width;
+        int j = cell - i * width;
+        int chunk = (i >> CHUNK_SHIFT) * columns + (j >> CHUNK_SHIFT);
+        return getChunk(chunk) != null && owners[chunk] == generation;
+    }
+
+    @Override
+    boolean isPristine(int cell) {
+        int i = cell / width;
+        int j = cell - i * width;
+        return getChunk((i >> CHUNK_SHIFT) * columns + (j >> CHUNK_SHIFT)) == null;
+    }
+
+    /**
+     * Skips the chunks not held in memory in row order
+     */
+    @Override
+    int nextStored(int cell) {
+        int size = width * height;
+        while(cell < size) {
+            int i = cell / width;
+            int j = cell - i * width;
+            if(getChunk((i >> CHUNK_SHIFT) * columns + (j >> CHUNK_SHIFT)) != null)
+                return cell;
+            int next = ((j >> CHUNK_SHIFT) + 1) << CHUNK_SHIFT; // first column of the next chunk
+            cell = next < width ? i * width + next : (i + 1) * width;
+        }
+        return -1;
+    }
+
+    /**
+     * Shares the chunks with a read only copy, the chunks changed afterwards are copied first
+     */
+    @Override
+    CellStorage snapshot() {
+        published = true;
+        generation++;
+        return new ChunkedStorage(this);
+    }
+
+    /**
+     *
+     * @return the number of chunks held in memory because a move changed them
+     */
+    int getTouchedChunks() {
+        return touched;
+    }
+
+    /**
+     *
+     * @param chunk : the chunk index
+     * @return the cells of the chunk if a move changed it, otherwise null
+     */
+    private byte[] getChunk(int chunk) {
+        return pages[chunk >>> PAGE_SHIFT][chunk & PAGE_MASK];
+    }
+
+    /**
+     * Stores the cells of a chunk owned by the grid, copying first the array of the pages and the page of the chunk
+     * if they are shared with the last snapshot
+     * @param chunk : the chunk index
+     * @param cells : the cells, which no snapshot holds
+     */
+    private void putChunk(int chunk, byte cells[]) {
+        if(published) {
+            pages = pages.clone();
+            published = false;
+        }
+        int page = chunk >>> PAGE_SHIFT;
+        if(pageOwners[page] != generation) {
+            pages[page] = pages[page].clone();
+            pageOwners[page] = generation;
+        }
+        pages[page][chunk & PAGE_MASK] = cells;
+        owners[chunk] = generation;
+    }
+
+    /**
+     * Writes the first move, then the index and the cells of each changed chunk.
+     * The other chunks are computed again from the seed when the game is read
+     */
+    @Override
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(first);
+        out.writeInt(touched);
+        for(int chunk = 0; chunk < chunkCount; chunk++) {
+            if(getChunk(chunk) != null) {
+                out.writeInt(chunk);
+                out.write(getChunk(chunk));
+            }
+        }
+    }
+
+    @Override
+    void readFrom(DataInput in, long seed) throws IOException {
+        clear();
+        int first = in.readInt();
+        if(first < -1 || first >= width * height)
+            throw new IOException("Invalid first move " + first);
+        if(first >= 0)
+            generate(seed, first);
+        int stored = in.readInt();
+        if(stored < 0 || stored > chunkCount)
+            throw new IOException("Invalid number of chunks " + stored);
+        for(int k = 0; k < stored; k++) {
+            int chunk = in.readInt();
+            if(chunk < 0 || chunk >= chunkCount || getChunk(chunk) != null)
+                throw new IOException("Invalid chunk " + chunk);
+            byte cells[] = new byte[CHUNK_SIZE * CHUNK_SIZE];
+            in.readFully(cells);
+            putChunk(chunk, cells);
+        }
+        touched = stored;
+    }
+
+    /**
+     *
+     * @param chunk : the chunk index
+     * @return the cells of a chunk no move changed, from the cache of the thread or computed, which must not be changed
+     */
+    private byte[] getComputed(int chunk) {
+        if(quotas == null)
+            return EMPTY;
+        return computed.get().get(this, chunk);
+    }
+
+    /**
+     * Computes the cells of a chunk from its mines and the mines of the neighbouring chunks near its border
+     * @param chunk : the chunk index
+     * @param candidates : the array shuffled to draw the mines
+     * @return the packed cells of the chunk, row by row
+     */
+    private byte[] compute(int chunk, int candidates[]) {
+        byte cells[] = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        if(quotas == null)
+            return cells;
+        int cy = chunk / columns;
+        int cx = chunk % columns;
+        int top = cy << CHUNK_SHIFT;
+        int left = cx << CHUNK_SHIFT;
+        for(int y = Math.max(cy - 1, 0); y <= Math.min(cy + 1, rows - 1); y++) {
+            for(int x = Math.max(cx - 1, 0); x <= Math.min(cx + 1, columns - 1); x++) {
+                int neighbour = y * columns + x;
+                int count = drawMines(neighbour, candidates);
+                for(int k = 0; k < count; k++) {
+                    int i = (y << CHUNK_SHIFT) + (candidates[k] >> CHUNK_SHIFT) - top;
+                    int j = (x << CHUNK_SHIFT) + (candidates[k] & CHUNK_MASK) - left;
+                    for(int di = -1; di <= 1; di++) {
+                        for(int dj = -1; dj <= 1; dj++) {
+                            if(i + di < 0 || i + di >= CHUNK_SIZE || j + dj < 0 || j + dj >= CHUNK_SIZE)
+                                continue;
+                            if(top + i + di >= height || left + j + dj >= width)
+                                continue;
+                            int offset = (i + di) << CHUNK_SHIFT | (j + dj);
+                            cells[offset] += di == 0 && dj == 0 ? DemineurModel.MINE_BIT : 1;
+                        }
+                    }
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Draws the mines of a chunk by a partial Fisher-Yates shuffle of its cells, seeded by the game seed and the chunk
+     * @param chunk : the chunk index
+     * @param candidates : the array shuffled
+     * @return the number of mines of the chunk, whose cells are now at the start of candidates as row << CHUNK_SHIFT | column
+     */
+    private int drawMines(int chunk, int candidates[]) {
+        int top = (chunk / columns) << CHUNK_SHIFT;
+        int left = (chunk % columns) << CHUNK_SHIFT;
+        int chunkHeight = Math.min(CHUNK_SIZE, height - top);
+        int chunkWidth = Math.min(CHUNK_SIZE, width - left);
+        int size = 0;
+        for(int i = 0; i < chunkHeight; i++) {
+            for(int j = 0; j < chunkWidth; j++) {
+                if((top + i) * width + left + j != first)
+                    candidates[size++] = i << CHUNK_SHIFT | j;
+            }
+        }
+        Random r = new Random(mix(seed, chunk));
+        int count = quotas[chunk];
+        for(int k = 0; k < count; k++) {
+            int drawn = k + r.nextInt(size - k);
+            int cell = candidates[drawn];
+            candidates[drawn] = candidates[k];
+            candidates[k] = cell;
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @param chunk : the chunk index
+     * @return the number of cells of the chunk that can hold a mine, all but the first move
+     */
+    private int getCandidates(int chunk) {
+        int top = (chunk / columns) << CHUNK_SHIFT;
+        int left = (chunk % columns) << CHUNK_SHIFT;
+        int cells = Math.min(CHUNK_SIZE, height - top) * Math.min(CHUNK_SIZE, width - left);
+        int i = first / width;
+        int j = first - i * width;
+        boolean holdsFirst = i >= top && i < top + CHUNK_SIZE && j >= left && j < left + CHUNK_SIZE;
+        return holdsFirst ? cells - 1 : cells;
+    }
+
+    /**
+     * Shares the mines between a range of chunks by splitting it in halves, the share of each half following
+     * the law of a uniform placement over the whole grid
+     * @param from : the first chunk of the range
+     * @param to : the chunk after the range
+     * @param count : the number of mines of the range
+     * @param sums : the number of candidate cells before each chunk
+     * @param r : the random draws of the split
+     */
+    private void split(int from, int to, int count, long sums[], Random r) {
+        if(to - from == 1) {
+            quotas[from] = count;
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        long low = sums[middle] - sums[from];
+        long high = sums[to] - sums[middle];
+        int lowCount = drawHypergeometric(low, high, count, r);
+        split(from, middle, lowCount, sums, r);
+        split(middle, to, count - lowCount, sums, r);
+    }
+
+    /**
+     * Draws how many of the mines spread uniformly over two sets of cells fall in the first one
+     * @param low : the number of cells of the first set
+     * @param high : the number of cells of the second set
+     * @param count : the number of mines
+     * @param r : the random draws
+     * @return the number of mines of the first set
+     */
+    static int drawHypergeometric(long low, long high, int count, Random r) {
+        long total = low + high;
+        if(count <= EXACT_SPLIT_MINES) {
+            int drawn = 0;
+            for(int k = 0; k < count; k++) {
+                if(r.nextDouble() * (total - k) < low - drawn)
+                    drawn++;
+            }
+            return drawn;
+        }
+        double p = (double) low / total;
+        double mean = count * p;
+        double variance = count * p * (1 - p) * (total - count) / Math.max(total - 1, 1);
+        long drawn = Math.round(mean + Math.sqrt(variance) * r.nextGaussian());
+        return (int) Math.min(Math.max(drawn, Math.max(0, count - high)), Math.min(count, low));
+    }
+
+    /**
+     * Chunks of a game read but not changed by a thread, the least recently read is dropped first.
+     * The grid and its snapshots share the caches of their game, one per thread so the parallel flood and the snapshot
+     * readers don't wait for each other, at the cost of a chunk read by several threads being computed by each of them.
+     * A computed chunk is never changed, the grid copies it when a move changes one of its cells
+     */
+    private static final class ComputedChunks {
+
+        private final Map<Integer, byte[]> chunks = new LinkedHashMap<>(CACHED_CHUNKS * 2, 0.75f, true);
+
+        /**
+         * Cells of a chunk shuffled to draw its mines, reused between chunks
+         */
+        private final int candidates[] = new int[CHUNK_SIZE * CHUNK_SIZE];
+
+        /**
+         *
+         * @param grid : the grid or a snapshot of the game of the cache
+         * @param chunk : the chunk index
+         * @return the cells of the chunk
+         */
+        byte[] get(ChunkedStorage grid, int chunk) {
+            byte cells[] = chunks.get(chunk);
+            if(cells == null) {
+                cells = grid.compute(chunk, candidates);
+                chunks.put(chunk, cells);
+                if(chunks.size() > CACHED_CHUNKS)
+                    chunks.remove(chunks.keySet().iterator().next());
+            }
+            return cells;
+        }
+    }
+
+    /**
+     * Mixes the seed of a game with a chunk index, so neighbouring chunks get unrelated draws
+     * @param seed : the game seed
+     * @param chunk : the chunk index
+     * @return the seed of the chunk
+     */
+    static long mix(long seed, long chunk) {
+        long z = seed + (chunk + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,1458 @@
+package com.android.demineur;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Minesweeper game, played by a single thread.
+ * Once publishing is on, every move publishes an immutable BoardSnapshot, which other threads read with getSnapshot
+ * without locking
+ */
+public final class DemineurModel extends MoveRules {
+
+    /**
+     * Min columns for a grid
+     */
+    public static final int MIN_WIDTH = 5;
+
+    /**
+     * Min rows for a grid
+     */
+    public static final int MIN_HEIGHT = 5;
+
+    /**
+     * Min number of mines
+     */
+    public static final int MIN_MINES = 2;
+
+    /**
+     * Max columns for a grid
+     */
+    public static final int MAX_WIDTH = 20;
+
+    /**
+     * Max rows for a grid
+     */
+    public static final int MAX_HEIGHT = 20;
+
+    /**
+     * Grids with more cells are stored by chunks, which only take memory once the player explores them
+     */
+    public static final int CHUNKED_CELLS = 1 << 16;
+
+    /**
+     * Max number of cells of a grid, so a cell index fits in the move journal
+     */
+    public static final int MAX_CELLS = 1 << 28;
+
+    /**
+     * Cell content for the grid
+     */
+    public enum Cell {
+        MINE,
+        EMPTY,
+        ONE,
+        TWO,
+        THREE,
+        FOUR,
+        FIVE,
+        SIX,
+        SEVEN,
+        EIGHT
+    }
+
+    /**
+     * Number of columns
+     */
+    private final int WIDTH;
+    /**
+     * Number of rows
+     */
+    private final int HEIGHT;
+
+    /**
+     * Number of mines
+     */
+    private final int MINES;
+
+    /**
+     * Seed of the random mine placement, the same seed and first move always give the same grid
+     */
+    private long seed;
+
+    /**
+     * Bits of a packed cell holding the number of adjacent mines
+     */
+    static final int ADJACENT_MASK = 0x0F;
+
+    /**
+     * Bit of a packed cell set when the cell contains a mine
+     */
+    static final int MINE_BIT = 0x10;
+
+    /**
+     * Bit of a packed cell set when the cell has been discovered
+     */
+    static final int DISCOVERED_BIT = 0x20;
+
+    /**
+     * Bit of a packed cell set when the cell has been marked with a flag
+     */
+    static final int MARKED_BIT = 0x40;
+
+    /**
+     * Bit of a packed cell set while a move is running once the cell has been added to the change set
+     */
+    static final int CHANGED_BIT = 0x80;
+
+    /**
+     * Cell contents indexed by the packed cell bits, so getCell doesn't allocate the values array
+     */
+    private static final Cell[] CELLS = Cell.values();
+
+    /**
+     * The grid, one packed cell per byte indexed by i * WIDTH + j, held whole or by chunks depending on its size.
+     * Each cell holds its number of adjacent mines, its mine bit, its discovered bit and its marked bit
+     */
+    private final CellStorage state;
+
+    /**
+     * True once the mines have been placed
+     */
+    private boolean generated;
+
+    /**
+     * The number of discovered cells
+     */
+    private int countDiscoveredCells;
+
+    /**
+     * Cells changed by the last move, reused between moves
+     */
+    private transient ChangeSet changes;
+
+    /**
+     * State of the grid as of the last published move, read by the other threads
+     */
+    private transient volatile BoardSnapshot snapshot;
+
+    /**
+     * Number of changes of the grid, a snapshot is only built for a new version
+     */
+    private transient long version;
+
+    /**
+     * True if every change of the grid publishes a snapshot for the other threads
+     */
+    private transient volatile boolean publishing;
+
+    /**
+     * Moves played since the model has been created or loaded
+     */
+    private transient MoveJournal journal;
+
+    /**
+     * Grid generated in advance, used by the first move if it fits it, or null
+     */
+    private transient MineLayout layout;
+
+    /**
+     * Cell the mines have been placed from, the first move or the origin of the layout, -1 if unknown
+     */
+    private int origin;
+
+    /**
+     * Symmetry of the layout applied to the grid, 0 for a grid generated from the first move
+     */
+    private int symmetry;
+
+    /**
+     * Index offsets of the neighbours of a cell, computed from the grid width
+     */
+    private transient int neighbourOffsets[];
+
+    /**
+     * Number of cells waiting in the flood queue above which the rest of the region is opened in parallel
+     */
+    private transient int parallelFrontier = ParallelFlood.ENABLED ? ParallelFlood.MIN_FRONTIER : Integer.MAX_VALUE;
+
+    /**
+     * The number of marked cells
+     */
+    private int countMarkedCells;
+
+    /**
+     * 3BV of the grid, the minimum number of clicks needed to clear it, computed once the mines are placed
+     */
+    private int threeBV;
+
+    /**
+     * Moves of the journal played in each mode: discoveries and jokers, flags, and discoveries around a number.
+     * A move changing nothing isn't counted, an undone move is removed from its counter
+     */
+    private int leftClicks;
+    private int rightClicks;
+    private int chordClicks;
+
+    /**
+     * If true the player will mark cells instead of revealing them
+     */
+    private boolean flagMode;
+
+    /**
+     * True if the game has been lost, false otherwise
+     */
+    private boolean lost;
+
+    /**
+     * True if the game has been won, false otherwise
+     */
+    private boolean won;
+
+    /**
+     * Milliseconds counted by the clock before its last start, pauses excluded
+     */
+    private long elapsedMillis;
+
+    /**
+     * Monotonic time in milliseconds when the clock was last started, or -1 if the clock is stopped
+     */
+    private transient long clockStart;
+
+    /**
+     * True if the game is paused
+     */
+    private boolean pause;
+
+    /**
+     * True if the next moves will be the burst joker
+     */
+    private boolean burstModeJoker;
+
+    /**
+     * True if the burst joker has been used
+     */
+    private boolean burstJokerUsed;
+
+    /**
+     * True if the next moves will be a safe move
+     */
+    private boolean safeModeJoker;
+
+    /**
+     * True if the safe joker has been used
+     */
+    private boolean safeJokerUsed;
+
+    /**
+     * Construct a new Minesweeper model
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     */
+    public DemineurModel(int width, int height, int mines) {
+        this(width, height, mines, new Random().nextLong());
+    }
+
+    /**
+     * Construct a new Minesweeper model with a reproducible grid
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines, at most one less than the number of cells so the first move is safe
+     * @param seed : seed of the mine placement
+     */
+    public DemineurModel(int width, int height, int mines, long seed) {
+        if(width <= 0 || height <= 0 || mines < 0 || (long) width * height > MAX_CELLS)
+            throw new IllegalArgumentException("Invalid grid " + width + "x" + height + "x" + mines);
+        this.WIDTH = width;
+        this.HEIGHT = height;
+        this.MINES = Math.min(mines, width * height - 1);
+        if((long) width * height > CHUNKED_CELLS)
+            state = new ChunkedStorage(width, height, MINES);
+        else
+            state = new DenseStorage(width * height);
+        reset(seed);
+    }
+
+    /**
+     * Construct a new Minesweeper model whose first move applies a grid generated in advance.
+     * If the layout doesn't fit the first move, the grid is generated from the layout seed as usual
+     * @param layout : the grid
+     */
+    public DemineurModel(MineLayout layout) {
+        this(layout.getWidth(), layout.getHeight(), layout.getMines(), layout.getSeed());
+        this.layout = layout;
+    }
+
+    /**
+     * Begin a new game of the same size in this model, reusing its grid and journal storage
+     * @param seed : seed of the mine placement
+     */
+    public void reset(long seed) {
+        this.seed = seed;
+        state.clear();
+        generated = false;
+        countDiscoveredCells = 0;
+        countMarkedCells = 0;
+        threeBV = 0;
+        leftClicks = 0;
+        rightClicks = 0;
+        chordClicks = 0;
+        flagMode = false;
+        lost = false;
+        won = false;
+        elapsedMillis = 0;
+        clockStart = -1;
+        pause = false;
+        burstModeJoker = false;
+        burstJokerUsed = false;
+        safeModeJoker = false;
+        safeJokerUsed = false;
+        layout = null;
+        origin = -1;
+        symmetry = 0;
+        if(journal != null)
+            journal.clear();
+        changed();
+    }
+
+    /**
+     * Initialize the game grid depending on the first move, so the player can't lose at the beginning.
+     * A layout given to the constructor is applied through its first symmetry fitting the move.
+     * Otherwise mines are drawn by a partial Fisher-Yates shuffle of the other cells, and the numbers of the
+     * neighbours are updated as each mine is placed.
+     * A cell rejected by isMineValidPosition can never become valid again, so it leaves the draw for good.
+     * A chunked grid places its mines itself, chunk by chunk, when they are read
+     * @param first : the cell index of the first move
+     */
+    void initCells(int first) {
+        countDiscoveredCells = 0;
+        origin = first;
+        if(state.isSparse()) {
+            state.generate(seed, first);
+            generated = true;
+            return; // the 3BV would need to compute the whole grid
+        }
+        int symmetry = layout != null ? layout.getSymmetry(first) : -1;
+        if(symmetry >= 0) {
+            for(int k = 0; k < layout.getMines(); k++)
+                setMine(layout.transform(layout.getMine(k), symmetry));
+            this.origin = layout.getOrigin();
+            this.symmetry = symmetry;
+            generated = true;
+            threeBV = computeThreeBV();
+            return;
+        }
+        int candidates[] = new int[HEIGHT * WIDTH - 1];
+        for(int cell = 0, k = 0; cell < HEIGHT * WIDTH; cell++) {
+            if(cell != first)
+                candidates[k++] = cell;
+        }
+        Random r = new Random(seed);
+        int n = 0;
+        int drawn = 0;
+        int valid = candidates.length;
+        while(n < MINES && drawn < valid) {
+            swap(candidates, drawn, drawn + r.nextInt(valid - drawn));
+            if(isMineValidPosition(candidates[drawn])) {
+                setMine(candidates[drawn]);
+                drawn++;
+                n++;
+            }
+            else
+                swap(candidates, drawn, --valid);
+        }
+        while(n < MINES && drawn < candidates.length) { // the grid is too dense to respect the neighbours rule everywhere
+            setMine(candidates[drawn++]);
+            n++;
+        }
+        generated = true;
+        threeBV = computeThreeBV();
+    }
+
+    /**
+     * Computes the 3BV of the grid: one click per opening, plus one per number that no opening reveals.
+     * The openings are counted in a single scan, each empty cell is joined to its empty neighbours already scanned
+     * and each join of two distinct openings removes one of them
+     * @return the 3BV of the grid
+     */
+    private int computeThreeBV() {
+        int parents[] = new int[HEIGHT * WIDTH];
+        int offsets[] = getNeighbourOffsets();
+        int count = 0;
+        for(int cell = 0; cell < HEIGHT * WIDTH; cell++) {
+            if(isMine(cell))
+                continue;
+            int mask = getNeighbourMask(cell);
+            if(getAdjacentMines(cell) == 0) {
+                parents[cell] = cell;
+                count++;
+                for(int k = 0; k < 4; k++) { // the up left, up, up right and left neighbours are already scanned
+                    int neighbour = cell + offsets[k];
+                    if((mask & (1 << k)) == 0 || getAdjacentMines(neighbour) != 0)
+                        continue; // the neighbours of an empty cell aren't mines
+                    int a = findOpening(parents, cell);
+                    int b = findOpening(parents, neighbour);
+                    if(a != b) {
+                        parents[a] = b;
+                        count--;
+                    }
+                }
+            }
+            else {
+                boolean revealed = false;
+                for(int k = 0; k < 8 && !revealed; k++) {
+                    int neighbour = cell + offsets[k];
+                    revealed = (mask & (1 << k)) != 0 && !isMine(neighbour) && getAdjacentMines(neighbour) == 0;
+                }
+                if(!revealed)
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @param parents : the union-find links of the empty cells
+     * @param cell : an empty cell
+     * @return the cell representing the opening of the given cell
+     */
+    private static int findOpening(int parents[], int cell) {
+        while(parents[cell] != cell) {
+            parents[cell] = parents[parents[cell]];
+            cell = parents[cell];
+        }
+        return cell;
+    }
+
+    /**
+     * Swaps two cells of an array
+     * @param cells : the array
+     * @param a : the first position
+     * @param b : the second position
+     */
+    private static void swap(int cells[], int a, int b) {
+        int cell = cells[a];
+        cells[a] = cells[b];
+        cells[b] = cell;
+    }
+
+    /**
+     * Puts a mine in the cell and increments the number of its neighbours
+     * @param cell : the cell index
+     */
+    private void setMine(int cell) {
+        state.set(cell, (byte) (state.get(cell) | MINE_BIT));
+        int offsets[] = getNeighbourOffsets();
+        int mask = getNeighbourMask(cell);
+        for(int k = 0; k < 8; k++) {
+            if((mask & (1 << k)) != 0)
+                state.set(cell + offsets[k], (byte) (state.get(cell + offsets[k]) + 1));
+        }
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return the index of the (i, j) cell in the packed grid
+     */
+    private int index(int i, int j) {
+        if(i < 0 || i >= HEIGHT || j < 0 || j >= WIDTH)
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ")");
+        return i * WIDTH + j;
+    }
+
+    /**
+     *
+     * @return the index offsets of the eight neighbours of a cell, row by row from the top left one
+     */
+    private int[] getNeighbourOffsets() {
+        if(neighbourOffsets == null)
+            neighbourOffsets = new int[] {-WIDTH - 1, -WIDTH, -WIDTH + 1, -1, 1, WIDTH - 1, WIDTH, WIDTH + 1};
+        return neighbourOffsets;
+    }
+
+    /**
+     * Computes which neighbours of a cell are inside the grid, so edge cells are handled without bound checks
+     * @param cell : the cell index
+     * @return a bit set where the bit k is set if the neighbour at getNeighbourOffsets()[k] exists
+     */
+    int getNeighbourMask(int cell) {
+        int i = cell / WIDTH;
+        int j = cell - i * WIDTH;
+        int mask = 0xFF;
+        if(i == 0)
+            mask &= ~0x07; // no row above
+        if(i == HEIGHT - 1)
+            mask &= ~0xE0; // no row below
+        if(j == 0)
+            mask &= ~0x29; // no column on the left
+        if(j == WIDTH - 1)
+            mask &= ~0x94; // no column on the right
+        return mask;
+    }
+
+    /**
+     *
+     * @param cell : the cell index
+     * @return true if the cell contains a mine
+     */
+    private boolean isMine(int cell) {
+        return (state.get(cell) & MINE_BIT) != 0;
+    }
+
+    /**
+     *
+     * @param cell : the cell index
+     * @return true if the cell has been discovered
+     */
+    private boolean isDiscovered(int cell) {
+        return (state.get(cell) & DISCOVERED_BIT) != 0;
+    }
+
+    /**
+     *
+     * @param cell : the cell index
+     * @return true if the cell has been marked
+     */
+    private boolean isMarked(int cell) {
+        return (state.get(cell) & MARKED_BIT) != 0;
+    }
+
+    /**
+     *
+     * @param cell : the cell index
+     * @return the number of mines around the cell
+     */
+    private int getAdjacentMines(int cell) {
+        return state.get(cell) & ADJACENT_MASK;
+    }
+
+    /**
+     *
+     * @return the number of columns
+     */
+    public int getWidth() {
+        return WIDTH;
+    }
+
+    /**
+     *
+     * @return the number of rows
+     */
+    public int getHeight() {
+        return HEIGHT;
+    }
+
+    /**
+     *
+     * @return the number of mines
+     */
+    public int getMines() {
+        return MINES;
+    }
+
+    /**
+     *
+     * @return the seed of the mine placement
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Derives the seeds of a series of games, java.util.Random gives close first draws for consecutive seeds
+     * so the index is mixed into the seed instead of added to it
+     * @param seed : the seed of the series
+     * @param k : the index of the game in the series
+     * @return the seed of the k-th game
+     */
+    public static long getSeriesSeed(long seed, long k) {
+        return ChunkedStorage.mix(seed, k);
+    }
+
+    /**
+     *
+     * @return the cell index the mines have been placed from, the first move or the origin of the layout the game
+     * has been dealt from, -1 before the first move or for a game saved by an older version
+     */
+    public int getOrigin() {
+        return origin;
+    }
+
+    /**
+     *
+     * @return the symmetry of the layout applied to the grid, as given to MineLayout.transform,
+     * 0 for a grid generated from the first move
+     */
+    public int getSymmetry() {
+        return symmetry;
+    }
+
+    /**
+     *
+     * @param height : the grid number of rows
+     * @param width : the grid number of columns
+     * @return the maximum number of mines that a given grid should have
+     */
+    public int getMaxMines(int height, int width) {
+        return height * width - 2 * (height + width);
+    }
+
+    /**
+     *
+     * @return true if none move has been done yet
+     */
+    private boolean isFirstMove() {
+        return !generated;
+    }
+
+    /**
+     *
+     * @return true if the grid is stored by chunks, for the grids of more than CHUNKED_CELLS cells
+     */
+    public boolean isChunked() {
+        return state.isSparse();
+    }
+
+    /**
+     *
+     * @return true once the mines have been placed, by the first move
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return the (i, j) cell content
+     */
+    public Cell getCell(int i, int j) {
+        int cell = index(i, j);
+        return isMine(cell) ? Cell.MINE : CELLS[getAdjacentMines(cell) + 1];
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return true if the (i, j) cell has been discovered
+     */
+    public boolean isDiscovered(int i, int j) {
+        int cell = index(i, j);
+        return !state.isPristine(cell) && isDiscovered(cell); // an unexplored chunk isn't computed to be drawn hidden
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return true if the (i, j) cell has been marked
+     */
+    public boolean isMarked(int i, int j) {
+        int cell = index(i, j);
+        return !state.isPristine(cell) && isMarked(cell);
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return true if a move changed the part of the grid holding the (i, j) cell, always true for the small grids,
+     * the content of the other chunks is only known once they are computed
+     */
+    public boolean isExplored(int i, int j) {
+        return !state.isPristine(index(i, j));
+    }
+
+    /**
+     * Walks the explored parts of the grid, which hold every discovered cell and every flag
+     * @param cell : the cell index to start from
+     * @return the first cell index from the given one in a part of the grid a move changed, every cell for the small
+     * grids, or -1 if there is none
+     */
+    int nextExplored(int cell) {
+        return state.nextStored(cell);
+    }
+
+    /**
+     *
+     * @return the 3BV of the grid, the minimum number of clicks needed to clear it, 0 before the first move
+     * and for the chunked grids
+     */
+    public int getThreeBV() {
+        return threeBV;
+    }
+
+    /**
+     *
+     * @return the number of discoveries and jokers played
+     */
+    public int getLeftClicks() {
+        return leftClicks;
+    }
+
+    /**
+     *
+     * @return the number of flags put or removed
+     */
+    public int getRightClicks() {
+        return rightClicks;
+    }
+
+    /**
+     *
+     * @return the number of discoveries played around a number
+     */
+    public int getChordClicks() {
+        return chordClicks;
+    }
+
+    /**
+     *
+     * @return the number of marked cells
+     */
+    public int getCountMarkedCells() {
+        return countMarkedCells;
+    }
+
+    /**
+     *
+     * @return the difference between the number of mines and the number of marked cells
+     */
+    public int getRemainingCountMines() {
+        return MINES - getCountMarkedCells();
+    }
+
+    /**
+     *
+     * @return true if the game is in the flag mode, false otherwise
+     */
+    public boolean isFlagMode() {
+        return flagMode;
+    }
+
+    /**
+     *
+     * @return true if the game is lost
+     */
+    public boolean isLost() {
+        return lost;
+    }
+
+    /**
+     *
+     * @return true if the game is won
+     */
+    public boolean isWon() {
+        return won;
+    }
+
+    /**
+     *
+     * @return true if the game is over (won, lost)
+     */
+    public boolean isGameOver() {
+        return isLost() || isWon() || isFirstMove();
+    }
+
+    /**
+     *
+     * @return the elapsed time in whole seconds since the game begun, as of the last stop of the clock
+     */
+    public int getElapsedTime() {
+        return (int) (elapsedMillis / 1000);
+    }
+
+    /**
+     *
+     * @param now : the current time of a monotonic clock in milliseconds, such as SystemClock.elapsedRealtime()
+     * @return the elapsed time in milliseconds since the game begun, pauses excluded
+     */
+    public long getElapsedMillis(long now) {
+        return clockStart < 0 ? elapsedMillis : elapsedMillis + now - clockStart;
+    }
+
+    /**
+     *
+     * @return true if the clock is counting the time
+     */
+    public boolean isClockRunning() {
+        return clockStart >= 0;
+    }
+
+    /**
+     * Starts counting the time and resumes the game, nothing happens if the clock is already running
+     * @param now : the current time of a monotonic clock in milliseconds
+     */
+    public void startClock(long now) {
+        if(clockStart < 0)
+            clockStart = now;
+        pause = false;
+    }
+
+    /**
+     * Stops counting the time, nothing happens if the clock is already stopped
+     * @param now : the current time of the monotonic clock given to startClock
+     */
+    public void stopClock(long now) {
+        if(clockStart < 0)
+            return;
+        elapsedMillis += Math.max(now - clockStart, 0);
+        clockStart = -1;
+    }
+
+    /**
+     *
+     * @return true if the game is paused, false otherwise
+     */
+    public boolean isPause() {
+        return pause;
+    }
+
+    /**
+     *
+     * @return true if the burst mode is activated
+     */
+    public boolean isBurstModeJoker() {
+        return burstModeJoker;
+    }
+
+    /**
+     *
+     * @return true if the burst joker has been used
+     */
+    public boolean isBurstJokerUsed() {
+        return burstJokerUsed;
+    }
+
+    /**
+     *
+     * @return true if the safe mode is activated
+     */
+    public boolean isSafeModeJoker() {
+        return safeModeJoker;
+    }
+
+    /**
+     *
+     * @return true if the safe joker has been used
+     */
+    public boolean isSafeJokerUsed() {
+        return safeJokerUsed;
+    }
+
+    /**
+     * Activate the burst mode
+     */
+    public void activateBurstModeJoker() {
+        if(!isBurstJokerUsed())
+            this.burstModeJoker = true;
+    }
+
+    /**
+     *
+     * @param burstJokerUsed : true if the burst joker has been used
+     */
+    private void setBurstJokerUsed(boolean burstJokerUsed) {
+        this.burstJokerUsed = burstJokerUsed;
+    }
+
+    /**
+     * Activate the safe mode
+     */
+    public void activateSafeModeJoker() {
+        if(!isSafeJokerUsed())
+            this.safeModeJoker = true;
+    }
+
+    /**
+     *
+     * @param safeJokerUsed : true if the safe joker has been used
+     */
+    private void setSafeJokerUsed(boolean safeJokerUsed) {
+        this.safeJokerUsed = safeJokerUsed;
+    }
+
+    /**
+     * Deactivate joker mode
+     */
+    public void deactivateJoker() {
+        this.safeModeJoker = false;
+        this.burstModeJoker = false;
+    }
+
+    /**
+     * The game has been lost
+     */
+    private void setLost() {
+        this.lost = true;
+    }
+
+    /**
+     * The game has been won
+     */
+    private void setWon() {
+        this.won = true;
+    }
+
+    /**
+     *
+     * @param pause : true if the game must be paused, false for resuming the game
+     */
+    public void setPause(boolean pause) {
+        this.pause = pause;
+    }
+
+    /**
+     * Put the game in the flag mode
+     * @param flagMode true to get in the flag mode, false to cancel the flag mode
+     */
+    public void setFlagMode(boolean flagMode) {
+        this.flagMode = flagMode;
+    }
+
+    /**
+     * Writes the game in the binary format described by DemineurSnapshot, after its header
+     * @param out : the destination
+     * @throws IOException if the game cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(WIDTH);
+        out.writeInt(HEIGHT);
+        out.writeInt(MINES);
+        out.writeLong(seed);
+        int flags = 0;
+        boolean values[] = {generated, flagMode, lost, won, pause, burstModeJoker, burstJokerUsed, safeModeJoker, safeJokerUsed};
+        for(int k = 0; k < values.length; k++)
+            flags |= values[k] ? 1 << k : 0;
+        out.writeShort(flags);
+        out.writeLong(elapsedMillis);
+        out.writeInt(countDiscoveredCells);
+        out.writeInt(countMarkedCells);
+        out.writeInt(leftClicks);
+        out.writeInt(rightClicks);
+        out.writeInt(chordClicks);
+        out.writeInt(origin);
+        out.writeByte(symmetry);
+        state.writeTo(out);
+    }
+
+    /**
+     * Reads a game written by writeTo
+     * @param in : the source
+     * @param version : the snapshot version, the first one held the elapsed time in seconds,
+     * the first two had no click counters and the first four didn't keep where the grid comes from
+     * @return the game, with its clock stopped
+     * @throws IOException if the game cannot be read
+     */
+    static DemineurModel readFrom(DataInput in, int version) throws IOException {
+        int width = in.readInt();
+        int height = in.readInt();
+        int mines = in.readInt();
+        long seed = in.readLong();
+        if(width <= 0 || height <= 0 || mines < 0 || (long) width * height > MAX_CELLS || mines >= width * height)
+            throw new IOException("Invalid grid " + width + "x" + height + "x" + mines);
+        DemineurModel model = new DemineurModel(width, height, mines, seed);
+        int flags = in.readUnsignedShort();
+        model.generated = (flags & 1) != 0;
+        model.flagMode = (flags & 1 << 1) != 0;
+        model.lost = (flags & 1 << 2) != 0;
+        model.won = (flags & 1 << 3) != 0;
+        model.pause = (flags & 1 << 4) != 0;
+        model.burstModeJoker = (flags & 1 << 5) != 0;
+        model.burstJokerUsed = (flags & 1 << 6) != 0;
+        model.safeModeJoker = (flags & 1 << 7) != 0;
+        model.safeJokerUsed = (flags & 1 << 8) != 0;
+        model.elapsedMillis = version == 1 ? in.readInt() * 1000L : in.readLong();
+        model.countDiscoveredCells = in.readInt();
+        model.countMarkedCells = in.readInt();
+        if(version >= 3) {
+            model.leftClicks = in.readInt();
+            model.rightClicks = in.readInt();
+            model.chordClicks = in.readInt();
+        }
+        if(version >= 5) {
+            model.origin = in.readInt();
+            model.symmetry = in.readUnsignedByte();
+            if(model.origin < -1 || model.origin >= width * height || model.symmetry >= MineLayout.SYMMETRIES)
+                throw new IOException("Invalid grid origin " + model.origin + " or symmetry " + model.symmetry);
+        }
+        model.state.readFrom(in, seed);
+        if(model.generated && !model.state.isSparse())
+            model.threeBV = model.computeThreeBV();
+        model.changed();
+        return model;
+    }
+
+    /**
+     *
+     * @param cell : the cell index
+     * @return the number of cells around the given cell, less than 8 on the grid edges
+     */
+    private int countNeighbours(int cell) {
+        return Integer.bitCount(getNeighbourMask(cell));
+    }
+
+    /**
+     * Checks if putting a mine on the cell will make an adjacent mine have only mines neighbours
+     * @param cell : the cell index
+     * @return true if the mine can be placed there
+     */
+    private boolean isMineValidPosition(int cell) {
+        int offsets[] = getNeighbourOffsets();
+        int mask = getNeighbourMask(cell);
+        for(int k = 0; k < 8; k++) {
+            if((mask & (1 << k)) == 0)
+                continue;
+            int neighbour = cell + offsets[k];
+            if(isMine(neighbour) && countNeighbours(neighbour) == getAdjacentMines(neighbour) + 1) // we suppose that the cell contains a mine
+                return false; // this cell has an incorrect number of adjacent mines, so the cell cannot contain a mine
+        }
+        return true;
+    }
+
+    /**
+     * Makes the cell become a discovered cell
+     * @param cell : the cell index
+     */
+    private void setDiscovered(int cell) {
+        if(isDiscovered(cell) || isMarked(cell))
+            return;
+        setChanged(cell);
+        state.set(cell, (byte) (state.get(cell) | DISCOVERED_BIT));
+        countDiscoveredCells++;
+    }
+
+    @Override
+    int getState(long cell) {
+        return state.get((int) cell);
+    }
+
+    @Override
+    int getNeighbours(long cell, long neighbours[]) {
+        int index = (int) cell;
+        int offsets[] = getNeighbourOffsets();
+        int mask = getNeighbourMask(index);
+        int size = 0;
+        for(int k = 0; k < 8; k++) {
+            if((mask & (1 << k)) != 0)
+                neighbours[size++] = index + offsets[k];
+        }
+        return size;
+    }
+
+    @Override
+    void discover(long cell) {
+        setDiscovered((int) cell);
+    }
+
+    @Override
+    void toggleMark(long cell) {
+        setMarked((int) cell);
+    }
+
+    @Override
+    void lose() {
+        setLost();
+    }
+
+    /**
+     * Once the flood queue holds ParallelFlood.MIN_FRONTIER cells the rest of the region is opened in parallel
+     * if the device has several cores, which only happens on large grids with few mines
+     */
+    @Override
+    int getParallelFrontier() {
+        return parallelFrontier;
+    }
+
+    /**
+     * Opens the rest of the region from the cells of the flood queue, one frontier at a time.
+     * The tasks discover the claimed cells of the chunks this grid owns, the other claimed cells are discovered here,
+     * which copies their chunks for the next frontiers. The changes and the discovered cells count are only updated
+     * by this thread
+     */
+    @Override
+    void setParallelEmptyDiscovered() {
+        int frontier[] = new int[getFloodSize()];
+        for(int k = 0; k < frontier.length; k++)
+            frontier[k] = (int) pollFlood();
+        ParallelFlood flood = new ParallelFlood(this, state, getNeighbourOffsets(), MineProbability.getSharedPool());
+        while(frontier.length > 0) {
+            ParallelFlood.Claims claims = flood.expand(frontier);
+            int next[] = new int[claims.size() + claims.getDeferredCount()];
+            int size = 0;
+            for(int k = 0; k < claims.size(); k++) {
+                byte previous = claims.getPrevious(k);
+                if((previous & CHANGED_BIT) == 0)
+                    changes.add(claims.get(k), previous);
+                countDiscoveredCells++;
+                if((previous & (MINE_BIT | ADJACENT_MASK)) == 0)
+                    next[size++] = claims.get(k);
+            }
+            for(int k = 0; k < claims.getDeferredCount(); k++) {
+                int neighbour = claims.getDeferred(k);
+                setDiscovered(neighbour);
+                if(!isMine(neighbour) && getAdjacentMines(neighbour) == 0)
+                    next[size++] = neighbour;
+            }
+            frontier = Arrays.copyOf(next, size);
+        }
+    }
+
+    /**
+     * Changes when the flood fill switches to the parallel opening, so both can be compared on any device
+     * @param cells : the number of cells waiting in the flood queue above which the region is opened in parallel,
+     * Integer.MAX_VALUE to always open it sequentially
+     */
+    void setParallelFrontier(int cells) {
+        parallelFrontier = cells;
+    }
+
+    /**
+     * Marks the cell with a flag if it wasn't, else removes the flag and updates the flags count
+     * @param cell : the cell index
+     */
+    private void setMarked(int cell) {
+        setChanged(cell);
+        state.set(cell, (byte) (state.get(cell) ^ MARKED_BIT));
+        countMarkedCells += isMarked(cell) ? 1 : -1;
+    }
+
+    /**
+     * Adds the cell to the changes of the current move if it isn't already there
+     * @param cell : the cell index
+     */
+    private void setChanged(int cell) {
+        byte value = state.get(cell);
+        if((value & CHANGED_BIT) != 0)
+            return;
+        changes.add(cell, value);
+        state.set(cell, (byte) (value | CHANGED_BIT));
+    }
+
+    /**
+     * The game is over, the mines and the flags will be revealed so they are added to the changes.
+     * Only the explored chunks of a chunked grid are scanned
+     */
+    private void revealMinesAndFlags() {
+        for(int cell = state.nextStored(0); cell >= 0; cell = state.nextStored(cell + 1)) {
+            if(isMine(cell) || isMarked(cell))
+                setChanged(cell);
+        }
+    }
+
+    /**
+     * Plays in the cell following MoveRules, the game is won once every cell without a mine is discovered
+     * @param cell : the cell index
+     */
+    @Override
+    void basicMove(long cell) {
+        super.basicMove(cell);
+        if(!lost && countDiscoveredCells == HEIGHT * WIDTH - MINES)
+            setWon();
+    }
+
+    /**
+     * The move will be safe. Puts a flag in the cell if it's a mine, else discovers it.
+     * The player has to play on an undiscovered and unmarked cell
+     * @param cell : the cell index
+     */
+    private void safeMove(int cell) {
+        if(isDiscovered(cell) || isMarked(cell))
+            return;
+        if(isMine(cell))
+            setMarked(cell);
+        else
+            basicMove(cell);
+        setSafeJokerUsed(true);
+        safeModeJoker = false;
+    }
+
+    /**
+     * All the adjacent cells will be discovered or marked depending on the cell nature, including the current cell.
+     * The player has to play on an undiscovered and unmarked cell
+     * @param cell : the cell index
+     */
+    private void burstMove(int cell) {
+        if(isDiscovered(cell) || isMarked(cell))
+            return;
+        int offsets[] = getNeighbourOffsets();
+        int mask = getNeighbourMask(cell);
+        for(int k = -1; k < 8; k++) {
+            if(k >= 0 && (mask & (1 << k)) == 0)
+                continue;
+            int burst = k < 0 ? cell : cell + offsets[k];
+            if(isMine(burst)) {
+                if(!isMarked(burst))
+                    setMarked(burst);
+            }
+            else {
+                if(isMarked(burst))
+                    setMarked(burst);
+                basicMove(burst);
+            }
+        }
+        setBurstJokerUsed(true);
+        burstModeJoker = false;
+    }
+
+    /**
+     * Makes the grid changes depending on the player's move's type
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return the cells whose state changed, valid until the next move
+     */
+    public ChangeSet move(int i, int j) {
+        int cell = index(i, j);
+        if(isSafeModeJoker())
+            return play(cell, MoveJournal.SAFE_JOKER);
+        else if (isBurstModeJoker()) {
+            return play(cell, MoveJournal.BURST_JOKER);
+        }
+        int mode = getMoveMode(cell, isFlagMode());
+        if(mode != NO_MOVE)
+            return play(cell, mode);
+        getChanges().clear();
+        return changes;
+    }
+
+    /**
+     * Plays a move whose type is already known and records it in the journal
+     * @param cell : the cell index
+     * @param mode : the move type, one of the MoveJournal modes
+     * @return the cells whose state changed, valid until the next move
+     */
+    private ChangeSet play(int cell, int mode) {
+        getChanges().clear();
+        boolean over = isLost() || isWon();
+        int flags = getJournalFlags();
+        if(isFirstMove())
+            initCells(cell);
+        switch(mode) {
+            case MoveJournal.SAFE_JOKER: safeMove(cell); break;
+            case MoveJournal.BURST_JOKER: burstMove(cell); break;
+            case MoveJournal.FLAG: setMarked(cell); break;
+            case MoveJournal.CHORD: discoveredMove(cell); break;
+            default: basicMove(cell); break;
+        }
+        if(!over && (isLost() || isWon()))
+            revealMinesAndFlags();
+        for(int k = 0; k < changes.size(); k++)
+            state.set(changes.get(k), (byte) (state.get(changes.get(k)) & ~CHANGED_BIT));
+        if(changes.size() > 0 || flags != getJournalFlags()) {
+            getJournal().record(cell, mode, flags, getJournalFlags(), changes, state);
+            countClick(mode, 1);
+            changed();
+        }
+        return changes;
+    }
+
+    /**
+     * Without publishing, only the thread playing the game may call this method, the snapshot is then built
+     * on demand when the grid changed since the last call
+     * @return the state of the grid as of the last move, which can be read from any thread
+     */
+    public BoardSnapshot getSnapshot() {
+        BoardSnapshot current = snapshot;
+        if(!publishing && (current == null || current.getVersion() != version))
+            current = publish();
+        return current;
+    }
+
+    /**
+     *
+     * @return true if every change of the grid publishes a snapshot
+     */
+    public boolean isPublishing() {
+        return publishing;
+    }
+
+    /**
+     * Starts or stops publishing a snapshot after every change of the grid, to be called by the thread playing
+     * the game before other threads read its snapshots. Without readers on other threads, moves copy nothing
+     * @param publishing : true to publish the snapshots
+     */
+    public void setPublishing(boolean publishing) {
+        this.publishing = publishing;
+        if(publishing)
+            publish();
+    }
+
+    /**
+     * Counts a change of the grid once a move is complete, and publishes it if other threads read the snapshots
+     */
+    private void changed() {
+        version++;
+        if(publishing)
+            publish();
+    }
+
+    /**
+     * Publishes the current state of the grid.
+     * A small grid is copied, a chunked grid shares its chunks with the snapshot until a move changes them
+     * @return the published snapshot
+     */
+    private BoardSnapshot publish() {
+        BoardSnapshot current = new BoardSnapshot(version, WIDTH, HEIGHT, MINES, generated, lost, won,
+                countDiscoveredCells, countMarkedCells, state.snapshot());
+        snapshot = current;
+        return current;
+    }
+
+    /**
+     *
+     * @return the change set reused by every move
+     */
+    private ChangeSet getChanges() {
+        if(changes == null)
+            changes = new ChangeSet();
+        return changes;
+    }
+
+    /**
+     *
+     * @return the moves played since the model has been created or loaded
+     */
+    public MoveJournal getJournal() {
+        if(journal == null)
+            journal = new MoveJournal();
+        return journal;
+    }
+
+    /**
+     *
+     * @return true if a move can be undone
+     */
+    public boolean canUndo() {
+        return journal != null && journal.getPosition() > 0;
+    }
+
+    /**
+     *
+     * @return true if an undone move can be played again
+     */
+    public boolean canRedo() {
+        return journal != null && journal.getPosition() < journal.size();
+    }
+
+    /**
+     * Cancels the last move. The mines stay where they are, even when the first move is undone
+     * @return the cells whose state changed, valid until the next move
+     */
+    public ChangeSet undo() {
+        getChanges().clear();
+        if(!canUndo())
+            return changes;
+        int move = journal.getPosition() - 1;
+        for(int d = journal.getDeltaEnd(move) - 1; d >= journal.getDeltaStart(move); d--)
+            restoreCell(journal.getDeltaCell(d), journal.getDeltaPrevious(d));
+        setJournalFlags(journal.getFlagsBefore(move));
+        countClick(journal.getMode(move), -1);
+        journal.setPosition(move);
+        changed();
+        return changes;
+    }
+
+    /**
+     * Plays again the last undone move
+     * @return the cells whose state changed, valid until the next move
+     */
+    public ChangeSet redo() {
+        getChanges().clear();
+        if(!canRedo())
+            return changes;
+        int move = journal.getPosition();
+        for(int d = journal.getDeltaStart(move); d < journal.getDeltaEnd(move); d++)
+            restoreCell(journal.getDeltaCell(d), journal.getDeltaNext(d));
+        setJournalFlags(journal.getFlagsAfter(move));
+        countClick(journal.getMode(move), 1);
+        journal.setPosition(move + 1);
+        changed();
+        return changes;
+    }
+
+    /**
+     * Counts a journaled move, or removes it when it is undone, in the click counter of its mode
+     * @param mode : the move type, one of the MoveJournal modes
+     * @param delta : 1 for a move played, -1 for a move undone
+     */
+    private void countClick(int mode, int delta) {
+        switch(mode) {
+            case MoveJournal.FLAG: rightClicks += delta; break;
+            case MoveJournal.CHORD: chordClicks += delta; break;
+            default: leftClicks += delta; break;
+        }
+    }
+
+    /**
+     * Puts back a recorded state in a cell, updating the counters and the changes
+     * @param cell : the cell index
+     * @param value : the packed state
+     */
+    private void restoreCell(int cell, byte value) {
+        changes.add(cell, state.get(cell));
+        countDiscoveredCells += ((value & DISCOVERED_BIT) != 0 ? 1 : 0) - (isDiscovered(cell) ? 1 : 0);
+        countMarkedCells += ((value & MARKED_BIT) != 0 ? 1 : 0) - (isMarked(cell) ? 1 : 0);
+        state.set(cell, value);
+    }
+
+    /**
+     *
+     * @return the flags changed by the moves, packed as recorded in the journal
+     */
+    private int getJournalFlags() {
+        return (lost ? 1 : 0) | (won ? 1 << 1 : 0) | (burstModeJoker ? 1 << 2 : 0) | (burstJokerUsed ? 1 << 3 : 0)
+                | (safeModeJoker ? 1 << 4 : 0) | (safeJokerUsed ? 1 << 5 : 0);
+    }
+
+    /**
+     *
+     * @param flags : the flags changed by the moves, packed as recorded in the journal
+     */
+    private void setJournalFlags(int flags) {
+        lost = (flags & 1) != 0;
+        won = (flags & 1 << 1) != 0;
+        burstModeJoker = (flags & 1 << 2) != 0;
+        burstJokerUsed = (flags & 1 << 3) != 0;
+        safeModeJoker = (flags & 1 << 4) != 0;
+        safeJokerUsed = (flags & 1 << 5) != 0;
+    }
+
+    /**
+     * Rebuilds a game from its seed and the moves currently applied in its journal
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     * @param seed : seed of the mine placement
+     * @param journal : the moves to play again
+     * @return the rebuilt game, with its own journal of the replayed moves
+     */
+    public static DemineurModel replay(int width, int height, int mines, long seed, MoveJournal journal) {
+        DemineurModel model = new DemineurModel(width, height, mines, seed);
+        return replay(model, journal);
+    }
+
+    /**
+     * Rebuilds a game dealt from a layout and the moves currently applied in its journal
+     * @param layout : the grid of the game
+     * @param journal : the moves to play again
+     * @return the rebuilt game, with its own journal of the replayed moves
+     */
+    public static DemineurModel replay(MineLayout layout, MoveJournal journal) {
+        return replay(new DemineurModel(layout), journal);
+    }
+
+    private static DemineurModel replay(DemineurModel model, MoveJournal journal) {
+        for(int k = 0; k < journal.getPosition(); k++)
+            model.play(journal.getCell(k), journal.getMode(k));
+        return model;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.android.demineur;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Binary save format of a game.
+ * The header holds the format version, the grid size, the seed, the game flags and counters, the grid origin,
+ * then the packed cells are written as they are stored in the model: one byte per cell for the small grids,
+ * and the first move followed by the explored chunks for the grids of more than DemineurModel.CHUNKED_CELLS cells
+ */
+public final class DemineurSnapshot {
+
+    /**
+     * First bytes of every snapshot, "DMNR"
+     */
+    private static final int MAGIC = 0x444D4E52;
+
+    /**
+     * Current version of the format, the version 1 held the elapsed time in seconds instead of milliseconds,
+     * the versions 1 and 2 had no click counters, the versions before 4 had no chunked grids
+     * and the versions before 5 had no grid origin and symmetry
+     */
+    public static final int VERSION = 5;
+
+    private DemineurSnapshot() {
+    }
+
+    /**
+     * Writes the game to the stream, which is flushed but not closed
+     * @param model : the game
+     * @param out : the destination
+     * @throws IOException if the game cannot be written
+     */
+    public static void save(DemineurModel model, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        model.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Reads a game written by save
+     * @param in : the source
+     * @return the game
+     * @throws IOException if the stream doesn't hold a snapshot of a known version
+     */
+    public static DemineurModel load(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if(data.readInt() != MAGIC)
+            throw new IOException("Not a game snapshot");
+        int version = data.readUnsignedByte();
+        if(version < 1 || version > VERSION)
+            throw new IOException("Unknown snapshot version " + version);
+        return DemineurModel.readFrom(data, version);
+    }
+}
@@ -0,0 +1,433 @@
+package com.android.demineur;
+
+/**
+ * Finds the cells that are certainly safe or certainly mines, from what the player can see only:
+ * the discovered numbers and the flags, which are trusted to be on mines.
+ * The solver keeps the frontier of the grid, the discovered numbers next to hidden cells, and updates it from
+ * the changes of each move, so a solve costs a time depending on the frontier size and not on the grid size
+ */
+public final class DemineurSolver {
+
+    /**
+     * Cell mark set while the cell is in the frontier list
+     */
+    private static final int FRONTIER = 1;
+
+    /**
+     * Cell mark set once the cell has been found safe by the current solve
+     */
+    private static final int SAFE = 2;
+
+    /**
+     * Cell mark set once the cell has been found to be a mine by the current solve
+     */
+    private static final int MINE = 4;
+
+    /**
+     * The solved game
+     */
+    private final DemineurModel model;
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * Marks of the frontier cells and of the results, FRONTIER, SAFE and MINE bits: open addressing table of the
+     * cell indexes plus one, 0 for a free slot, and of their marks. A cell leaves the table with its last mark,
+     * so the table is sized to the frontier and not to the grid
+     */
+    private int markedCells[];
+    private byte marks[];
+    private int markedCount;
+
+    /**
+     * Cells that may be in the frontier, the ones that left it are removed at the next solve
+     */
+    private int frontier[];
+    private int frontierSize;
+
+    /**
+     * Safe cells found by the last solve
+     */
+    private int safe[];
+    private int safeSize;
+
+    /**
+     * Mines found by the last solve
+     */
+    private int mines[];
+    private int minesSize;
+
+    /**
+     * Hidden unmarked neighbours of the two constraints being compared, reused by every solve
+     */
+    private final int first[];
+    private final int second[];
+
+    /**
+     * Construct a solver of the given game and scans its explored parts once
+     * @param model : the game
+     */
+    public DemineurSolver(DemineurModel model) {
+        this.model = model;
+        this.width = model.getWidth();
+        this.height = model.getHeight();
+        markedCells = new int[64];
+        marks = new byte[64];
+        frontier = new int[16];
+        safe = new int[16];
+        mines = new int[16];
+        first = new int[8];
+        second = new int[8];
+        reset();
+    }
+
+    /**
+     * Rebuilds the frontier from the explored parts of the grid, the only ones holding discovered numbers,
+     * after the game has changed without a change set
+     */
+    public void reset() {
+        for(int k = 0; k < frontierSize; k++)
+            clearMark(frontier[k], FRONTIER);
+        frontierSize = 0;
+        for(int cell = model.nextExplored(0); cell >= 0; cell = model.nextExplored(cell + 1))
+            addToFrontier(cell);
+    }
+
+    /**
+     * Updates the frontier after a move, an undo or a redo
+     * @param changes : the cells changed by the model
+     */
+    public void update(ChangeSet changes) {
+        for(int k = 0; k < changes.size(); k++) {
+            int cell = changes.get(k);
+            int i = cell / width;
+            int j = cell % width;
+            for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+                for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++)
+                    addToFrontier(m * width + n);
+            }
+        }
+    }
+
+    /**
+     * Looks for the safe cells and the mines that can be deduced, first from each number alone,
+     * then from each pair of close numbers
+     * @return true if at least one safe cell or mine has been found
+     */
+    public boolean solve() {
+        clearResults();
+        compactFrontier();
+        for(int k = 0; k < frontierSize; k++) {
+            int cell = frontier[k];
+            int unknown = getUnknown(cell, first);
+            int remaining = getRemainingMines(cell);
+            if(remaining == 0)
+                addAll(first, unknown, SAFE);
+            else if(remaining == unknown)
+                addAll(first, unknown, MINE);
+        }
+        for(int k = 0; k < frontierSize; k++)
+            solvePairs(frontier[k]);
+        return safeSize > 0 || minesSize > 0;
+    }
+
+    /**
+     *
+     * @return the number of safe cells found by the last solve
+     */
+    public int getSafeCount() {
+        return safeSize;
+    }
+
+    /**
+     *
+     * @param k : the position in the results, between 0 and getSafeCount() - 1
+     * @return the index of the k-th safe cell, i * width + j
+     */
+    public int getSafe(int k) {
+        if(k < 0 || k >= safeSize)
+            throw new IndexOutOfBoundsException(k + "");
+        return safe[k];
+    }
+
+    /**
+     *
+     * @return the number of mines found by the last solve
+     */
+    public int getMineCount() {
+        return minesSize;
+    }
+
+    /**
+     *
+     * @param k : the position in the results, between 0 and getMineCount() - 1
+     * @return the index of the k-th mine, i * width + j
+     */
+    public int getMine(int k) {
+        if(k < 0 || k >= minesSize)
+            throw new IndexOutOfBoundsException(k + "");
+        return mines[k];
+    }
+
+    /**
+     * Compares a frontier number with every frontier number up to two cells away.
+     * If the second number needs as many more mines than the first one as it has cells of its own,
+     * those cells are all mines and the cells of the first number only are all safe
+     * @param cell : the first number
+     */
+    private void solvePairs(int cell) {
+        int firstUnknown = getUnknown(cell, first);
+        if(firstUnknown == 0)
+            return;
+        int firstRemaining = getRemainingMines(cell);
+        int i = cell / width;
+        int j = cell % width;
+        for(int m = Math.max(i - 2, 0); m <= Math.min(i + 2, height - 1); m++) {
+            for(int n = Math.max(j - 2, 0); n <= Math.min(j + 2, width - 1); n++) {
+                int other = m * width + n;
+                if(other == cell || !hasMark(other, FRONTIER))
+                    continue;
+                int secondUnknown = getUnknown(other, second);
+                int secondOnly = secondUnknown - countShared(first, firstUnknown, second, secondUnknown);
+                if(secondOnly == secondUnknown) // no shared cell
+                    continue;
+                if(getRemainingMines(other) - firstRemaining == secondOnly) {
+                    addOnly(second, secondUnknown, first, firstUnknown, MINE);
+                    addOnly(first, firstUnknown, second, secondUnknown, SAFE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the cell to the frontier if it is a discovered number with hidden unmarked neighbours
+     * @param cell : the cell index
+     */
+    private void addToFrontier(int cell) {
+        if(hasMark(cell, FRONTIER) || !isFrontier(cell))
+            return;
+        if(frontierSize == frontier.length)
+            frontier = grow(frontier);
+        frontier[frontierSize++] = cell;
+        setMark(cell, FRONTIER);
+    }
+
+    /**
+     * Removes from the frontier list the cells that aren't in the frontier anymore
+     */
+    private void compactFrontier() {
+        int size = 0;
+        for(int k = 0; k < frontierSize; k++) {
+            int cell = frontier[k];
+            if(isFrontier(cell))
+                frontier[size++] = cell;
+            else
+                clearMark(cell, FRONTIER);
+        }
+        frontierSize = size;
+    }
+
+    /**
+     *
+     * @param cell : the cell index
+     * @return true if the cell is a discovered number with hidden unmarked neighbours
+     */
+    private boolean isFrontier(int cell) {
+        int i = cell / width;
+        int j = cell % width;
+        if(!model.isDiscovered(i, j) || model.getCell(i, j) == DemineurModel.Cell.MINE || model.getCell(i, j) == DemineurModel.Cell.EMPTY)
+            return false;
+        return getUnknown(cell, null) > 0;
+    }
+
+    /**
+     * Lists the hidden unmarked neighbours of a cell
+     * @param cell : the cell index
+     * @param unknown : receives the neighbours in increasing order, or null to only count them
+     * @return the number of neighbours
+     */
+    private int getUnknown(int cell, int unknown[]) {
+        int i = cell / width;
+        int j = cell % width;
+        int count = 0;
+        for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+            for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++) {
+                if((m != i || n != j) && !model.isDiscovered(m, n) && !model.isMarked(m, n)) {
+                    if(unknown != null)
+                        unknown[count] = m * width + n;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @param cell : the index of a discovered number
+     * @return the number of mines around the cell that aren't flagged yet
+     */
+    private int getRemainingMines(int cell) {
+        int i = cell / width;
+        int j = cell % width;
+        int count = model.getCell(i, j).ordinal() - 1;
+        for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+            for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++) {
+                if(model.isMarked(m, n))
+                    count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @return the number of cells in both sorted lists
+     */
+    private static int countShared(int a[], int aSize, int b[], int bSize) {
+        int count = 0;
+        for(int x = 0, y = 0; x < aSize && y < bSize; ) {
+            if(a[x] == b[y]) {
+                count++;
+                x++;
+                y++;
+            }
+            else if(a[x] < b[y])
+                x++;
+            else
+                y++;
+        }
+        return count;
+    }
+
+    /**
+     * Adds the cells of the first sorted list that aren't in the second one to the results
+     */
+    private void addOnly(int a[], int aSize, int b[], int bSize, int result) {
+        for(int x = 0, y = 0; x < aSize; x++) {
+            while(y < bSize && b[y] < a[x])
+                y++;
+            if(y >= bSize || b[y] != a[x])
+                add(a[x], result);
+        }
+    }
+
+    private void addAll(int cells[], int size, int result) {
+        for(int k = 0; k < size; k++)
+            add(cells[k], result);
+    }
+
+    /**
+     * Adds a cell to the safe cells or the mines if it isn't already there
+     * @param cell : the cell index
+     * @param result : SAFE or MINE
+     */
+    private void add(int cell, int result) {
+        if(hasMark(cell, result))
+            return;
+        setMark(cell, result);
+        if(result == SAFE) {
+            if(safeSize == safe.length)
+                safe = grow(safe);
+            safe[safeSize++] = cell;
+        }
+        else {
+            if(minesSize == mines.length)
+                mines = grow(mines);
+            mines[minesSize++] = cell;
+        }
+    }
+
+    private void clearResults() {
+        for(int k = 0; k < safeSize; k++)
+            clearMark(safe[k], SAFE);
+        for(int k = 0; k < minesSize; k++)
+            clearMark(mines[k], MINE);
+        safeSize = 0;
+        minesSize = 0;
+    }
+
+    /**
+     *
+     * @param cell : the cell index
+     * @return the slot of the cell in the marks table, or the free slot where it would go
+     */
+    private int findMark(int cell) {
+        int mask = markedCells.length - 1;
+        int slot = (int) (ChunkedStorage.mix(cell, 0) >>> 32) & mask;
+        while(markedCells[slot] != 0 && markedCells[slot] != cell + 1)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     *
+     * @param cell : the cell index
+     * @param mark : FRONTIER, SAFE or MINE
+     * @return true if the cell has the mark
+     */
+    private boolean hasMark(int cell, int mark) {
+        return (marks[findMark(cell)] & mark) != 0;
+    }
+
+    /**
+     * Adds a mark to a cell, doubling the table when it is half full
+     * @param cell : the cell index
+     * @param mark : FRONTIER, SAFE or MINE
+     */
+    private void setMark(int cell, int mark) {
+        int slot = findMark(cell);
+        if(markedCells[slot] == 0) {
+            if(2 * (markedCount + 1) > markedCells.length) {
+                int oldCells[] = markedCells;
+                byte oldMarks[] = marks;
+                markedCells = new int[oldCells.length * 2];
+                marks = new byte[oldCells.length * 2];
+                for(int k = 0; k < oldCells.length; k++) {
+                    if(oldCells[k] != 0) {
+                        int free = findMark(oldCells[k] - 1);
+                        markedCells[free] = oldCells[k];
+                        marks[free] = oldMarks[k];
+                    }
+                }
+                slot = findMark(cell);
+            }
+            markedCells[slot] = cell + 1;
+            markedCount++;
+        }
+        marks[slot] |= mark;
+    }
+
+    /**
+     * Removes a mark from a cell, and the cell from the table once it has no mark left
+     * @param cell : the cell index
+     * @param mark : FRONTIER, SAFE or MINE
+     */
+    private void clearMark(int cell, int mark) {
+        int slot = findMark(cell);
+        marks[slot] &= ~mark;
+        if(markedCells[slot] == 0 || marks[slot] != 0)
+            return;
+        // moves back the following cells of the run that can't be found anymore past the freed slot
+        int mask = markedCells.length - 1;
+        for(int next = (slot + 1) & mask; markedCells[next] != 0; next = (next + 1) & mask) {
+            int home = (int) (ChunkedStorage.mix(markedCells[next] - 1, 0) >>> 32) & mask;
+            if(((next - home) & mask) >= ((next - slot) & mask)) {
+                markedCells[slot] = markedCells[next];
+                marks[slot] = marks[next];
+                slot = next;
+            }
+        }
+        markedCells[slot] = 0;
+        marks[slot] = 0;
+        markedCount--;
+    }
+
+    private static int[] grow(int array[]) {
+        int grown[] = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
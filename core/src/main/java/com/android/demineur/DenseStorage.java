@@ -0,0 +1,64 @@
+package com.android.demineur;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * One byte per cell, for the grids small enough to be held whole
+ */
+final class DenseStorage extends CellStorage {
+
+    private final byte cells[];
+
+    /**
+     * Construct an empty grid
+     * @param size : the number of cells
+     */
+    DenseStorage(int size) {
+        cells = new byte[size];
+    }
+
+    private DenseStorage(byte cells[]) {
+        this.cells = cells;
+    }
+
+    @Override
+    byte get(int cell) {
+        return cells[cell];
+    }
+
+    @Override
+    void set(int cell, byte value) {
+        cells[cell] = value;
+    }
+
+    @Override
+    void clear() {
+        Arrays.fill(cells, (byte) 0);
+    }
+
+    @Override
+    int nextStored(int cell) {
+        return cell < cells.length ? cell : -1;
+    }
+
+    /**
+     * Copies the whole grid, at most CHUNKED_CELLS bytes
+     */
+    @Override
+    CellStorage snapshot() {
+        return new DenseStorage(cells.clone());
+    }
+
+    @Override
+    void writeTo(DataOutput out) throws IOException {
+        out.write(cells);
+    }
+
+    @Override
+    void readFrom(DataInput in, long seed) throws IOException {
+        in.readFully(cells);
+    }
+}
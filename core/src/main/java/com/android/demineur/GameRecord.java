@@ -0,0 +1,229 @@
+package com.android.demineur;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Summary of a finished game, written as a fixed size record in the games log
+ */
+public final class GameRecord {
+
+    /**
+     * Version of the record format, written at the start of each record, the version 1 had no grid origin and symmetry
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Size of a record of the current version in bytes, its version included
+     */
+    public static final int SIZE = 59;
+
+    /**
+     * Bits of the record flags
+     */
+    private static final int WON = 1;
+    private static final int SAFE_JOKER = 2;
+    private static final int BURST_JOKER = 4;
+
+    private final int width;
+
+    private final int height;
+
+    private final int mines;
+
+    /**
+     * Seed of the mine placement, the grid is MineLayout.create(width, height, mines, seed, origin, false)
+     * transformed by the symmetry
+     */
+    private final long seed;
+
+    /**
+     * Cell the mines have been placed from, -1 if unknown
+     */
+    private final int origin;
+
+    private final int symmetry;
+
+    /**
+     * Wall clock time of the end of the game, in milliseconds since the epoch
+     */
+    private final long finishedAt;
+
+    /**
+     * Time played, pauses excluded
+     */
+    private final long durationMillis;
+
+    private final int leftClicks;
+
+    private final int rightClicks;
+
+    private final int chordClicks;
+
+    private final int threeBV;
+
+    /**
+     * WON, SAFE_JOKER and BURST_JOKER bits
+     */
+    private final int flags;
+
+    private GameRecord(int width, int height, int mines, long seed, int origin, int symmetry, long finishedAt, long durationMillis,
+                       int leftClicks, int rightClicks, int chordClicks, int threeBV, int flags) {
+        this.width = width;
+        this.height = height;
+        this.mines = mines;
+        this.seed = seed;
+        this.origin = origin;
+        this.symmetry = symmetry;
+        this.finishedAt = finishedAt;
+        this.durationMillis = durationMillis;
+        this.leftClicks = leftClicks;
+        this.rightClicks = rightClicks;
+        this.chordClicks = chordClicks;
+        this.threeBV = threeBV;
+        this.flags = flags;
+    }
+
+    /**
+     * Summarizes a finished game
+     * @param model : the game
+     * @param durationMillis : the time played, pauses excluded
+     * @param finishedAt : the wall clock time of the end of the game, in milliseconds since the epoch
+     * @return the record of the game
+     */
+    public static GameRecord of(DemineurModel model, long durationMillis, long finishedAt) {
+        int flags = (model.isWon() ? WON : 0) | (model.isSafeJokerUsed() ? SAFE_JOKER : 0) | (model.isBurstJokerUsed() ? BURST_JOKER : 0);
+        return new GameRecord(model.getWidth(), model.getHeight(), model.getMines(), model.getSeed(), model.getOrigin(), model.getSymmetry(),
+                finishedAt, durationMillis,
+                model.getLeftClicks(), model.getRightClicks(), model.getChordClicks(), model.getThreeBV(), flags);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMines() {
+        return mines;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     *
+     * @return the cell index the mines have been placed from, -1 for the records of the version 1
+     * and the games saved before the grid origin was kept
+     */
+    public int getOrigin() {
+        return origin;
+    }
+
+    /**
+     *
+     * @return the symmetry of the layout applied to the grid, as given to MineLayout.transform
+     */
+    public int getSymmetry() {
+        return symmetry;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getLeftClicks() {
+        return leftClicks;
+    }
+
+    public int getRightClicks() {
+        return rightClicks;
+    }
+
+    public int getChordClicks() {
+        return chordClicks;
+    }
+
+    public int getThreeBV() {
+        return threeBV;
+    }
+
+    public boolean isWon() {
+        return (flags & WON) != 0;
+    }
+
+    public boolean isSafeJokerUsed() {
+        return (flags & SAFE_JOKER) != 0;
+    }
+
+    public boolean isBurstJokerUsed() {
+        return (flags & BURST_JOKER) != 0;
+    }
+
+    /**
+     *
+     * @return the 3BV divided by the number of clicks, 1 for a game cleared with the fewest clicks possible
+     */
+    public double getEfficiency() {
+        int clicks = leftClicks + rightClicks + chordClicks;
+        return clicks == 0 ? 0 : (double) threeBV / clicks;
+    }
+
+    /**
+     *
+     * @return the 3BV cleared per second
+     */
+    public double getThreeBVPerSecond() {
+        return durationMillis <= 0 ? 0 : threeBV * 1000.0 / durationMillis;
+    }
+
+    /**
+     * Writes the record in SIZE bytes
+     * @param out : the destination
+     * @throws IOException if the record cannot be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(mines);
+        out.writeLong(seed);
+        out.writeInt(origin);
+        out.writeByte(symmetry);
+        out.writeLong(finishedAt);
+        out.writeLong(durationMillis);
+        out.writeInt(leftClicks);
+        out.writeInt(rightClicks);
+        out.writeInt(chordClicks);
+        out.writeInt(threeBV);
+        out.writeByte(flags);
+    }
+
+    /**
+     * Reads a record written by writeTo
+     * @param in : the source
+     * @return the record
+     * @throws IOException if the record cannot be read or has an unknown version
+     */
+    static GameRecord readFrom(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if(version < 1 || version > VERSION)
+            throw new IOException("Unknown record version " + version);
+        int width = in.readInt();
+        int height = in.readInt();
+        int mines = in.readInt();
+        long seed = in.readLong();
+        int origin = version >= 2 ? in.readInt() : -1;
+        int symmetry = version >= 2 ? in.readUnsignedByte() : 0;
+        return new GameRecord(width, height, mines, seed, origin, symmetry, in.readLong(), in.readLong(),
+                in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readUnsignedByte());
+    }
+}
@@ -0,0 +1,150 @@
+package com.android.demineur;
+
+/**
+ * Headless game session: a model together with its clock, usable without any user interface
+ */
+public final class GameSession {
+
+    /**
+     * State of the current game
+     */
+    public enum Status {
+        NOT_STARTED,
+        PLAYING,
+        PAUSED,
+        WON,
+        LOST
+    }
+
+    /**
+     * The current game
+     */
+    private DemineurModel model;
+
+    /**
+     * Returned by the moves made once the game is over
+     */
+    private final ChangeSet unchanged = new ChangeSet();
+
+    /**
+     * Construct a session resuming an existing game
+     * @param model : the game
+     */
+    public GameSession(DemineurModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Construct a session with a new game
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     */
+    public GameSession(int width, int height, int mines) {
+        this(new DemineurModel(width, height, mines));
+    }
+
+    /**
+     *
+     * @return the current game
+     */
+    public DemineurModel getModel() {
+        return model;
+    }
+
+    /**
+     * Begin a new game, the clock starts with its first move
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     * @param seed : seed of the mine placement
+     */
+    public void newGame(int width, int height, int mines, long seed) {
+        model = new DemineurModel(width, height, mines, seed);
+    }
+
+    /**
+     *
+     * @return the state of the current game
+     */
+    public Status getStatus() {
+        if(model.isWon())
+            return Status.WON;
+        if(model.isLost())
+            return Status.LOST;
+        if(model.isGameOver())
+            return Status.NOT_STARTED;
+        return model.isPause() ? Status.PAUSED : Status.PLAYING;
+    }
+
+    /**
+     * Plays in the cell (i, j) with the current mode of the model (flag mode, jokers)
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return the cells whose state changed, valid until the next move
+     */
+    public ChangeSet play(int i, int j) {
+        if(model.isWon() || model.isLost())
+            return unchanged;
+        ChangeSet changes = model.move(i, j);
+        if(model.isWon() || model.isLost())
+            model.stopClock(now());
+        else
+            model.startClock(now());
+        return changes;
+    }
+
+    /**
+     * Puts or removes a flag on the cell (i, j), whatever the current mode of the model
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return the cells whose state changed, valid until the next move
+     */
+    public ChangeSet toggleFlag(int i, int j) {
+        boolean flag = model.isFlagMode();
+        model.setFlagMode(true);
+        ChangeSet changes = play(i, j);
+        model.setFlagMode(flag);
+        return changes;
+    }
+
+    /**
+     * Stops the clock until the next move or resume
+     */
+    public void pause() {
+        model.stopClock(now());
+        model.setPause(true);
+    }
+
+    /**
+     * Restarts the clock if the game is in progress
+     */
+    public void resume() {
+        if(getStatus() == Status.PAUSED)
+            model.startClock(now());
+    }
+
+    /**
+     *
+     * @return the elapsed time in seconds since the game has started, pauses excluded
+     */
+    public int getElapsedTime() {
+        return (int) (getElapsedMillis() / 1000);
+    }
+
+    /**
+     *
+     * @return the elapsed time in milliseconds since the game has started, pauses excluded
+     */
+    public long getElapsedMillis() {
+        return model.getElapsedMillis(now());
+    }
+
+    /**
+     *
+     * @return the current time of the monotonic clock of the model, in milliseconds
+     */
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+}
@@ -0,0 +1,316 @@
+package com.android.demineur;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Running aggregates of the finished games, overall and for each grid configuration.
+ * Each game updates the aggregates in constant time: counters, sums for the means, and a histogram of the winning
+ * times by second for the percentiles. The games themselves are kept in an append-only log of GameRecord,
+ * from which the aggregates can be rebuilt
+ */
+public final class GameStatistics {
+
+    /**
+     * First bytes of every statistics file, "DMST"
+     */
+    private static final int MAGIC = 0x444D5354;
+
+    /**
+     * Current version of the format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Number of one second buckets of the winning times histogram, the last bucket also holds the slower times
+     */
+    public static final int HISTOGRAM_SECONDS = 1000;
+
+    /**
+     * Aggregates of all the games
+     */
+    private final Aggregate total;
+
+    /**
+     * Aggregates of each configuration, in the order the configurations have been played
+     */
+    private final Map<GridConfig, Aggregate> configs;
+
+    /**
+     * Construct empty statistics
+     */
+    public GameStatistics() {
+        total = new Aggregate();
+        configs = new LinkedHashMap<>();
+    }
+
+    /**
+     * Counts a finished game
+     * @param record : the game
+     */
+    public void add(GameRecord record) {
+        GridConfig config = new GridConfig(record.getWidth(), record.getHeight(), record.getMines());
+        Aggregate aggregate = configs.get(config);
+        if(aggregate == null) {
+            aggregate = new Aggregate();
+            configs.put(config, aggregate);
+        }
+        total.add(record);
+        aggregate.add(record);
+    }
+
+    /**
+     * Forgets every game
+     */
+    public void clear() {
+        total.clear();
+        configs.clear();
+    }
+
+    /**
+     *
+     * @return the number of games of every configuration
+     */
+    public int getGames() {
+        return total.games;
+    }
+
+    /**
+     *
+     * @return the number of games won in every configuration
+     */
+    public int getWins() {
+        return total.wins;
+    }
+
+    /**
+     *
+     * @return the number of games of the configuration
+     */
+    public int getGames(int width, int height, int mines) {
+        return get(width, height, mines).games;
+    }
+
+    /**
+     *
+     * @return the number of games won in the configuration
+     */
+    public int getWins(int width, int height, int mines) {
+        return get(width, height, mines).wins;
+    }
+
+    /**
+     *
+     * @return the part of the games won in the configuration, between 0 and 1
+     */
+    public double getWinRate(int width, int height, int mines) {
+        Aggregate aggregate = get(width, height, mines);
+        return aggregate.games == 0 ? 0 : (double) aggregate.wins / aggregate.games;
+    }
+
+    /**
+     *
+     * @return the mean time of the games won in the configuration, in milliseconds
+     */
+    public double getMeanTime(int width, int height, int mines) {
+        Aggregate aggregate = get(width, height, mines);
+        return aggregate.wins == 0 ? 0 : (double) aggregate.winMillis / aggregate.wins;
+    }
+
+    /**
+     * Reads a percentile of the winning times from the histogram, to the second
+     * @param fraction : the part of the winning times that are faster, 0.5 for the median
+     * @return the end of the second holding the percentile in milliseconds, or 0 if no game has been won
+     */
+    public long getPercentileTime(int width, int height, int mines, double fraction) {
+        Aggregate aggregate = get(width, height, mines);
+        if(aggregate.wins == 0)
+            return 0;
+        long rank = (long) Math.ceil(Math.min(Math.max(fraction, 0), 1) * aggregate.wins);
+        long seen = 0;
+        for(int second = 0; second < aggregate.histogram.length; second++) {
+            seen += aggregate.histogram[second];
+            if(seen >= Math.max(rank, 1))
+                return (second + 1) * 1000L;
+        }
+        return HISTOGRAM_SECONDS * 1000L;
+    }
+
+    /**
+     *
+     * @return the mean 3BV per second of the games won in the configuration
+     */
+    public double getMeanThreeBVPerSecond(int width, int height, int mines) {
+        Aggregate aggregate = get(width, height, mines);
+        return aggregate.wins == 0 ? 0 : aggregate.threeBVPerSecond / aggregate.wins;
+    }
+
+    /**
+     *
+     * @return the mean efficiency of the games won in the configuration, 3BV per click
+     */
+    public double getMeanEfficiency(int width, int height, int mines) {
+        Aggregate aggregate = get(width, height, mines);
+        return aggregate.wins == 0 ? 0 : aggregate.efficiency / aggregate.wins;
+    }
+
+    /**
+     * Appends a game to a log, which is flushed but not closed
+     * @param record : the game
+     * @param out : the log opened for appending
+     * @throws IOException if the game cannot be written
+     */
+    public static void append(GameRecord record, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        record.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Rebuilds the statistics from a log written by append, a truncated last record is ignored
+     * @param in : the log
+     * @return the statistics of the games of the log
+     * @throws IOException if the log cannot be read
+     */
+    public static GameStatistics rebuild(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        GameStatistics statistics = new GameStatistics();
+        try {
+            while(true)
+                statistics.add(GameRecord.readFrom(data));
+        } catch(EOFException e) {
+            return statistics;
+        }
+    }
+
+    /**
+     * Writes the aggregates to the stream, which is flushed but not closed.
+     * The histograms are written as pairs of second and count of their non empty buckets
+     * @param out : the destination
+     * @throws IOException if the statistics cannot be written
+     */
+    public void save(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        total.writeTo(data);
+        data.writeInt(configs.size());
+        for(Map.Entry<GridConfig, Aggregate> entry : configs.entrySet()) {
+            data.writeInt(entry.getKey().width);
+            data.writeInt(entry.getKey().height);
+            data.writeInt(entry.getKey().mines);
+            entry.getValue().writeTo(data);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads the aggregates written by save
+     * @param in : the source
+     * @return the statistics
+     * @throws IOException if the stream doesn't hold statistics of a known version
+     */
+    public static GameStatistics load(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if(data.readInt() != MAGIC)
+            throw new IOException("Not game statistics");
+        int version = data.readUnsignedByte();
+        if(version != VERSION)
+            throw new IOException("Unknown statistics version " + version);
+        GameStatistics statistics = new GameStatistics();
+        statistics.total.readFrom(data);
+        int count = data.readInt();
+        for(int c = 0; c < count; c++) {
+            GridConfig config = new GridConfig(data.readInt(), data.readInt(), data.readInt());
+            Aggregate aggregate = new Aggregate();
+            aggregate.readFrom(data);
+            statistics.configs.put(config, aggregate);
+        }
+        return statistics;
+    }
+
+    private Aggregate get(int width, int height, int mines) {
+        Aggregate aggregate = configs.get(new GridConfig(width, height, mines));
+        return aggregate == null ? new Aggregate() : aggregate;
+    }
+
+    /**
+     * Counters and sums of a set of games, the means and the histogram only count the games won
+     */
+    private static final class Aggregate {
+
+        int games;
+
+        int wins;
+
+        long winMillis;
+
+        double threeBVPerSecond;
+
+        double efficiency;
+
+        final int histogram[] = new int[HISTOGRAM_SECONDS];
+
+        void add(GameRecord record) {
+            games++;
+            if(!record.isWon())
+                return;
+            wins++;
+            winMillis += record.getDurationMillis();
+            threeBVPerSecond += record.getThreeBVPerSecond();
+            efficiency += record.getEfficiency();
+            histogram[(int) Math.min(Math.max(record.getDurationMillis() / 1000, 0), HISTOGRAM_SECONDS - 1)]++;
+        }
+
+        void clear() {
+            games = 0;
+            wins = 0;
+            winMillis = 0;
+            threeBVPerSecond = 0;
+            efficiency = 0;
+            for(int k = 0; k < histogram.length; k++)
+                histogram[k] = 0;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(games);
+            out.writeInt(wins);
+            out.writeLong(winMillis);
+            out.writeDouble(threeBVPerSecond);
+            out.writeDouble(efficiency);
+            int buckets = 0;
+            for(int count : histogram) {
+                if(count != 0)
+                    buckets++;
+            }
+            out.writeShort(buckets);
+            for(int second = 0; second < histogram.length; second++) {
+                if(histogram[second] != 0) {
+                    out.writeShort(second);
+                    out.writeInt(histogram[second]);
+                }
+            }
+        }
+
+        void readFrom(DataInputStream in) throws IOException {
+            games = in.readInt();
+            wins = in.readInt();
+            winMillis = in.readLong();
+            threeBVPerSecond = in.readDouble();
+            efficiency = in.readDouble();
+            int buckets = in.readUnsignedShort();
+            for(int k = 0; k < buckets; k++) {
+                int second = in.readUnsignedShort();
+                if(second >= HISTOGRAM_SECONDS)
+                    throw new IOException("Invalid histogram bucket " + second);
+                histogram[second] = in.readInt();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.android.demineur;
+
+/**
+ * Size of a grid, used as a key by the scores and statistics of each configuration
+ */
+final class GridConfig {
+
+    final int width;
+
+    final int height;
+
+    final int mines;
+
+    GridConfig(int width, int height, int mines) {
+        this.width = width;
+        this.height = height;
+        this.mines = mines;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof GridConfig))
+            return false;
+        GridConfig other = (GridConfig) o;
+        return width == other.width && height == other.height && mines == other.mines;
+    }
+
+    @Override
+    public int hashCode() {
+        return (width * 31 + height) * 31 + mines;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + "x" + mines;
+    }
+}
@@ -0,0 +1,539 @@
+package com.android.demineur;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Endless Minesweeper grid, growing in every direction as the player explores it.
+ * The grid is made of square chunks whose mines only depend on the seed and the chunk coordinates, so a chunk
+ * and the numbers along its border come out the same whatever the order the chunks are computed in.
+ * At most a given number of chunks are held in memory: the least recently used one is dropped when another is needed,
+ * after its discovered and marked cells have been written to a ChunkStore if the player changed it, so the memory
+ * is bounded by the number of chunks held and the index of the store, which holds at most ChunkStore.MAX_CHUNKS chunks.
+ * A game goes on from a store holding the chunks of a game flushed before, built with the same seed and mines.
+ * The moves follow the MoveRules of DemineurModel, without jokers nor undo, and the cells around (0, 0) hold no mine
+ * so the game can start there. An error of the store is thrown as an IllegalStateException
+ */
+public final class InfiniteModel extends MoveRules {
+
+    /**
+     * Side of a chunk
+     */
+    public static final int CHUNK_SIZE = ChunkedStorage.CHUNK_SIZE;
+    private static final int CHUNK_SHIFT = ChunkedStorage.CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+
+    /**
+     * Cell contents indexed by the packed cell bits
+     */
+    private static final DemineurModel.Cell[] CELLS = DemineurModel.Cell.values();
+
+    /**
+     * Min number of mines per chunk, around 15% of the cells.
+     * Sparser grids could have openings spreading without end
+     */
+    public static final int MIN_MINES = 600;
+
+    /**
+     * Max number of mines per chunk
+     */
+    public static final int MAX_MINES = CHUNK_CELLS / 2;
+
+    /**
+     * Number of chunks held in memory by default, about 4MB
+     */
+    public static final int DEFAULT_LOADED_CHUNKS = 1024;
+
+    private final long seed;
+
+    /**
+     * Number of mines of each chunk
+     */
+    private final int mines;
+
+    /**
+     * Store of the changed chunks dropped from memory
+     */
+    private final ChunkStore store;
+
+    /**
+     * Max number of chunks held in memory
+     */
+    private final int maxChunks;
+
+    /**
+     * Chunks held in memory by key, from the least to the most recently used
+     */
+    private final LinkedHashMap<Long, Chunk> chunks;
+
+    /**
+     * Last chunk used and its key, most cells read by a move or a drawing are in the same chunk
+     */
+    private long lastKey;
+    private Chunk lastChunk;
+
+    /**
+     * Cells of a chunk shuffled to draw its mines, reused between chunks
+     */
+    private final int candidates[];
+
+    /**
+     * Discovered and marked bits of a chunk, reused between the chunks written to or read from the store
+     */
+    private final byte bits[];
+
+    /**
+     * Cells changed by the last move, i << 32 | j
+     */
+    private long changes[];
+    private int changeCount;
+
+    private long countDiscoveredCells;
+
+    private long countMarkedCells;
+
+    private boolean flagMode;
+
+    private boolean lost;
+
+    /**
+     * Construct an endless grid holding DEFAULT_LOADED_CHUNKS chunks in memory
+     * @param seed : seed of the mine placement
+     * @param mines : number of mines of each chunk
+     * @param store : store of the changed chunks dropped from memory
+     */
+    public InfiniteModel(long seed, int mines, ChunkStore store) {
+        this(seed, mines, store, DEFAULT_LOADED_CHUNKS);
+    }
+
+    /**
+     * Construct an endless grid
+     * @param seed : seed of the mine placement
+     * @param mines : number of mines of each chunk
+     * @param store : store of the changed chunks dropped from memory
+     * @param maxChunks : the number of chunks held in memory, at least 9 so a chunk and its neighbours fit
+     * @throws IllegalStateException if the chunks of the store cannot be read
+     */
+    public InfiniteModel(long seed, int mines, ChunkStore store, int maxChunks) {
+        if(mines < MIN_MINES || mines > MAX_MINES)
+            throw new IllegalArgumentException("mines " + mines);
+        if(maxChunks < 9)
+            throw new IllegalArgumentException("maxChunks " + maxChunks);
+        if(store == null)
+            throw new IllegalArgumentException("No chunk store");
+        this.seed = seed;
+        this.mines = mines;
+        this.store = store;
+        this.maxChunks = maxChunks;
+        this.chunks = new LinkedHashMap<>(maxChunks * 2, 0.75f, true);
+        this.candidates = new int[CHUNK_CELLS];
+        this.bits = new byte[CHUNK_CELLS / 4];
+        this.changes = new long[64];
+        restore();
+    }
+
+    /**
+     * Counts the discovered and marked cells of the chunks already in the store, and finds if a mine was discovered
+     */
+    private void restore() {
+        for(long key : store.getKeys()) {
+            Chunk chunk = load(key);
+            for(byte value : chunk.cells) {
+                if((value & DemineurModel.DISCOVERED_BIT) != 0) {
+                    countDiscoveredCells++;
+                    if((value & DemineurModel.MINE_BIT) != 0)
+                        lost = true;
+                }
+                if((value & DemineurModel.MARKED_BIT) != 0)
+                    countMarkedCells++;
+            }
+        }
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     *
+     * @return the number of mines of each chunk
+     */
+    public int getMines() {
+        return mines;
+    }
+
+    /**
+     *
+     * @return the number of discovered cells, the score of the game
+     */
+    public long getCountDiscoveredCells() {
+        return countDiscoveredCells;
+    }
+
+    /**
+     *
+     * @return the number of marked cells
+     */
+    public long getCountMarkedCells() {
+        return countMarkedCells;
+    }
+
+    /**
+     *
+     * @return the number of chunks held in memory
+     */
+    public int getLoadedChunks() {
+        return chunks.size();
+    }
+
+    public boolean isFlagMode() {
+        return flagMode;
+    }
+
+    /**
+     * Put the game in the flag mode
+     * @param flagMode true to get in the flag mode, false to cancel the flag mode
+     */
+    public void setFlagMode(boolean flagMode) {
+        this.flagMode = flagMode;
+    }
+
+    /**
+     *
+     * @return true if the player discovered a mine
+     */
+    public boolean isLost() {
+        return lost;
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return the (i, j) cell content
+     */
+    public DemineurModel.Cell getCell(int i, int j) {
+        int value = get(i, j);
+        if((value & DemineurModel.MINE_BIT) != 0)
+            return DemineurModel.Cell.MINE;
+        return CELLS[(value & DemineurModel.ADJACENT_MASK) + 1];
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return true if the (i, j) cell has been discovered
+     */
+    public boolean isDiscovered(int i, int j) {
+        return isHeld(i, j) && (get(i, j) & DemineurModel.DISCOVERED_BIT) != 0;
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return true if the (i, j) cell has been marked
+     */
+    public boolean isMarked(int i, int j) {
+        return isHeld(i, j) && (get(i, j) & DemineurModel.MARKED_BIT) != 0;
+    }
+
+    /**
+     * Plays in the (i, j) cell like DemineurModel.move: marks it in the flag mode, discovers its neighbours if it is
+     * a discovered number with as many flags around, or discovers it
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return the number of cells changed by the move, read with getChangedRow and getChangedColumn
+     */
+    public int move(int i, int j) {
+        changeCount = 0;
+        if(lost)
+            return 0;
+        long cell = pack(i, j);
+        switch(getMoveMode(cell, flagMode)) {
+            case MoveJournal.FLAG: toggleMark(cell); break;
+            case MoveJournal.CHORD: discoveredMove(cell); break;
+            case MoveJournal.BASIC: basicMove(cell); break;
+            default: break;
+        }
+        return changeCount;
+    }
+
+    /**
+     *
+     * @param k : the change index, lower than the value returned by the last move
+     * @return the row of the changed cell
+     */
+    public int getChangedRow(int k) {
+        return (int) (changes[k] >> 32);
+    }
+
+    /**
+     *
+     * @param k : the change index, lower than the value returned by the last move
+     * @return the column of the changed cell
+     */
+    public int getChangedColumn(int k) {
+        return (int) changes[k];
+    }
+
+    /**
+     * Writes every changed chunk held in memory to the store, so the game can go on from the store later
+     */
+    public void flush() {
+        for(Map.Entry<Long, Chunk> entry : chunks.entrySet()) {
+            if(entry.getValue().dirty)
+                save(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     *
+     * @param cell : the cell, i << 32 | j
+     * @return the packed cell
+     */
+    @Override
+    int getState(long cell) {
+        return get((int) (cell >> 32), (int) cell);
+    }
+
+    /**
+     * Every cell has 8 neighbours
+     */
+    @Override
+    int getNeighbours(long cell, long neighbours[]) {
+        int i = (int) (cell >> 32);
+        int j = (int) cell;
+        int size = 0;
+        for(int k = 0; k < 9; k++) {
+            if(k != 4)
+                neighbours[size++] = pack(i + k / 3 - 1, j + k % 3 - 1);
+        }
+        return size;
+    }
+
+    @Override
+    void discover(long cell) {
+        int i = (int) (cell >> 32);
+        int j = (int) cell;
+        set(i, j, get(i, j) | DemineurModel.DISCOVERED_BIT);
+        countDiscoveredCells++;
+        addChange(cell);
+    }
+
+    @Override
+    void toggleMark(long cell) {
+        int i = (int) (cell >> 32);
+        int j = (int) cell;
+        int value = get(i, j) ^ DemineurModel.MARKED_BIT;
+        set(i, j, value);
+        countMarkedCells += (value & DemineurModel.MARKED_BIT) != 0 ? 1 : -1;
+        addChange(cell);
+    }
+
+    @Override
+    void lose() {
+        lost = true;
+    }
+
+    private void addChange(long cell) {
+        if(changeCount == changes.length) {
+            long grown[] = new long[changes.length * 2];
+            System.arraycopy(changes, 0, grown, 0, changeCount);
+            changes = grown;
+        }
+        changes[changeCount++] = cell;
+    }
+
+    /**
+     *
+     * @return the packed (i, j) cell
+     */
+    private int get(int i, int j) {
+        return getChunk(getKey(i, j)).cells[(i & CHUNK_MASK) << CHUNK_SHIFT | (j & CHUNK_MASK)];
+    }
+
+    private void set(int i, int j, int value) {
+        Chunk chunk = getChunk(getKey(i, j));
+        chunk.cells[(i & CHUNK_MASK) << CHUNK_SHIFT | (j & CHUNK_MASK)] = (byte) value;
+        chunk.dirty = true;
+    }
+
+    /**
+     *
+     * @return true if the chunk of the cell is in memory or in the store, otherwise the cell is hidden and unmarked
+     * and its chunk doesn't need to be computed
+     */
+    private boolean isHeld(int i, int j) {
+        long key = getKey(i, j);
+        return (lastChunk != null && lastKey == key) || chunks.containsKey(key) || store.contains(key);
+    }
+
+    /**
+     * Finds a chunk in memory, or computes it and reads its changes from the store, dropping the least recently used
+     * chunk if too many chunks are in memory
+     * @param key : the chunk key
+     * @return the chunk
+     */
+    private Chunk getChunk(long key) {
+        if(lastChunk != null && lastKey == key)
+            return lastChunk;
+        Chunk chunk = chunks.get(key);
+        if(chunk == null) {
+            chunk = load(key);
+            chunks.put(key, chunk);
+            evict(key);
+        }
+        lastKey = key;
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    /**
+     * Drops the least recently used chunks until the memory holds maxChunks chunks, the changed chunks are written
+     * to the store first
+     * @param loaded : the key of the chunk just loaded, which is kept
+     */
+    private void evict(long loaded) {
+        Iterator<Map.Entry<Long, Chunk>> iterator = chunks.entrySet().iterator();
+        while(chunks.size() > maxChunks && iterator.hasNext()) {
+            Map.Entry<Long, Chunk> entry = iterator.next();
+            if(entry.getKey() == loaded)
+                break; // the most recently used chunk
+            Chunk chunk = entry.getValue();
+            if(chunk.dirty)
+                save(entry.getKey(), chunk);
+            iterator.remove();
+            if(chunk == lastChunk)
+                lastChunk = null;
+        }
+    }
+
+    /**
+     * Writes the discovered and marked bits of a chunk to the store
+     */
+    private void save(long key, Chunk chunk) {
+        Arrays.fill(bits, (byte) 0);
+        for(int k = 0; k < CHUNK_CELLS; k++) {
+            if((chunk.cells[k] & DemineurModel.DISCOVERED_BIT) != 0)
+                bits[k >> 3] |= 1 << (k & 7);
+            if((chunk.cells[k] & DemineurModel.MARKED_BIT) != 0)
+                bits[(CHUNK_CELLS + k) >> 3] |= 1 << (k & 7);
+        }
+        try {
+            store.write(key, bits);
+        } catch(IOException e) {
+            throw new IllegalStateException("Chunk " + key + " cannot be written", e);
+        }
+        chunk.dirty = false;
+    }
+
+    /**
+     * Computes a chunk and applies the changes read from the store
+     */
+    private Chunk load(long key) {
+        Chunk chunk = new Chunk(compute(key));
+        try {
+            if(store.read(key, bits)) {
+                for(int k = 0; k < CHUNK_CELLS; k++) {
+                    if((bits[k >> 3] & 1 << (k & 7)) != 0)
+                        chunk.cells[k] |= DemineurModel.DISCOVERED_BIT;
+                    if((bits[(CHUNK_CELLS + k) >> 3] & 1 << (k & 7)) != 0)
+                        chunk.cells[k] |= DemineurModel.MARKED_BIT;
+                }
+            }
+        } catch(IOException e) {
+            throw new IllegalStateException("Chunk " + key + " cannot be read", e);
+        }
+        return chunk;
+    }
+
+    /**
+     * Computes the cells of a chunk from its mines and the mines of the neighbouring chunks near its border
+     * @param key : the chunk key
+     * @return the packed cells of the chunk, row by row
+     */
+    private byte[] compute(long key) {
+        byte cells[] = new byte[CHUNK_CELLS];
+        int cy = (int) (key >> 32);
+        int cx = (int) key;
+        for(int y = cy - 1; y <= cy + 1; y++) {
+            for(int x = cx - 1; x <= cx + 1; x++) {
+                int count = drawMines(y, x);
+                for(int k = 0; k < count; k++) {
+                    int i = ((y - cy) << CHUNK_SHIFT) + (candidates[k] >> CHUNK_SHIFT);
+                    int j = ((x - cx) << CHUNK_SHIFT) + (candidates[k] & CHUNK_MASK);
+                    for(int di = -1; di <= 1; di++) {
+                        for(int dj = -1; dj <= 1; dj++) {
+                            if(i + di < 0 || i + di >= CHUNK_SIZE || j + dj < 0 || j + dj >= CHUNK_SIZE)
+                                continue;
+                            int offset = (i + di) << CHUNK_SHIFT | (j + dj);
+                            cells[offset] += di == 0 && dj == 0 ? DemineurModel.MINE_BIT : 1;
+                        }
+                    }
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Draws the mines of a chunk by a partial Fisher-Yates shuffle of its cells, seeded by the game seed and the
+     * chunk coordinates. The cells around (0, 0) are left out
+     * @param cy : the chunk row
+     * @param cx : the chunk column
+     * @return the number of mines, whose cells are now at the start of candidates as row << CHUNK_SHIFT | column
+     */
+    private int drawMines(int cy, int cx) {
+        int size = 0;
+        for(int k = 0; k < CHUNK_CELLS; k++) {
+            int i = (cy << CHUNK_SHIFT) + (k >> CHUNK_SHIFT);
+            int j = (cx << CHUNK_SHIFT) + (k & CHUNK_MASK);
+            if(i < -1 || i > 1 || j < -1 || j > 1)
+                candidates[size++] = k;
+        }
+        Random r = new Random(ChunkedStorage.mix(seed, pack(cy, cx)));
+        for(int k = 0; k < mines; k++) {
+            int drawn = k + r.nextInt(size - k);
+            int cell = candidates[drawn];
+            candidates[drawn] = candidates[k];
+            candidates[k] = cell;
+        }
+        return mines;
+    }
+
+    /**
+     *
+     * @return the key of the chunk of the (i, j) cell, chunk row << 32 | chunk column
+     */
+    private static long getKey(int i, int j) {
+        return pack(i >> CHUNK_SHIFT, j >> CHUNK_SHIFT);
+    }
+
+    private static long pack(int high, int low) {
+        return (long) high << 32 | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Cells of a chunk held in memory
+     */
+    private static final class Chunk {
+
+        final byte cells[];
+
+        /**
+         * True if the player changed the chunk since it was computed or read from the store
+         */
+        boolean dirty;
+
+        Chunk(byte cells[]) {
+            this.cells = cells;
+        }
+    }
+}
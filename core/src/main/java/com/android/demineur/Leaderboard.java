@@ -0,0 +1,200 @@
+package com.android.demineur;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Best times of each grid configuration, in milliseconds and sorted from the fastest.
+ * The binary format holds a header, the number of times kept per configuration, then for each configuration
+ * its size, its number of times and the sorted times, so reading it needs no parsing nor sorting
+ */
+public final class Leaderboard {
+
+    /**
+     * First bytes of every leaderboard file, "DMLB"
+     */
+    private static final int MAGIC = 0x444D4C42;
+
+    /**
+     * Current version of the format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Number of times kept for each configuration by default
+     */
+    public static final int DEFAULT_CAPACITY = 10;
+
+    /**
+     * Number of times kept for each configuration
+     */
+    private final int capacity;
+
+    /**
+     * Times of each configuration, in the order the configurations have been added
+     */
+    private final Map<GridConfig, Times> boards;
+
+    /**
+     * Construct an empty leaderboard
+     * @param capacity : the number of times kept for each configuration
+     */
+    public Leaderboard(int capacity) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("capacity " + capacity);
+        this.capacity = capacity;
+        this.boards = new LinkedHashMap<>();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Inserts a time at its rank, the slowest time is dropped if the configuration is full
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     * @param millis : the time of the game in milliseconds
+     * @return the rank of the time from 0 for the fastest, or -1 if the time is too slow to be kept
+     */
+    public int add(int width, int height, int mines, long millis) {
+        int time = (int) Math.min(Math.max(millis, 0), Integer.MAX_VALUE);
+        GridConfig config = new GridConfig(width, height, mines);
+        Times times = boards.get(config);
+        if(times == null) {
+            times = new Times(capacity);
+            boards.put(config, times);
+        }
+        int rank = times.rankOf(time);
+        if(rank >= capacity)
+            return -1;
+        int moved = Math.min(times.size, capacity - 1) - rank;
+        System.arraycopy(times.values, rank, times.values, rank + 1, moved);
+        times.values[rank] = time;
+        times.size = Math.min(times.size + 1, capacity);
+        return rank;
+    }
+
+    /**
+     *
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     * @return the number of times kept for the configuration
+     */
+    public int getCount(int width, int height, int mines) {
+        Times times = boards.get(new GridConfig(width, height, mines));
+        return times == null ? 0 : times.size;
+    }
+
+    /**
+     *
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     * @param rank : the rank of the time, between 0 and getCount() - 1
+     * @return the time in milliseconds
+     */
+    public int getTime(int width, int height, int mines, int rank) {
+        Times times = boards.get(new GridConfig(width, height, mines));
+        if(times == null || rank < 0 || rank >= times.size)
+            throw new IndexOutOfBoundsException(rank + "");
+        return times.values[rank];
+    }
+
+    /**
+     * Removes every time of every configuration
+     */
+    public void clear() {
+        boards.clear();
+    }
+
+    /**
+     * Writes the leaderboard to the stream, which is flushed but not closed
+     * @param out : the destination
+     * @throws IOException if the leaderboard cannot be written
+     */
+    public void save(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeShort(capacity);
+        data.writeInt(boards.size());
+        for(Map.Entry<GridConfig, Times> entry : boards.entrySet()) {
+            GridConfig config = entry.getKey();
+            Times times = entry.getValue();
+            data.writeInt(config.width);
+            data.writeInt(config.height);
+            data.writeInt(config.mines);
+            data.writeShort(times.size);
+            for(int k = 0; k < times.size; k++)
+                data.writeInt(times.values[k]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a leaderboard written by save
+     * @param in : the source
+     * @return the leaderboard
+     * @throws IOException if the stream doesn't hold a leaderboard of a known version
+     */
+    public static Leaderboard load(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if(data.readInt() != MAGIC)
+            throw new IOException("Not a leaderboard");
+        int version = data.readUnsignedByte();
+        if(version != VERSION)
+            throw new IOException("Unknown leaderboard version " + version);
+        int capacity = data.readUnsignedShort();
+        if(capacity == 0)
+            throw new IOException("Invalid capacity");
+        Leaderboard leaderboard = new Leaderboard(capacity);
+        int count = data.readInt();
+        for(int c = 0; c < count; c++) {
+            GridConfig config = new GridConfig(data.readInt(), data.readInt(), data.readInt());
+            Times times = new Times(capacity);
+            times.size = data.readUnsignedShort();
+            if(times.size > capacity)
+                throw new IOException("Too many times for " + config);
+            for(int k = 0; k < times.size; k++)
+                times.values[k] = data.readInt();
+            leaderboard.boards.put(config, times);
+        }
+        return leaderboard;
+    }
+
+    /**
+     * Sorted times of a configuration
+     */
+    private static final class Times {
+
+        final int values[];
+
+        int size;
+
+        Times(int capacity) {
+            values = new int[capacity];
+        }
+
+        /**
+         *
+         * @return the rank a new time would get, after the equal times already kept
+         */
+        int rankOf(int time) {
+            int rank = Arrays.binarySearch(values, 0, size, time);
+            if(rank < 0)
+                return -rank - 1;
+            while(rank < size && values[rank] == time)
+                rank++;
+            return rank;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.android.demineur;
+
+import java.util.BitSet;
+
+/**
+ * Mine positions of a grid generated in advance, before the first move is known.
+ * A layout fits a first move if one of its symmetries, the identity, the horizontal and vertical flips and
+ * the half turn, brings a suitable cell under it: a cell without mine, or for a no-guess layout a cell that
+ * opens the grid exactly as the cell the layout has been solved from
+ */
+public final class MineLayout {
+
+    /**
+     * Number of symmetries tried by getSymmetry
+     */
+    public static final int SYMMETRIES = 4;
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * Seed of the mine placement, the layout is the grid generated from this seed when origin is played first
+     */
+    private final long seed;
+
+    /**
+     * Cell the grid has been generated from
+     */
+    private final int origin;
+
+    /**
+     * True if the grid can be cleared without guessing when the first move is in the opening
+     */
+    private final boolean noGuess;
+
+    /**
+     * Mine cells, in increasing order
+     */
+    private final int mines[];
+
+    private final BitSet mineCells;
+
+    /**
+     * Cells revealing the same cells as origin when played first
+     */
+    private final BitSet opening;
+
+    private MineLayout(int width, int height, long seed, int origin, boolean noGuess, int mines[], BitSet mineCells, BitSet opening) {
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+        this.origin = origin;
+        this.noGuess = noGuess;
+        this.mines = mines;
+        this.mineCells = mineCells;
+        this.opening = opening;
+    }
+
+    /**
+     * Generates the grid of the given seed
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     * @param seed : seed of the mine placement
+     * @param origin : the cell index the grid is generated from
+     * @param noGuess : true if the seed has been checked to give a grid that can be cleared from origin without guessing
+     * @return the layout
+     */
+    public static MineLayout create(int width, int height, int mines, long seed, int origin, boolean noGuess) {
+        DemineurModel model = new DemineurModel(width, height, mines, seed);
+        model.initCells(origin);
+        int cells[] = new int[model.getMines()];
+        BitSet mineCells = new BitSet(width * height);
+        int count = 0;
+        for(int cell = 0; cell < width * height; cell++) {
+            if(model.getCell(cell / width, cell % width) == DemineurModel.Cell.MINE) {
+                cells[count++] = cell;
+                mineCells.set(cell);
+            }
+        }
+        // The empty cells reached by the flood fill of an empty origin all reveal the same cells
+        BitSet opening = new BitSet(width * height);
+        opening.set(origin);
+        int queue[] = new int[width * height];
+        int size = 0;
+        if(model.getCell(origin / width, origin % width) == DemineurModel.Cell.EMPTY)
+            queue[size++] = origin;
+        for(int head = 0; head < size; head++) {
+            int i = queue[head] / width;
+            int j = queue[head] % width;
+            for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+                for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++) {
+                    int neighbour = m * width + n;
+                    if(!opening.get(neighbour) && model.getCell(m, n) == DemineurModel.Cell.EMPTY) {
+                        opening.set(neighbour);
+                        queue[size++] = neighbour;
+                    }
+                }
+            }
+        }
+        return new MineLayout(width, height, seed, origin, noGuess, cells, mineCells, opening);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     *
+     * @return the number of mines
+     */
+    public int getMines() {
+        return mines.length;
+    }
+
+    /**
+     *
+     * @param k : the position of the mine, between 0 and getMines() - 1
+     * @return the index of the k-th mine, i * width + j
+     */
+    public int getMine(int k) {
+        return mines[k];
+    }
+
+    /**
+     *
+     * @return the seed the layout has been generated from
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     *
+     * @return the index of the cell the layout has been generated from
+     */
+    public int getOrigin() {
+        return origin;
+    }
+
+    /**
+     *
+     * @return true if the grid can be cleared without guessing from its opening
+     */
+    public boolean isNoGuess() {
+        return noGuess;
+    }
+
+    /**
+     * Looks for a symmetry bringing a suitable cell under the first move
+     * @param first : the cell index of the first move
+     * @return the first suitable symmetry, or -1 if the layout doesn't fit the first move
+     */
+    public int getSymmetry(int first) {
+        for(int symmetry = 0; symmetry < SYMMETRIES; symmetry++) {
+            int cell = transform(first, symmetry); // every symmetry is its own inverse
+            if(noGuess ? opening.get(cell) : !mineCells.get(cell))
+                return symmetry;
+        }
+        return -1;
+    }
+
+    /**
+     *
+     * @param cell : the cell index
+     * @param symmetry : 0 for the identity, 1 for the horizontal flip, 2 for the vertical flip, 3 for the half turn
+     * @return the index of the cell once the symmetry is applied
+     */
+    public int transform(int cell, int symmetry) {
+        int i = cell / width;
+        int j = cell % width;
+        if((symmetry & 1) != 0)
+            j = width - 1 - j;
+        if((symmetry & 2) != 0)
+            i = height - 1 - i;
+        return i * width + j;
+    }
+}
@@ -0,0 +1,616 @@
+package com.android.demineur;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Exact probability that each hidden cell is a mine, from what the player can see only.
+ * The hidden cells next to discovered numbers are split into independent components, each component is enumerated
+ * on a fork/join pool, then the components are combined with the number of ways to spread the remaining mines
+ * over the hidden cells that touch no number. Flags are trusted to be on mines.
+ * Only the explored parts of the grid are read, and the state is sized to the frontier,
+ * so a compute costs a time depending on the explored area and not on the grid size
+ */
+public final class MineProbability {
+
+    /**
+     * Maximum number of partial assignments tried for one component before compute() gives up
+     */
+    private static final long MAX_COMPONENT_NODES = 50000000L;
+
+    /**
+     * Binomial coefficients up to 8, the largest number of cells next to the same numbers
+     */
+    private static final double BINOMIALS[][] = new double[9][9];
+
+    static {
+        for(int n = 0; n < BINOMIALS.length; n++) {
+            BINOMIALS[n][0] = 1;
+            for(int k = 1; k <= n; k++)
+                BINOMIALS[n][k] = BINOMIALS[n - 1][k - 1] + BINOMIALS[n - 1][k];
+        }
+    }
+
+    /**
+     * Pool shared by the engines built without their own pool, its threads are daemons
+     */
+    private static ForkJoinPool sharedPool;
+
+    /**
+     * The game
+     */
+    private final DemineurModel model;
+
+    private final int width;
+
+    private final int height;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Hidden unmarked cells next to a discovered number as of the last successful compute(), in increasing order
+     */
+    private int frontier[] = new int[0];
+
+    /**
+     * Mine probability of each frontier cell, by position in frontier
+     */
+    private double frontierProbabilities[] = new double[0];
+
+    /**
+     * Mine probability of the hidden unmarked cells that touch no number
+     */
+    private double interiorProbability;
+
+    /**
+     * Number of hidden unmarked cells that touch no number
+     */
+    private int interiorCount;
+
+    /**
+     * Construct an engine running on a pool shared by all the engines
+     * @param model : the game
+     */
+    public MineProbability(DemineurModel model) {
+        this(model, getSharedPool());
+    }
+
+    /**
+     * Construct an engine running on the given pool
+     * @param model : the game
+     * @param pool : the pool enumerating the components, unless compute() is called from a fork/join task
+     */
+    public MineProbability(DemineurModel model, ForkJoinPool pool) {
+        this.model = model;
+        this.width = model.getWidth();
+        this.height = model.getHeight();
+        this.pool = pool;
+    }
+
+    static synchronized ForkJoinPool getSharedPool() {
+        if(sharedPool == null)
+            sharedPool = new ForkJoinPool();
+        return sharedPool;
+    }
+
+    /**
+     * Computes the probabilities of the current state of the game
+     * @return false if a component has too many configurations to be enumerated or if the flags contradict the numbers,
+     * the probabilities are then meaningless
+     */
+    public boolean compute() {
+        // The discovered cells and the flags are all in the explored parts of the grid
+        int constraintCells[] = new int[16];
+        int constraintCount = 0;
+        int neighbours[] = new int[16];
+        int neighbourCount = 0;
+        int knownCount = 0;
+        for(int cell = model.nextExplored(0); cell >= 0; cell = model.nextExplored(cell + 1)) {
+            int i = cell / width;
+            int j = cell % width;
+            if(model.isMarked(i, j))
+                knownCount++;
+            else if(model.isDiscovered(i, j)) {
+                knownCount++;
+                if(model.getCell(i, j) == DemineurModel.Cell.MINE)
+                    continue;
+                int unknown[] = getUnknown(cell);
+                if(unknown.length == 0) {
+                    if(getRemainingMines(cell) != 0)
+                        return false; // the flags around a number without hidden neighbour don't match it
+                    continue;
+                }
+                constraintCells = append(constraintCells, constraintCount++, cell);
+                for(int neighbour : unknown)
+                    neighbours = append(neighbours, neighbourCount++, neighbour);
+            }
+        }
+        int frontierCells[] = sortDistinct(neighbours, neighbourCount);
+        int frontierCount = frontierCells.length;
+
+        // Group the frontier cells linked by a number
+        int parents[] = new int[frontierCount];
+        for(int k = 0; k < frontierCount; k++)
+            parents[k] = k;
+        for(int c = 0; c < constraintCount; c++) {
+            int unknown[] = getUnknown(constraintCells[c]);
+            int firstId = Arrays.binarySearch(frontierCells, unknown[0]);
+            for(int k = 1; k < unknown.length; k++)
+                union(parents, firstId, Arrays.binarySearch(frontierCells, unknown[k]));
+        }
+        int componentIds[] = new int[frontierCount];
+        List<Component> components = new ArrayList<>();
+        for(int k = 0; k < frontierCount; k++)
+            componentIds[k] = -1;
+        for(int k = 0; k < frontierCount; k++) {
+            int root = find(parents, k);
+            if(componentIds[root] < 0) {
+                componentIds[root] = components.size();
+                components.add(new Component());
+            }
+            components.get(componentIds[root]).addCell(frontierCells[k]);
+        }
+        for(int c = 0; c < constraintCount; c++) {
+            int unknown[] = getUnknown(constraintCells[c]);
+            components.get(componentIds[find(parents, Arrays.binarySearch(frontierCells, unknown[0]))]).addConstraint(constraintCells[c]);
+        }
+
+        // Enumerate the components in parallel, in the current pool when already running in one
+        final List<Component> tasks = components;
+        if(ForkJoinTask.inForkJoinPool())
+            ForkJoinTask.invokeAll(tasks);
+        else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        for(Component component : components) {
+            if(component.aborted)
+                return false;
+        }
+        return combine(components, frontierCells, width * height - knownCount - frontierCount);
+    }
+
+    /**
+     *
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return the probability that the (i, j) cell is a mine, as of the last successful compute(),
+     * 0 for a discovered cell and 1 for a flag
+     */
+    public double getProbability(int i, int j) {
+        if(i < 0 || i >= height || j < 0 || j >= width)
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ")");
+        if(model.isMarked(i, j))
+            return 1;
+        if(model.isDiscovered(i, j))
+            return 0;
+        int k = Arrays.binarySearch(frontier, i * width + j);
+        return k >= 0 ? frontierProbabilities[k] : interiorProbability;
+    }
+
+    /**
+     *
+     * @return the index of the hidden unmarked cell least likely to be a mine, the first one of the grid
+     * if several are, or -1 if there is none
+     */
+    public int getSafestCell() {
+        int best = -1;
+        double lowest = 0;
+        for(int k = 0; k < frontier.length; k++) {
+            int cell = frontier[k];
+            if(!model.isDiscovered(cell / width, cell % width) && !model.isMarked(cell / width, cell % width) &&
+                    (best < 0 || frontierProbabilities[k] < lowest)) {
+                best = cell;
+                lowest = frontierProbabilities[k];
+            }
+        }
+        if(interiorCount == 0 || (best >= 0 && lowest < interiorProbability))
+            return best;
+        // The first interior cell, a chunk no move changed is only made of interior cells
+        for(int cell = 0; cell < width * height; cell++) {
+            if(best >= 0 && cell > best && lowest == interiorProbability)
+                return best;
+            int i = cell / width;
+            int j = cell % width;
+            if(!model.isDiscovered(i, j) && !model.isMarked(i, j) && Arrays.binarySearch(frontier, cell) < 0)
+                return cell;
+        }
+        return best;
+    }
+
+    /**
+     * Weights the configurations of the components with the ways to place the other mines in the interior cells
+     * @param components : the enumerated components
+     * @param frontierCells : the cells of the components, in increasing order
+     * @param interior : the number of hidden unmarked cells that touch no discovered number
+     * @return false if no configuration matches the remaining number of mines
+     */
+    private boolean combine(List<Component> components, int frontierCells[], int interior) {
+        int remaining = model.getRemainingCountMines();
+        int frontierMines = frontierCells.length;
+        // Binomial weight C(interior, rest) of each number of frontier mines, rest being the mines left for the
+        // interior, from the ratio of consecutive coefficients and scaled by the largest one to stay in the double range
+        int lowRest = Math.max(remaining - frontierMines, 0);
+        int highRest = Math.min(remaining, interior);
+        if(lowRest > highRest)
+            return false;
+        double logs[] = new double[highRest - lowRest + 1];
+        double maxLog = 0;
+        for(int rest = lowRest; rest < highRest; rest++) {
+            logs[rest - lowRest + 1] = logs[rest - lowRest] + Math.log(interior - rest) - Math.log(rest + 1);
+            maxLog = Math.max(maxLog, logs[rest - lowRest + 1]);
+        }
+        double weights[] = new double[frontierMines + 1];
+        for(int s = 0; s <= frontierMines; s++) {
+            int rest = remaining - s;
+            weights[s] = rest >= lowRest && rest <= highRest ? Math.exp(logs[rest - lowRest] - maxLog) : 0;
+        }
+
+        double all[] = convolve(components, -1);
+        double total = 0;
+        double interiorMines = 0;
+        for(int s = 0; s < all.length; s++) {
+            total += all[s] * weights[s];
+            if(interior > 0)
+                interiorMines += all[s] * weights[s] * (remaining - s) / interior;
+        }
+        if(total <= 0 || Double.isNaN(total))
+            return false;
+
+        double probabilities[] = new double[frontierMines];
+        for(int c = 0; c < components.size(); c++) {
+            Component component = components.get(c);
+            double others[] = convolve(components, c);
+            for(int k = 0; k < component.cellCount; k++) {
+                double mine = 0;
+                for(int m = 0; m < component.ways.length; m++) {
+                    double ways = component.cellWays[k][m];
+                    if(ways == 0)
+                        continue;
+                    for(int s = 0; s < others.length; s++)
+                        mine += ways * others[s] * weights[m + s];
+                }
+                probabilities[Arrays.binarySearch(frontierCells, component.cells[k])] = mine / total;
+            }
+        }
+        frontier = frontierCells;
+        frontierProbabilities = probabilities;
+        interiorProbability = interiorMines / total;
+        interiorCount = interior;
+        return true;
+    }
+
+    /**
+     * Convolves the numbers of configurations by number of mines of all the components but one
+     * @param components : the enumerated components
+     * @param skipped : the component left out, or -1
+     * @return the number of configurations for each total number of mines
+     */
+    private static double[] convolve(List<Component> components, int skipped) {
+        double result[] = {1};
+        for(int c = 0; c < components.size(); c++) {
+            if(c == skipped)
+                continue;
+            double ways[] = components.get(c).ways;
+            double next[] = new double[result.length + ways.length - 1];
+            for(int a = 0; a < result.length; a++) {
+                if(result[a] == 0)
+                    continue;
+                for(int b = 0; b < ways.length; b++)
+                    next[a + b] += result[a] * ways[b];
+            }
+            result = next;
+        }
+        return result;
+    }
+
+    /**
+     * Sorts the cells and drops the repeated ones
+     * @param cells : the cells, sorted in place
+     * @param size : the number of cells
+     * @return the distinct cells in increasing order
+     */
+    private static int[] sortDistinct(int cells[], int size) {
+        Arrays.sort(cells, 0, size);
+        int count = 0;
+        for(int k = 0; k < size; k++) {
+            if(count == 0 || cells[k] != cells[count - 1])
+                cells[count++] = cells[k];
+        }
+        return Arrays.copyOf(cells, count);
+    }
+
+    /**
+     * Stores a value at the end of an array, doubling the array when it is full
+     * @param array : the array
+     * @param size : the number of values in the array
+     * @param value : the added value
+     * @return the array holding the value, the given one or a larger copy
+     */
+    private static int[] append(int array[], int size, int value) {
+        if(size == array.length)
+            array = Arrays.copyOf(array, array.length * 2);
+        array[size] = value;
+        return array;
+    }
+
+    /**
+     *
+     * @param cell : the cell index
+     * @return the hidden unmarked neighbours of the cell
+     */
+    private int[] getUnknown(int cell) {
+        int i = cell / width;
+        int j = cell % width;
+        int unknown[] = new int[8];
+        int count = 0;
+        for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+            for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++) {
+                if((m != i || n != j) && !model.isDiscovered(m, n) && !model.isMarked(m, n))
+                    unknown[count++] = m * width + n;
+            }
+        }
+        int result[] = new int[count];
+        System.arraycopy(unknown, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     *
+     * @param cell : the index of a discovered number
+     * @return the number of mines around the cell that aren't flagged
+     */
+    private int getRemainingMines(int cell) {
+        int i = cell / width;
+        int j = cell % width;
+        int count = model.getCell(i, j).ordinal() - 1;
+        for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+            for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++) {
+                if(model.isMarked(m, n))
+                    count--;
+            }
+        }
+        return count;
+    }
+
+    private static boolean contains(int cells[], int cell) {
+        for(int other : cells) {
+            if(other == cell)
+                return true;
+        }
+        return false;
+    }
+
+    private static int find(int parents[], int k) {
+        while(parents[k] != k) {
+            parents[k] = parents[parents[k]];
+            k = parents[k];
+        }
+        return k;
+    }
+
+    private static void union(int parents[], int a, int b) {
+        parents[find(parents, a)] = find(parents, b);
+    }
+    /**
+     * Frontier cells linked by numbers, enumerated independently from the other components.
+     * Cells next to exactly the same numbers are interchangeable, they are enumerated together as a group
+     * by their number of mines, each count weighted by the ways to choose those mines in the group
+     */
+    private final class Component extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Hidden cells of the component, in the enumeration order, cellCount first ones used
+         */
+        int cells[] = new int[4];
+        int cellCount;
+
+        /**
+         * Numbers constraining the cells, constraintCount first ones used
+         */
+        private int constraints[] = new int[4];
+        private int constraintCount;
+
+        /**
+         * Number of configurations with k mines
+         */
+        double ways[];
+
+        /**
+         * Number of configurations with k mines where the cell is a mine, by position in cells
+         */
+        double cellWays[][];
+
+        /**
+         * True if the enumeration went over MAX_COMPONENT_NODES
+         */
+        boolean aborted;
+
+        /**
+         * Group of each cell, by position in cells
+         */
+        private int cellGroups[];
+
+        /**
+         * Size and constraints of each group
+         */
+        private int groupSizes[];
+        private int groupConstraints[][];
+
+        /**
+         * Number of configurations with k mines where a given cell of the group is a mine
+         */
+        private double groupWays[][];
+
+        /**
+         * Mines still needed and cells still unassigned by each constraint
+         */
+        private int needed[];
+        private int unassigned[];
+
+        /**
+         * Current assignment, the number of mines of each group
+         */
+        private int counts[];
+
+        private long nodes;
+
+        void addCell(int cell) {
+            cells = append(cells, cellCount++, cell);
+        }
+
+        void addConstraint(int constraint) {
+            constraints = append(constraints, constraintCount++, constraint);
+        }
+
+        @Override
+        protected void compute() {
+            int size = cellCount;
+            needed = new int[constraintCount];
+            unassigned = new int[constraintCount];
+            int unknowns[][] = new int[constraintCount][];
+            for(int c = 0; c < constraintCount; c++) {
+                int constraint = constraints[c];
+                unknowns[c] = getUnknown(constraint);
+                needed[c] = getRemainingMines(constraint);
+                unassigned[c] = unknowns[c].length;
+            }
+            orderCells(unknowns);
+            groupCells(unknowns);
+
+            ways = new double[size + 1];
+            groupWays = new double[groupSizes.length][size + 1];
+            counts = new int[groupSizes.length];
+            enumerate(0, 0, 1);
+            cellWays = new double[size][];
+            for(int k = 0; k < size; k++)
+                cellWays[k] = groupWays[cellGroups[k]];
+        }
+
+        /**
+         * Orders the cells breadth first along the numbers, so that each number gets all its cells assigned
+         * soon after its first one and the impossible configurations are cut early
+         * @param unknowns : the hidden unmarked neighbours of each constraint
+         */
+        private void orderCells(int unknowns[][]) {
+            // The cells are added in increasing order, a position in the sorted copy marks them as seen
+            int sorted[] = Arrays.copyOf(cells, cellCount);
+            int ordered[] = new int[cellCount];
+            int orderedCount = 0;
+            boolean seen[] = new boolean[cellCount];
+            boolean used[] = new boolean[unknowns.length];
+            ordered[orderedCount++] = sorted[0];
+            seen[0] = true;
+            for(int head = 0; head < orderedCount; head++) {
+                int cell = ordered[head];
+                for(int c = 0; c < unknowns.length; c++) {
+                    if(used[c] || !contains(unknowns[c], cell))
+                        continue;
+                    used[c] = true;
+                    for(int other : unknowns[c]) {
+                        int k = Arrays.binarySearch(sorted, other);
+                        if(!seen[k]) {
+                            seen[k] = true;
+                            ordered[orderedCount++] = other;
+                        }
+                    }
+                }
+            }
+            cells = ordered;
+        }
+
+        /**
+         * Gathers the cells next to the same numbers, in the order of their first cell
+         * @param unknowns : the hidden unmarked neighbours of each constraint
+         */
+        private void groupCells(int unknowns[][]) {
+            // A cell touches at most 8 numbers and a component holds few groups, the keys are compared in turn
+            int keys[][] = new int[cellCount][];
+            int sizes[] = new int[cellCount];
+            int groupCount = 0;
+            int key[] = new int[8];
+            cellGroups = new int[cellCount];
+            for(int k = 0; k < cellCount; k++) {
+                int keySize = 0;
+                for(int c = 0; c < unknowns.length; c++) {
+                    if(contains(unknowns[c], cells[k]))
+                        key[keySize++] = c;
+                }
+                int group = 0;
+                while(group < groupCount && !sameKey(keys[group], key, keySize))
+                    group++;
+                if(group == groupCount)
+                    keys[groupCount++] = Arrays.copyOf(key, keySize);
+                sizes[group]++;
+                cellGroups[k] = group;
+            }
+            groupSizes = Arrays.copyOf(sizes, groupCount);
+            groupConstraints = Arrays.copyOf(keys, groupCount);
+        }
+
+        private boolean sameKey(int groupKey[], int key[], int keySize) {
+            if(groupKey.length != keySize)
+                return false;
+            for(int c = 0; c < keySize; c++) {
+                if(groupKey[c] != key[c])
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Tries every number of mines in the group at the given position, then the next groups
+         * @param group : the position of the group to assign
+         * @param count : the number of mines already assigned
+         * @param weight : the number of configurations of the groups already assigned
+         */
+        private void enumerate(int group, int count, double weight) {
+            if(aborted)
+                return;
+            if(++nodes > MAX_COMPONENT_NODES) {
+                aborted = true;
+                return;
+            }
+            if(group == groupSizes.length) {
+                ways[count] += weight;
+                for(int g = 0; g < counts.length; g++) {
+                    if(counts[g] > 0)
+                        groupWays[g][count] += weight * counts[g] / groupSizes[g];
+                }
+                return;
+            }
+            int size = groupSizes[group];
+            int constraintsOfGroup[] = groupConstraints[group];
+            for(int c : constraintsOfGroup)
+                unassigned[c] -= size;
+            for(int mines = 0; mines <= size; mines++) {
+                boolean valid = true;
+                for(int c : constraintsOfGroup) {
+                    if(needed[c] < mines || unassigned[c] < needed[c] - mines)
+                        valid = false;
+                }
+                if(valid) {
+                    for(int c : constraintsOfGroup)
+                        needed[c] -= mines;
+                    counts[group] = mines;
+                    enumerate(group + 1, count + mines, weight * BINOMIALS[size][mines]);
+                    for(int c : constraintsOfGroup)
+                        needed[c] += mines;
+                }
+            }
+            counts[group] = 0;
+            for(int c : constraintsOfGroup)
+                unassigned[c] += size;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.android.demineur;
+
+/**
+ * Append-only journal of the moves of a game.
+ * Each move keeps the cell played, how it was played, and the previous and next state of every cell it changed,
+ * so undoing or redoing it costs as much as the move itself.
+ * The moves alone, replayed on a model built with the same seed, give back the same game
+ */
+public final class MoveJournal {
+
+    /**
+     * Discovers a cell
+     */
+    public static final int BASIC = 0;
+
+    /**
+     * Puts or removes a flag
+     */
+    public static final int FLAG = 1;
+
+    /**
+     * Discovers the neighbours of a discovered cell whose mines are flagged
+     */
+    public static final int CHORD = 2;
+
+    /**
+     * Safe joker move
+     */
+    public static final int SAFE_JOKER = 3;
+
+    /**
+     * Burst joker move
+     */
+    public static final int BURST_JOKER = 4;
+
+    /**
+     * Moves, cell << 3 | mode, the mode also tells which click counter of the model the move added one to
+     */
+    private int moves[];
+
+    /**
+     * Game flags of the model before and after each move, before << 16 | after
+     */
+    private int flags[];
+
+    /**
+     * End of the changes of each move in the delta arrays, the changes of the move k start at the end of the move k - 1
+     */
+    private int deltaEnds[];
+
+    /**
+     * Changed cells of all the moves
+     */
+    private int deltaCells[];
+
+    /**
+     * Packed states of the changed cells, previous << 8 | next
+     */
+    private short deltaStates[];
+
+    /**
+     * Number of recorded moves
+     */
+    private int size;
+
+    /**
+     * Number of moves currently applied to the model, lower than size after an undo
+     */
+    private int position;
+
+    MoveJournal() {
+        moves = new int[16];
+        flags = new int[16];
+        deltaEnds = new int[16];
+        deltaCells = new int[64];
+        deltaStates = new short[64];
+    }
+
+    /**
+     *
+     * @return the number of recorded moves, undone ones included
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     *
+     * @return the number of moves currently applied to the game
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     *
+     * @param k : the move number
+     * @return the index of the cell played by the move, i * width + j
+     */
+    public int getCell(int k) {
+        checkMove(k);
+        return moves[k] >>> 3;
+    }
+
+    /**
+     *
+     * @param k : the move number
+     * @return how the move has been played, BASIC, FLAG, CHORD, SAFE_JOKER or BURST_JOKER
+     */
+    public int getMode(int k) {
+        checkMove(k);
+        return moves[k] & 0x07;
+    }
+
+    /**
+     *
+     * @param k : the move number
+     * @return the number of cells changed by the move
+     */
+    public int getChangeCount(int k) {
+        checkMove(k);
+        return deltaEnds[k] - getDeltaStart(k);
+    }
+
+    private void checkMove(int k) {
+        if(k < 0 || k >= size)
+            throw new IndexOutOfBoundsException(k + "");
+    }
+
+    /**
+     * Appends a move, forgetting the undone moves
+     * @param cell : the cell played
+     * @param mode : how the move has been played
+     * @param flagsBefore : the game flags before the move
+     * @param flagsAfter : the game flags after the move
+     * @param changes : the cells changed by the move, with their previous state
+     * @param state : the packed cells after the move
+     */
+    void record(int cell, int mode, int flagsBefore, int flagsAfter, ChangeSet changes, CellStorage state) {
+        size = position;
+        if(size == moves.length) {
+            moves = grow(moves);
+            flags = grow(flags);
+            deltaEnds = grow(deltaEnds);
+        }
+        int start = size == 0 ? 0 : deltaEnds[size - 1];
+        int end = start + changes.size();
+        while(end > deltaCells.length) {
+            deltaCells = grow(deltaCells);
+            short grown[] = new short[deltaStates.length * 2];
+            System.arraycopy(deltaStates, 0, grown, 0, deltaStates.length);
+            deltaStates = grown;
+        }
+        for(int k = 0; k < changes.size(); k++) {
+            int changed = changes.get(k);
+            deltaCells[start + k] = changed;
+            deltaStates[start + k] = (short) ((changes.getPrevious(k) & 0xFF) << 8 | (state.get(changed) & 0xFF));
+        }
+        moves[size] = cell << 3 | mode;
+        flags[size] = flagsBefore << 16 | flagsAfter;
+        deltaEnds[size] = end;
+        size++;
+        position = size;
+    }
+
+    int getDeltaStart(int k) {
+        return k == 0 ? 0 : deltaEnds[k - 1];
+    }
+
+    int getDeltaEnd(int k) {
+        return deltaEnds[k];
+    }
+
+    int getDeltaCell(int d) {
+        return deltaCells[d];
+    }
+
+    byte getDeltaPrevious(int d) {
+        return (byte) (deltaStates[d] >>> 8);
+    }
+
+    byte getDeltaNext(int d) {
+        return (byte) deltaStates[d];
+    }
+
+    int getFlagsBefore(int k) {
+        return flags[k] >>> 16;
+    }
+
+    int getFlagsAfter(int k) {
+        return flags[k] & 0xFFFF;
+    }
+
+    void setPosition(int position) {
+        this.position = position;
+    }
+
+    /**
+     * Forgets every move, keeping the storage for the next game
+     */
+    void clear() {
+        size = 0;
+        position = 0;
+    }
+
+    private static int[] grow(int array[]) {
+        int grown[] = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
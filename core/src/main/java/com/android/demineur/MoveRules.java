@@ -0,0 +1,221 @@
+package com.android.demineur;
+
+/**
+ * Rules of the moves shared by the finite and the endless grids, on the packed cells of the subclass.
+ * A cell is a long so the endless grid can address any (i, j) cell, the finite grid uses its cell index.
+ * The empty regions are opened breadth first from a work queue, so their size isn't bounded by the stack
+ */
+abstract class MoveRules {
+
+    /**
+     * Move type returned by getMoveMode when playing in the cell changes nothing
+     */
+    static final int NO_MOVE = -1;
+
+    /**
+     * Ring buffer of the empty cells waiting to be expanded by the flood fill, reused between moves
+     */
+    private long floodQueue[];
+
+    /**
+     * Position of the next cell to expand in the flood queue
+     */
+    private int floodHead;
+
+    /**
+     * Number of cells waiting in the flood queue
+     */
+    private int floodSize;
+
+    /**
+     * Neighbours of the cell expanded by the flood fill, and of the cell of a chord or of a flag count,
+     * two buffers since a chord opens regions
+     */
+    private final long floodNeighbours[] = new long[8];
+    private final long moveNeighbours[] = new long[8];
+
+    /**
+     *
+     * @param cell : the cell
+     * @return the packed cell, DemineurModel MINE_BIT, DISCOVERED_BIT, MARKED_BIT and the number of adjacent mines
+     */
+    abstract int getState(long cell);
+
+    /**
+     *
+     * @param cell : the cell
+     * @param neighbours : filled with the neighbours of the cell, row by row from the top left one
+     * @return the number of neighbours, less than 8 on the edges of a finite grid
+     */
+    abstract int getNeighbours(long cell, long neighbours[]);
+
+    /**
+     * Discovers a hidden and unmarked cell
+     * @param cell : the cell
+     */
+    abstract void discover(long cell);
+
+    /**
+     * Puts a flag on the cell if it has none, else removes it
+     * @param cell : the cell
+     */
+    abstract void toggleMark(long cell);
+
+    /**
+     * A mine has been discovered
+     */
+    abstract void lose();
+
+    /**
+     * Tells how playing in a cell is handled, outside of the jokers
+     * @param cell : the cell
+     * @param flagMode : true if the game is in the flag mode
+     * @return MoveJournal.FLAG in the flag mode on a hidden cell, MoveJournal.CHORD on a discovered number with as many
+     * flags around, MoveJournal.BASIC on an unmarked cell, otherwise NO_MOVE
+     */
+    final int getMoveMode(long cell, boolean flagMode) {
+        int value = getState(cell);
+        boolean discovered = (value & DemineurModel.DISCOVERED_BIT) != 0;
+        if(flagMode && !discovered)
+            return MoveJournal.FLAG;
+        if(discovered && (value & DemineurModel.MINE_BIT) == 0 && countAdjacentFlags(cell) == (value & DemineurModel.ADJACENT_MASK))
+            return MoveJournal.CHORD;
+        if((value & DemineurModel.MARKED_BIT) == 0)
+            return MoveJournal.BASIC;
+        return NO_MOVE;
+    }
+
+    /**
+     * Calculate the number of flags around the given cell
+     * @param cell : the cell
+     * @return the number of adjacent cells that have been marked
+     */
+    final int countAdjacentFlags(long cell) {
+        int count = 0;
+        int size = getNeighbours(cell, moveNeighbours);
+        for(int k = 0; k < size; k++) {
+            if((getState(moveNeighbours[k]) & DemineurModel.MARKED_BIT) != 0)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Plays in the cell: a mine loses the game, an empty cell opens its region, a number is discovered
+     * @param cell : the cell
+     */
+    void basicMove(long cell) {
+        int value = getState(cell);
+        if((value & DemineurModel.DISCOVERED_BIT) != 0)
+            return;
+        if((value & DemineurModel.MINE_BIT) != 0) {
+            discover(cell);
+            lose();
+            return;
+        }
+        if((value & DemineurModel.ADJACENT_MASK) == 0)
+            setAdjacentEmptyDiscovered(cell);
+        else
+            discover(cell);
+    }
+
+    /**
+     * Makes all the non-discovered adjacent cells of a discovered cell become discovered
+     * The number of adjacent flags must be the same that the cell's number
+     * The player can lose if he marked a wrong cell
+     * @param cell : the cell
+     */
+    final void discoveredMove(long cell) {
+        long neighbours[] = moveNeighbours;
+        int size = getNeighbours(cell, neighbours);
+        for(int k = 0; k < size; k++) {
+            if((getState(neighbours[k]) & DemineurModel.MARKED_BIT) == 0)
+                basicMove(neighbours[k]);
+        }
+    }
+
+    /**
+     * An empty cell has been discovered, looks for adjacent empty cells.
+     * Once the queue holds getParallelFrontier() cells the rest of the region is opened by setParallelEmptyDiscovered
+     * @param cell : the cell
+     */
+    final void setAdjacentEmptyDiscovered(long cell) {
+        if((getState(cell) & (DemineurModel.DISCOVERED_BIT | DemineurModel.MARKED_BIT)) != 0)
+            return;
+        discover(cell);
+        int parallelFrontier = getParallelFrontier();
+        floodHead = 0;
+        floodSize = 0;
+        pushFlood(cell);
+        while(floodSize > 0) {
+            if(floodSize >= parallelFrontier) {
+                setParallelEmptyDiscovered();
+                return;
+            }
+            long empty = pollFlood();
+            int size = getNeighbours(empty, floodNeighbours);
+            for(int k = 0; k < size; k++) {
+                long neighbour = floodNeighbours[k];
+                int value = getState(neighbour);
+                if((value & (DemineurModel.DISCOVERED_BIT | DemineurModel.MARKED_BIT)) != 0)
+                    continue;
+                discover(neighbour);
+                if((value & (DemineurModel.MINE_BIT | DemineurModel.ADJACENT_MASK)) == 0)
+                    pushFlood(neighbour);
+            }
+        }
+    }
+
+    /**
+     *
+     * @return the number of cells waiting in the flood queue above which the rest of the region is opened
+     * by setParallelEmptyDiscovered, Integer.MAX_VALUE to always open it here
+     */
+    int getParallelFrontier() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Opens the rest of the region from the cells of the flood queue, which it empties with pollFlood
+     */
+    void setParallelEmptyDiscovered() {
+        throw new UnsupportedOperationException("No parallel opening");
+    }
+
+    /**
+     *
+     * @return the number of cells waiting in the flood queue
+     */
+    final int getFloodSize() {
+        return floodSize;
+    }
+
+    /**
+     * Adds a cell at the end of the flood queue, doubling the buffer when it is full
+     * @param cell : the cell
+     */
+    private void pushFlood(long cell) {
+        if(floodQueue == null)
+            floodQueue = new long[64];
+        else if(floodSize == floodQueue.length) {
+            long grown[] = new long[floodQueue.length * 2];
+            for(int k = 0; k < floodSize; k++)
+                grown[k] = floodQueue[(floodHead + k) & (floodQueue.length - 1)];
+            floodQueue = grown;
+            floodHead = 0;
+        }
+        floodQueue[(floodHead + floodSize) & (floodQueue.length - 1)] = cell;
+        floodSize++;
+    }
+
+    /**
+     * Removes the first cell of the flood queue
+     * @return the cell
+     */
+    final long pollFlood() {
+        long cell = floodQueue[floodHead];
+        floodHead = (floodHead + 1) & (floodQueue.length - 1);
+        floodSize--;
+        return cell;
+    }
+}
@@ -0,0 +1,171 @@
+package com.android.demineur;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the seeds of grids that can be cleared from the first move without ever guessing.
+ * Candidate seeds are tried on every core at once, each candidate is played by deductions only,
+ * and the search stops as soon as one candidate is cleared
+ */
+public final class NoGuessGenerator {
+
+    private final int width;
+
+    private final int height;
+
+    private final int mines;
+
+    /**
+     * Threads testing the candidates, one per core
+     */
+    private final ExecutorService executor;
+
+    private final int threads;
+
+    /**
+     * Seed of the series of candidates
+     */
+    private final long baseSeed;
+
+    /**
+     * Index of the next candidate in the series, shared by the threads so no seed is tried twice
+     */
+    private final AtomicLong nextCandidate;
+
+    /**
+     * Construct a generator of grids of the given size
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     */
+    public NoGuessGenerator(int width, int height, int mines) {
+        this.width = width;
+        this.height = height;
+        this.mines = mines;
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.baseSeed = new Random().nextLong();
+        this.nextCandidate = new AtomicLong();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "no-guess-generator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMines() {
+        return mines;
+    }
+
+    /**
+     * Looks for a grid that can be cleared without guessing when the (i, j) cell is played first
+     * @param i : the row of the first move
+     * @param j : the column of the first move
+     * @param timeout : the maximum search time
+     * @param unit : the unit of the timeout
+     * @return the seed of the grid, to give to the model constructor before playing (i, j)
+     * @throws InterruptedException if the calling thread is interrupted during the search
+     * @throws TimeoutException if no candidate has been cleared in time
+     */
+    public long generate(final int i, final int j, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if(i < 0 || i >= height || j < 0 || j >= width)
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ")");
+        List<Callable<Long>> searches = new ArrayList<>(threads);
+        for(int k = 0; k < threads; k++) {
+            searches.add(new Callable<Long>() {
+                @Override
+                public Long call() throws InterruptedException {
+                    while(true) {
+                        long seed = DemineurModel.getSeriesSeed(baseSeed, nextCandidate.getAndIncrement());
+                        if(isSolvable(new DemineurModel(width, height, mines, seed), i, j))
+                            return seed;
+                    }
+                }
+            });
+        }
+        try {
+            return executor.invokeAny(searches, timeout, unit); // the other searches are interrupted
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops the threads, the generator can't be used afterwards
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Plays a new game by deductions only: the solver rules first, then the cells with no chance of being a mine
+     * @param model : a new game
+     * @param i : the row of the first move
+     * @param j : the column of the first move
+     * @return true if the game has been won without guessing
+     * @throws InterruptedException if the thread is interrupted during the game
+     */
+    static boolean isSolvable(DemineurModel model, int i, int j) throws InterruptedException {
+        int width = model.getWidth();
+        model.move(i, j);
+        DemineurSolver solver = new DemineurSolver(model);
+        MineProbability probability = null;
+        while(!model.isWon()) {
+            if(Thread.interrupted())
+                throw new InterruptedException();
+            if(model.isLost())
+                return false;
+            if(solver.solve()) {
+                model.setFlagMode(true);
+                for(int k = 0; k < solver.getMineCount(); k++) {
+                    int cell = solver.getMine(k);
+                    solver.update(model.move(cell / width, cell % width));
+                }
+                model.setFlagMode(false);
+                for(int k = 0; k < solver.getSafeCount(); k++) {
+                    int cell = solver.getSafe(k);
+                    if(!model.isDiscovered(cell / width, cell % width))
+                        solver.update(model.move(cell / width, cell % width));
+                }
+                continue;
+            }
+            if(probability == null)
+                probability = new MineProbability(model);
+            if(!probability.compute())
+                return false;
+            boolean found = false;
+            for(int cell = 0; cell < width * model.getHeight(); cell++) {
+                int m = cell / width;
+                int n = cell % width;
+                if(!model.isDiscovered(m, n) && !model.isMarked(m, n) && probability.getProbability(m, n) == 0) {
+                    solver.update(model.move(m, n));
+                    found = true;
+                }
+            }
+            if(!found)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,250 @@
+package com.android.demineur;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Opening of a large empty region frontier by frontier on a fork/join pool.
+ * Each frontier is split between the tasks, which claim the hidden neighbours of their cells by setting their bit
+ * in a claim table with a compare and set, so every cell is claimed by a single task.
+ * A task discovers the cells it claimed in the parts of the grid the model owns, without a lock since the reads
+ * of a chunked grid use the cache of the thread. The cells of the parts not held in memory or shared with a snapshot
+ * are left to the model, which copies those parts on its own thread, adds the discovered cells to the changes
+ * of the move and keeps the empty ones as the next frontier
+ */
+final class ParallelFlood {
+
+    /**
+     * Number of cells waiting in the flood queue above which the model opens the rest of the region in parallel
+     */
+    static final int MIN_FRONTIER = 1 << 12;
+
+    /**
+     * True if the device has several cores, on a single core the claims only add to the sequential opening
+     */
+    static final boolean ENABLED = Runtime.getRuntime().availableProcessors() > 1;
+
+    /**
+     * Number of frontier cells expanded by a task without splitting it
+     */
+    private static final int LEAF_CELLS = 1 << 10;
+
+    /**
+     * Cells of a block of the claim table, which is allocated when one of its cells is claimed
+     */
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+
+    private final DemineurModel model;
+
+    private final CellStorage state;
+
+    private final int offsets[];
+
+    private final ForkJoinPool pool;
+
+    /**
+     * One bit per cell set once a task claimed it, by blocks of 1 << BLOCK_SHIFT cells
+     */
+    private final AtomicReferenceArray<AtomicIntegerArray> claims;
+
+    /**
+     * Prepare the opening of a region
+     * @param model : the game, only its grid geometry is read by the tasks
+     * @param state : the grid, whose writable cells are discovered by the tasks and which must not change otherwise
+     * while a frontier is expanded
+     * @param offsets : the index offsets of the neighbours of a cell
+     * @param pool : the pool expanding the frontiers, unless expand is called from a fork/join task
+     */
+    ParallelFlood(DemineurModel model, CellStorage state, int offsets[], ForkJoinPool pool) {
+        this.model = model;
+        this.state = state;
+        this.offsets = offsets;
+        this.pool = pool;
+        this.claims = new AtomicReferenceArray<>(((model.getWidth() * model.getHeight() - 1) >>> BLOCK_SHIFT) + 1);
+    }
+
+    /**
+     * Claims the hidden and unmarked neighbours of the frontier cells not claimed yet, and discovers the writable ones
+     * @param frontier : the discovered empty cells to expand
+     * @return the claimed cells, in no particular order
+     */
+    Claims expand(int frontier[]) {
+        Expansion task = new Expansion(frontier, 0, frontier.length);
+        return ForkJoinTask.inForkJoinPool() ? task.invoke() : pool.invoke(task);
+    }
+
+    /**
+     * Sets the claim bit of a cell
+     * @param cell : the cell index
+     * @return true if the bit wasn't set, so the caller owns the cell
+     */
+    private boolean claim(int cell) {
+        int block = cell >>> BLOCK_SHIFT;
+        AtomicIntegerArray bits = claims.get(block);
+        if(bits == null) {
+            claims.compareAndSet(block, null, new AtomicIntegerArray(1 << (BLOCK_SHIFT - 5)));
+            bits = claims.get(block);
+        }
+        int word = (cell & BLOCK_MASK) >>> 5;
+        int bit = 1 << (cell & 31);
+        while(true) {
+            int old = bits.get(word);
+            if((old & bit) != 0)
+                return false;
+            if(bits.compareAndSet(word, old, old | bit))
+                return true;
+        }
+    }
+
+    /**
+     * Cells claimed by an expansion: the ones discovered by the tasks with their packed state before,
+     * and the ones left to the model
+     */
+    static final class Claims {
+
+        private int cells[];
+
+        private byte previous[];
+
+        private int size;
+
+        private int deferred[];
+
+        private int deferredSize;
+
+        private Claims(int capacity) {
+            cells = new int[capacity];
+            previous = new byte[capacity];
+            deferred = new int[16];
+        }
+
+        /**
+         *
+         * @return the number of cells discovered by the tasks
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         *
+         * @param k : the position, between 0 and size() - 1
+         * @return the index of the k-th cell discovered by the tasks
+         */
+        int get(int k) {
+            return cells[k];
+        }
+
+        /**
+         *
+         * @param k : the position, between 0 and size() - 1
+         * @return the packed state of the k-th cell discovered by the tasks before they discovered it
+         */
+        byte getPrevious(int k) {
+            return previous[k];
+        }
+
+        /**
+         *
+         * @return the number of claimed cells the model must discover itself
+         */
+        int getDeferredCount() {
+            return deferredSize;
+        }
+
+        /**
+         *
+         * @param k : the position, between 0 and getDeferredCount() - 1
+         * @return the index of the k-th claimed cell the model must discover itself
+         */
+        int getDeferred(int k) {
+            return deferred[k];
+        }
+
+        private void add(int cell, byte state) {
+            if(size == cells.length) {
+                cells = Arrays.copyOf(cells, size * 2 + 1);
+                previous = Arrays.copyOf(previous, size * 2 + 1);
+            }
+            cells[size] = cell;
+            previous[size] = state;
+            size++;
+        }
+
+        private void defer(int cell) {
+            if(deferredSize == deferred.length)
+                deferred = Arrays.copyOf(deferred, deferredSize * 2);
+            deferred[deferredSize++] = cell;
+        }
+
+        /**
+         * Appends the claims of another task
+         * @param other : the claims of the other task
+         */
+        private void addAll(Claims other) {
+            for(int k = 0; k < other.size; k++)
+                add(other.cells[k], other.previous[k]);
+            for(int k = 0; k < other.deferredSize; k++)
+                defer(other.deferred[k]);
+        }
+    }
+
+    /**
+     * Expansion of a range of the frontier, split in halves down to LEAF_CELLS cells
+     */
+    private final class Expansion extends RecursiveTask<Claims> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int frontier[];
+
+        private final int from;
+
+        private final int to;
+
+        Expansion(int frontier[], int from, int to) {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Claims compute() {
+            if(to - from > LEAF_CELLS) {
+                int middle = (from + to) >>> 1;
+                Expansion low = new Expansion(frontier, from, middle);
+                low.fork();
+                Claims high = new Expansion(frontier, middle, to).compute();
+                Claims claims = low.join();
+                claims.addAll(high);
+                return claims;
+            }
+            Claims claims = new Claims((to - from) * 3);
+            for(int k = from; k < to; k++) {
+                int cell = frontier[k];
+                int mask = model.getNeighbourMask(cell);
+                for(int n = 0; n < 8; n++) {
+                    if((mask & (1 << n)) == 0)
+                        continue;
+                    int neighbour = cell + offsets[n];
+                    // the cell is only written by the task claiming it, so its state can't change after this read
+                    byte value = state.get(neighbour);
+                    if((value & (DemineurModel.DISCOVERED_BIT | DemineurModel.MARKED_BIT)) != 0 || !claim(neighbour))
+                        continue;
+                    if(state.isWritable(neighbour)) {
+                        state.set(neighbour, (byte) (value | DemineurModel.DISCOVERED_BIT | DemineurModel.CHANGED_BIT));
+                        claims.add(neighbour, value);
+                    }
+                    else
+                        claims.defer(neighbour);
+                }
+            }
+            return claims;
+        }
+    }
+}
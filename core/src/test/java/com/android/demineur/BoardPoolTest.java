@@ -0,0 +1,90 @@
+package com.android.demineur;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BoardPoolTest {
+
+    /**
+     * Waits for the background thread to fill the difficulty
+     */
+    private static void awaitSize(BoardPool pool, int width, int height, int mines, boolean noGuess, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60000;
+        while(pool.size(width, height, mines, noGuess) < size) {
+            assertTrue("The pool isn't filled", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void symmetriesAreTheirOwnInverse() throws Exception {
+        MineLayout layout = MineLayout.create(30, 16, 99, 1, 8 * 30 + 15, false);
+        for(int symmetry = 0; symmetry < MineLayout.SYMMETRIES; symmetry++) {
+            for(int cell = 0; cell < 30 * 16; cell++)
+                assertEquals(cell, layout.transform(layout.transform(cell, symmetry), symmetry));
+        }
+        assertEquals(29, layout.transform(0, 1));
+        assertEquals(15 * 30, layout.transform(0, 2));
+        assertEquals(16 * 30 - 1, layout.transform(0, 3));
+    }
+
+    @Test
+    public void dealtGridIsTheLayoutThroughItsSymmetry() throws Exception {
+        MineLayout layout = MineLayout.create(16, 16, 40, 5, 0, false);
+        // the first move on every mine of the layout needs another symmetry
+        for(int k = 0; k < layout.getMines(); k++) {
+            int first = layout.getMine(k);
+            DemineurModel model = new DemineurModel(layout);
+            model.move(first / 16, first % 16);
+            assertFalse(model.isLost());
+            int symmetry = model.getSymmetry();
+            assertEquals(layout.getSymmetry(first), symmetry);
+            assertNotEquals(0, symmetry);
+            for(int m = 0; m < layout.getMines(); m++) {
+                int cell = layout.transform(layout.getMine(m), symmetry);
+                assertEquals(DemineurModel.Cell.MINE, model.getCell(cell / 16, cell % 16));
+            }
+        }
+    }
+
+    @Test
+    public void noGuessLayoutOpensUnderTheFirstMove() throws Exception {
+        BoardPool pool = new BoardPool(2);
+        try {
+            pool.prefill(9, 9, 10, true);
+            awaitSize(pool, 9, 9, 10, true, 2);
+            assertEquals(0, pool.size(9, 9, 10, false));
+            MineLayout layout = pool.take(9, 9, 10, true, 4, 4);
+            assertNotNull(layout);
+            assertTrue(layout.isNoGuess());
+            DemineurModel model = new DemineurModel(layout);
+            model.move(4, 4);
+            // the move lands in the opening of the layout, from where the grid is cleared without guessing
+            assertEquals(layout.getOrigin(), model.getOrigin());
+            assertTrue(NoGuessGenerator.isSolvable(new DemineurModel(layout), 4, 4));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void takenLayoutsAreRefilled() throws Exception {
+        BoardPool pool = new BoardPool(3);
+        try {
+            assertNull(pool.take(30, 16, 99, false, 0, 0));
+            awaitSize(pool, 30, 16, 99, false, 3);
+            // the layouts are generated from the centre of the grid, which is never a mine
+            for(int k = 0; k < 3; k++) {
+                MineLayout layout = pool.take(30, 16, 99, false, 8, 15);
+                assertNotNull(layout);
+                DemineurModel model = new DemineurModel(layout);
+                model.move(8, 15);
+                assertFalse(model.isLost());
+            }
+            awaitSize(pool, 30, 16, 99, false, 3);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
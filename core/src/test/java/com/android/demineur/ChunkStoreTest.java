@@ -0,0 +1,103 @@
+package com.android.demineur;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ChunkStoreTest {
+
+    /**
+     * Discovered bits then marked bits of a chunk
+     */
+    private static final int BITS = InfiniteModel.CHUNK_SIZE * InfiniteModel.CHUNK_SIZE / 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] randomBits(long seed) {
+        byte bits[] = new byte[BITS];
+        new Random(seed).nextBytes(bits);
+        return bits;
+    }
+
+    @Test
+    public void chunksComeBackAsWritten() throws Exception {
+        File path = folder.newFile();
+        ChunkStore store = new ChunkStore(path);
+        for(long key = -20; key < 20; key++)
+            store.write(key << 32 | (key & 0xFFFFFFFFL), randomBits(key));
+        // a chunk written again supersedes its first record
+        store.write(5L << 32 | 5, randomBits(100));
+        assertEquals(40, store.size());
+        byte bits[] = new byte[BITS];
+        assertFalse(store.read(1L << 32, bits));
+        for(long key = -20; key < 20; key++) {
+            assertTrue(store.read(key << 32 | (key & 0xFFFFFFFFL), bits));
+            assertArrayEquals(randomBits(key == 5 ? 100 : key), bits);
+        }
+        store.close();
+        // the index is rebuilt from the file
+        ChunkStore reopened = new ChunkStore(path);
+        assertEquals(40, reopened.size());
+        assertTrue(reopened.contains(-20L << 32 | (-20 & 0xFFFFFFFFL)));
+        assertTrue(reopened.read(5L << 32 | 5, bits));
+        assertArrayEquals(randomBits(100), bits);
+        reopened.close();
+    }
+
+    @Test
+    public void exploredChunksAreCompressed() throws Exception {
+        ChunkStore store = new ChunkStore(folder.newFile());
+        byte bits[] = new byte[BITS];
+        // every cell discovered, no flag
+        for(int k = 0; k < BITS / 2; k++)
+            bits[k] = (byte) 0xFF;
+        for(long key = 0; key < 100; key++)
+            store.write(key, bits);
+        assertTrue(store.getLength() < 100 * BITS / 10);
+        byte read[] = new byte[BITS];
+        assertTrue(store.read(42, read));
+        assertArrayEquals(bits, read);
+        store.close();
+    }
+
+    @Test
+    public void cutRecordIsDropped() throws Exception {
+        File path = folder.newFile();
+        ChunkStore store = new ChunkStore(path);
+        store.write(1, randomBits(1));
+        long length = store.getLength();
+        store.write(2, randomBits(2));
+        store.close();
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        file.setLength(file.length() - 10);
+        file.close();
+        ChunkStore reopened = new ChunkStore(path);
+        assertEquals(1, reopened.size());
+        assertEquals(length, reopened.getLength());
+        assertFalse(reopened.contains(2));
+        // the next record goes where the cut one was
+        reopened.write(2, randomBits(3));
+        byte bits[] = new byte[BITS];
+        assertTrue(reopened.read(2, bits));
+        assertArrayEquals(randomBits(3), bits);
+        reopened.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws Exception {
+        File path = folder.newFile();
+        FileOutputStream out = new FileOutputStream(path);
+        out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        out.close();
+        new ChunkStore(path);
+    }
+}
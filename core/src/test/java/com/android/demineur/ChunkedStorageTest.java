@@ -0,0 +1,177 @@
+package com.android.demineur;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ChunkedStorageTest {
+
+    /**
+     * Grid sizes which are not multiples of the chunk size, so the last chunks of a row and of a column are cut
+     */
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 700;
+    private static final int MINES = 140000;
+
+    /**
+     * Reads every cell of the grid, row by row or column by column from the end
+     * @param model : the game
+     * @param reversed : true to read the columns from the last cell
+     * @return the cells of the grid, by index
+     */
+    private static DemineurModel.Cell[] readAll(DemineurModel model, boolean reversed) {
+        DemineurModel.Cell cells[] = new DemineurModel.Cell[WIDTH * HEIGHT];
+        if(reversed) {
+            for(int j = WIDTH - 1; j >= 0; j--) {
+                for(int i = HEIGHT - 1; i >= 0; i--)
+                    cells[i * WIDTH + j] = model.getCell(i, j);
+            }
+        }
+        else {
+            for(int i = 0; i < HEIGHT; i++) {
+                for(int j = 0; j < WIDTH; j++)
+                    cells[i * WIDTH + j] = model.getCell(i, j);
+            }
+        }
+        return cells;
+    }
+
+    @Test
+    public void gridHoldsEveryMineWithMatchingNumbers() throws Exception {
+        DemineurModel model = new DemineurModel(WIDTH, HEIGHT, MINES, 5);
+        assertTrue(model.isChunked());
+        model.move(HEIGHT / 2, WIDTH / 2);
+        DemineurModel.Cell cells[] = readAll(model, false);
+        int mines = 0;
+        for(DemineurModel.Cell cell : cells) {
+            if(cell == DemineurModel.Cell.MINE)
+                mines++;
+        }
+        assertEquals(MINES, mines);
+        // the numbers computed in a chunk count the mines of the neighbouring chunks
+        for(int i = 0; i < HEIGHT; i++) {
+            for(int j = 0; j < WIDTH; j++) {
+                if(cells[i * WIDTH + j] == DemineurModel.Cell.MINE)
+                    continue;
+                int count = 0;
+                for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, HEIGHT - 1); m++) {
+                    for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, WIDTH - 1); n++) {
+                        if(cells[m * WIDTH + n] == DemineurModel.Cell.MINE)
+                            count++;
+                    }
+                }
+                assertEquals("(" + i + ", " + j + ")", count, cells[i * WIDTH + j].ordinal() - DemineurModel.Cell.EMPTY.ordinal());
+            }
+        }
+    }
+
+    @Test
+    public void firstMoveIsNotAMine() throws Exception {
+        for(long seed = 0; seed < 20; seed++) {
+            DemineurModel model = new DemineurModel(WIDTH, HEIGHT, MINES, seed);
+            int i = (int) (seed * 31 % HEIGHT);
+            int j = (int) (seed * 47 % WIDTH);
+            model.move(i, j);
+            assertFalse(model.isLost());
+            assertTrue(model.isDiscovered(i, j));
+            assertNotEquals(DemineurModel.Cell.MINE, model.getCell(i, j));
+        }
+    }
+
+    @Test
+    public void chunksDontDependOnTheReadOrder() throws Exception {
+        DemineurModel first = new DemineurModel(WIDTH, HEIGHT, MINES, 9);
+        DemineurModel second = new DemineurModel(WIDTH, HEIGHT, MINES, 9);
+        first.move(10, 20);
+        second.move(10, 20);
+        // far more chunks than the cache holds, read in opposite orders
+        assertArrayEquals(readAll(first, false), readAll(second, true));
+        assertArrayEquals(readAll(first, true), readAll(second, false));
+    }
+
+    @Test
+    public void snapshotSurvivesNewGame() throws Exception {
+        // 32x16 chunks, so the chunk index is split in two pages
+        DemineurModel model = new DemineurModel(2000, 1000, 400000, 3);
+        model.move(10, 10);
+        BoardSnapshot snapshot = model.getSnapshot();
+        DemineurModel.Cell cells[] = new DemineurModel.Cell[2000 * 1000];
+        boolean discovered[] = new boolean[cells.length];
+        for(int i = 0; i < 1000; i++) {
+            for(int j = 0; j < 2000; j++) {
+                cells[i * 2000 + j] = snapshot.getCell(i, j);
+                discovered[i * 2000 + j] = snapshot.isDiscovered(i, j);
+            }
+        }
+        // a move on the second page leaves the first one shared with the snapshot
+        int safe = 990 * 2000;
+        while(model.getCell(safe / 2000, safe % 2000) == DemineurModel.Cell.MINE)
+            safe++;
+        assertTrue(model.move(safe / 2000, safe % 2000).size() > 0);
+        model.reset(4);
+        model.move(20, 20);
+        model.move(30, 1500);
+        for(int i = 0; i < 1000; i++) {
+            for(int j = 0; j < 2000; j++) {
+                assertEquals(cells[i * 2000 + j], snapshot.getCell(i, j));
+                assertEquals(discovered[i * 2000 + j], snapshot.isDiscovered(i, j));
+            }
+        }
+        assertTrue(snapshot.isDiscovered(10, 10));
+    }
+
+    @Test
+    public void seedsGiveDifferentGrids() throws Exception {
+        DemineurModel first = new DemineurModel(WIDTH, HEIGHT, MINES, 1);
+        DemineurModel second = new DemineurModel(WIDTH, HEIGHT, MINES, 2);
+        first.move(10, 20);
+        second.move(10, 20);
+        DemineurModel.Cell cells[] = readAll(first, false);
+        DemineurModel.Cell others[] = readAll(second, false);
+        int differences = 0;
+        for(int cell = 0; cell < cells.length; cell++) {
+            if((cells[cell] == DemineurModel.Cell.MINE) != (others[cell] == DemineurModel.Cell.MINE))
+                differences++;
+        }
+        // two independent grids of density 0.2 differ on about 2 * 0.2 * 0.8 of the cells
+        assertTrue(differences > cells.length / 5);
+    }
+
+    /**
+     * Reads a grid header and one chunk
+     * @param first : the cell of the first move, -1 before it
+     * @param chunk : the index of the stored chunk
+     * @return true if the grid has been read
+     */
+    private static boolean read(int first, int chunk) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(first);
+        out.writeInt(1);
+        out.writeInt(chunk);
+        out.write(new byte[ChunkedStorage.CHUNK_SIZE * ChunkedStorage.CHUNK_SIZE]);
+        try {
+            new ChunkedStorage(WIDTH, HEIGHT, MINES).readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 1);
+            return true;
+        } catch(IOException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void malformedGridsAreRejected() throws Exception {
+        int chunks = ((WIDTH + ChunkedStorage.CHUNK_SIZE - 1) / ChunkedStorage.CHUNK_SIZE) * ((HEIGHT + ChunkedStorage.CHUNK_SIZE - 1) / ChunkedStorage.CHUNK_SIZE);
+        assertTrue(read(-1, 0));
+        assertTrue(read(WIDTH * HEIGHT - 1, chunks - 1));
+        assertFalse(read(-2, 0));
+        assertFalse(read(WIDTH * HEIGHT, 0));
+        assertFalse(read(-1, -1));
+        assertFalse(read(-1, chunks));
+    }
+}
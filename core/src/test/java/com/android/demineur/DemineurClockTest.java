@@ -0,0 +1,67 @@
+package com.android.demineur;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DemineurClockTest {
+
+    @Test
+    public void pausesAreNotCounted() throws Exception {
+        DemineurModel model = new DemineurModel(9, 9, 10, 1);
+        assertFalse(model.isClockRunning());
+        assertEquals(0, model.getElapsedMillis(5000));
+        model.startClock(1000);
+        assertTrue(model.isClockRunning());
+        assertEquals(750, model.getElapsedMillis(1750));
+        model.stopClock(2500);
+        assertFalse(model.isClockRunning());
+        // the time spent stopped isn't counted
+        assertEquals(1500, model.getElapsedMillis(9000));
+        model.startClock(10000);
+        assertEquals(2000, model.getElapsedMillis(10500));
+        model.stopClock(11200);
+        assertEquals(2700, model.getElapsedMillis(20000));
+        assertEquals(2, model.getElapsedTime());
+    }
+
+    @Test
+    public void startingOrStoppingTwiceChangesNothing() throws Exception {
+        DemineurModel model = new DemineurModel(9, 9, 10, 1);
+        model.startClock(100);
+        model.startClock(400);
+        assertEquals(500, model.getElapsedMillis(600));
+        model.stopClock(600);
+        model.stopClock(900);
+        assertEquals(500, model.getElapsedMillis(900));
+    }
+
+    @Test
+    public void clockGoingBackIsIgnored() throws Exception {
+        DemineurModel model = new DemineurModel(9, 9, 10, 1);
+        model.startClock(1000);
+        model.stopClock(3000);
+        // a clock of another boot, earlier than the start
+        model.startClock(5000);
+        model.stopClock(200);
+        assertEquals(2000, model.getElapsedMillis(0));
+    }
+
+    @Test
+    public void startingResumesThePausedGame() throws Exception {
+        DemineurModel model = new DemineurModel(9, 9, 10, 1);
+        model.setPause(true);
+        model.startClock(0);
+        assertFalse(model.isPause());
+    }
+
+    @Test
+    public void newGameResetsTheClock() throws Exception {
+        DemineurModel model = new DemineurModel(9, 9, 10, 1);
+        model.startClock(0);
+        model.stopClock(4000);
+        model.reset(2);
+        assertFalse(model.isClockRunning());
+        assertEquals(0, model.getElapsedMillis(8000));
+    }
+}
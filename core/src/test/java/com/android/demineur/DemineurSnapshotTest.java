@@ -0,0 +1,186 @@
+package com.android.demineur;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DemineurSnapshotTest {
+
+    private static DemineurModel play(int width, int height, int mines, long seed, int moves) {
+        DemineurModel model = new DemineurModel(width, height, mines, seed);
+        Random r = new Random(seed);
+        model.move(height / 2, width / 2);
+        for(int k = 0; k < moves && !model.isGameOver(); k++) {
+            model.setFlagMode(r.nextInt(4) == 0);
+            model.move(r.nextInt(height), r.nextInt(width));
+        }
+        model.setFlagMode(false);
+        return model;
+    }
+
+    private static byte[] save(DemineurModel model) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DemineurSnapshot.save(model, out);
+        return out.toByteArray();
+    }
+
+    private static DemineurModel load(byte bytes[]) throws IOException {
+        return DemineurSnapshot.load(new ByteArrayInputStream(bytes));
+    }
+
+    private static void assertSameGame(DemineurModel expected, DemineurModel actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getMines(), actual.getMines());
+        assertEquals(expected.isLost(), actual.isLost());
+        assertEquals(expected.isWon(), actual.isWon());
+        assertEquals(expected.getCountMarkedCells(), actual.getCountMarkedCells());
+        for(int i = 0; i < expected.getHeight(); i++) {
+            for(int j = 0; j < expected.getWidth(); j++) {
+                assertEquals(expected.getCell(i, j), actual.getCell(i, j));
+                assertEquals(expected.isDiscovered(i, j), actual.isDiscovered(i, j));
+                assertEquals(expected.isMarked(i, j), actual.isMarked(i, j));
+            }
+        }
+    }
+
+    @Test
+    public void currentVersionRoundTrip() throws Exception {
+        DemineurModel model = play(30, 16, 99, 1, 40);
+        model.startClock(0);
+        model.stopClock(12345);
+        DemineurModel loaded = load(save(model));
+        assertSameGame(model, loaded);
+        assertEquals(12345, loaded.getElapsedMillis(0));
+        assertEquals(model.getLeftClicks(), loaded.getLeftClicks());
+        assertEquals(model.getRightClicks(), loaded.getRightClicks());
+        assertEquals(model.getThreeBV(), loaded.getThreeBV());
+        assertEquals(8 * 30 + 15, loaded.getOrigin());
+        assertEquals(0, loaded.getSymmetry());
+    }
+
+    @Test
+    public void dealtGridKeepsWhereItComesFrom() throws Exception {
+        MineLayout layout = MineLayout.create(16, 16, 40, 6, 0, false);
+        // a first move on a mine of the layout, so another symmetry is applied
+        DemineurModel model = new DemineurModel(layout);
+        model.move(layout.getMine(0) / 16, layout.getMine(0) % 16);
+        assertNotEquals(0, model.getSymmetry());
+        DemineurModel loaded = load(save(model));
+        assertEquals(0, loaded.getOrigin());
+        assertEquals(model.getSymmetry(), loaded.getSymmetry());
+        // the seed, the origin and the symmetry give back the grid
+        MineLayout rebuilt = MineLayout.create(16, 16, 40, loaded.getSeed(), loaded.getOrigin(), false);
+        for(int k = 0; k < rebuilt.getMines(); k++) {
+            int cell = rebuilt.transform(rebuilt.getMine(k), loaded.getSymmetry());
+            assertEquals(DemineurModel.Cell.MINE, loaded.getCell(cell / 16, cell % 16));
+        }
+    }
+
+    @Test
+    public void chunkedGridRoundTrip() throws Exception {
+        DemineurModel model = play(700, 500, 70000, 2, 20);
+        assertTrue(model.isChunked());
+        byte bytes[] = save(model);
+        assertTrue(bytes.length < 700 * 500 / 4);
+        assertSameGame(model, load(bytes));
+    }
+
+    @Test
+    public void notStartedGameRoundTrip() throws Exception {
+        DemineurModel model = new DemineurModel(9, 9, 10, 3);
+        DemineurModel loaded = load(save(model));
+        assertFalse(loaded.isGenerated());
+        loaded.move(4, 4);
+        model.move(4, 4);
+        assertSameGame(model, loaded);
+    }
+
+    /**
+     * Writes a snapshot of an older version, whose header lacks the fields added since
+     */
+    private static byte[] saveOldVersion(DemineurModel model, int version, int elapsedSeconds) throws IOException {
+        byte current[] = save(model);
+        byte cells[] = Arrays.copyOfRange(current, current.length - model.getWidth() * model.getHeight(), current.length);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x444D4E52);
+        out.writeByte(version);
+        out.writeInt(model.getWidth());
+        out.writeInt(model.getHeight());
+        out.writeInt(model.getMines());
+        out.writeLong(model.getSeed());
+        out.writeShort(1 | (model.isLost() ? 1 << 2 : 0) | (model.isWon() ? 1 << 3 : 0));
+        if(version == 1)
+            out.writeInt(elapsedSeconds);
+        else
+            out.writeLong(elapsedSeconds * 1000L);
+        int discovered = 0;
+        for(int i = 0; i < model.getHeight(); i++) {
+            for(int j = 0; j < model.getWidth(); j++)
+                discovered += model.isDiscovered(i, j) ? 1 : 0;
+        }
+        out.writeInt(discovered);
+        out.writeInt(model.getCountMarkedCells());
+        if(version >= 3) {
+            out.writeInt(model.getLeftClicks());
+            out.writeInt(model.getRightClicks());
+            out.writeInt(model.getChordClicks());
+        }
+        out.write(cells);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void olderVersionsAreRead() throws Exception {
+        DemineurModel model = play(16, 16, 40, 4, 20);
+        for(int version = 1; version < DemineurSnapshot.VERSION; version++) {
+            DemineurModel loaded = load(saveOldVersion(model, version, 42));
+            assertSameGame(model, loaded);
+            assertEquals(42000, loaded.getElapsedMillis(0));
+            assertEquals(version >= 3 ? model.getLeftClicks() : 0, loaded.getLeftClicks());
+            assertEquals(model.getThreeBV(), loaded.getThreeBV());
+            assertEquals(-1, loaded.getOrigin());
+        }
+    }
+
+    @Test
+    public void minesLeaveOneSafeCell() throws Exception {
+        DemineurModel model = new DemineurModel(9, 9, 100, 8);
+        assertEquals(80, model.getMines());
+        model.move(4, 4);
+        assertTrue(model.isWon());
+        DemineurModel chunked = new DemineurModel(700, 500, Integer.MAX_VALUE, 8);
+        assertTrue(chunked.isChunked());
+        assertEquals(700 * 500 - 1, chunked.getMines());
+    }
+
+    @Test(expected = IOException.class)
+    public void gridWithoutSafeCellIsRejected() throws Exception {
+        byte bytes[] = save(new DemineurModel(9, 9, 10, 5));
+        // the number of mines follows the magic number, the version, the width and the height
+        bytes[4 + 1 + 4 + 4 + 3] = 81;
+        load(bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersionIsRejected() throws Exception {
+        byte bytes[] = save(new DemineurModel(9, 9, 10, 5));
+        bytes[4] = (byte) (DemineurSnapshot.VERSION + 1);
+        load(bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws Exception {
+        byte bytes[] = save(new DemineurModel(9, 9, 10, 5));
+        bytes[0] = 'X';
+        load(bytes);
+    }
+}
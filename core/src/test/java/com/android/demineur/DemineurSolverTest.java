@@ -0,0 +1,148 @@
+package com.android.demineur;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class DemineurSolverTest {
+
+    private static Set<Integer> getSafe(DemineurSolver solver) {
+        Set<Integer> cells = new TreeSet<>();
+        for(int k = 0; k < solver.getSafeCount(); k++)
+            cells.add(solver.getSafe(k));
+        return cells;
+    }
+
+    private static Set<Integer> getMines(DemineurSolver solver) {
+        Set<Integer> cells = new TreeSet<>();
+        for(int k = 0; k < solver.getMineCount(); k++)
+            cells.add(solver.getMine(k));
+        return cells;
+    }
+
+    /**
+     * Checks the rule of a single number: when its remaining mines are 0 or all its hidden neighbours,
+     * those neighbours must have been found
+     */
+    private static void assertSingleNumbersSolved(DemineurModel model, Set<Integer> safe, Set<Integer> mines) {
+        int width = model.getWidth();
+        int height = model.getHeight();
+        for(int i = 0; i < height; i++) {
+            for(int j = 0; j < width; j++) {
+                if(!model.isDiscovered(i, j) || model.getCell(i, j) == DemineurModel.Cell.MINE)
+                    continue;
+                int remaining = model.getCell(i, j).ordinal() - DemineurModel.Cell.EMPTY.ordinal();
+                int unknown = 0;
+                for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+                    for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++) {
+                        if(model.isMarked(m, n))
+                            remaining--;
+                        else if(!model.isDiscovered(m, n))
+                            unknown++;
+                    }
+                }
+                if(unknown == 0 || (remaining != 0 && remaining != unknown))
+                    continue;
+                for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+                    for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++) {
+                        if(!model.isMarked(m, n) && !model.isDiscovered(m, n))
+                            assertTrue((remaining == 0 ? safe : mines).contains(m * width + n));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void deductionsAreRightAndMatchAFullScan() throws Exception {
+        int grids[][] = {{9, 9, 10}, {16, 16, 40}, {30, 16, 99}};
+        Random r = new Random(1);
+        int deductions = 0;
+        for(int grid[] : grids) {
+            for(int game = 0; game < 100; game++) {
+                DemineurModel model = new DemineurModel(grid[0], grid[1], grid[2], r.nextLong());
+                DemineurSolver solver = new DemineurSolver(model);
+                solver.update(model.move(grid[1] / 2, grid[0] / 2));
+                while(!model.isLost() && !model.isWon()) {
+                    boolean found = solver.solve();
+                    Set<Integer> safe = getSafe(solver);
+                    Set<Integer> mines = getMines(solver);
+                    DemineurSolver scan = new DemineurSolver(model);
+                    scan.solve();
+                    assertEquals(getSafe(scan), safe);
+                    assertEquals(getMines(scan), mines);
+                    assertSingleNumbersSolved(model, safe, mines);
+                    for(int cell : safe)
+                        assertNotEquals(DemineurModel.Cell.MINE, model.getCell(cell / grid[0], cell % grid[0]));
+                    for(int cell : mines)
+                        assertEquals(DemineurModel.Cell.MINE, model.getCell(cell / grid[0], cell % grid[0]));
+                    deductions += safe.size() + mines.size();
+                    if(found) {
+                        model.setFlagMode(true);
+                        for(int cell : mines)
+                            solver.update(model.move(cell / grid[0], cell % grid[0]));
+                        model.setFlagMode(false);
+                        for(int cell : safe) {
+                            if(!model.isDiscovered(cell / grid[0], cell % grid[0]))
+                                solver.update(model.move(cell / grid[0], cell % grid[0]));
+                        }
+                    }
+                    else {
+                        int cell = r.nextInt(grid[0] * grid[1]);
+                        if(!model.isDiscovered(cell / grid[0], cell % grid[0]) && !model.isMarked(cell / grid[0], cell % grid[0]))
+                            solver.update(model.move(cell / grid[0], cell % grid[0]));
+                    }
+                }
+            }
+        }
+        assertTrue(deductions > 1000);
+    }
+
+    @Test
+    public void pairsOfNumbersAreUsed() throws Exception {
+        Random r = new Random(2);
+        int pairs = 0;
+        for(int game = 0; game < 200 && pairs == 0; game++) {
+            DemineurModel model = new DemineurModel(16, 16, 40, r.nextLong());
+            DemineurSolver solver = new DemineurSolver(model);
+            solver.update(model.move(8, 8));
+            if(!solver.solve())
+                continue;
+            pairs += solver.getSafeCount() + solver.getMineCount() - countSingleDeductions(model);
+        }
+        assertTrue(pairs > 0);
+    }
+
+    /**
+     *
+     * @return the number of cells a single number proves safe or mine
+     */
+    private static int countSingleDeductions(DemineurModel model) {
+        int width = model.getWidth();
+        int height = model.getHeight();
+        Set<Integer> found = new TreeSet<>();
+        for(int i = 0; i < height; i++) {
+            for(int j = 0; j < width; j++) {
+                if(!model.isDiscovered(i, j))
+                    continue;
+                int remaining = model.getCell(i, j).ordinal() - DemineurModel.Cell.EMPTY.ordinal();
+                Set<Integer> unknown = new TreeSet<>();
+                for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+                    for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++) {
+                        if(model.isMarked(m, n))
+                            remaining--;
+                        else if(!model.isDiscovered(m, n))
+                            unknown.add(m * width + n);
+                    }
+                }
+                if(remaining == 0 || remaining == unknown.size())
+                    found.addAll(unknown);
+            }
+        }
+        return found.size();
+    }
+}
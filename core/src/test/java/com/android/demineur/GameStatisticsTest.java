@@ -0,0 +1,214 @@
+package com.android.demineur;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GameStatisticsTest {
+
+    /**
+     * Builds a game whose grid is drawn with '*' for the mines, through a snapshot whose cells are replaced
+     * @param rows : the rows of the grid
+     * @return the game, generated and not started
+     */
+    private static DemineurModel board(String... rows) throws IOException {
+        int height = rows.length;
+        int width = rows[0].length();
+        int mines = 0;
+        for(String row : rows) {
+            for(int j = 0; j < width; j++)
+                mines += row.charAt(j) == '*' ? 1 : 0;
+        }
+        DemineurModel model = new DemineurModel(width, height, mines, 1);
+        model.initCells(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DemineurSnapshot.save(model, out);
+        byte bytes[] = out.toByteArray();
+        int start = bytes.length - width * height;
+        for(int i = 0; i < height; i++) {
+            for(int j = 0; j < width; j++) {
+                int value = rows[i].charAt(j) == '*' ? DemineurModel.MINE_BIT : 0;
+                for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+                    for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++)
+                        value += (m != i || n != j) && rows[m].charAt(n) == '*' ? 1 : 0;
+                }
+                bytes[start + i * width + j] = (byte) value;
+            }
+        }
+        return DemineurSnapshot.load(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Counts the 3BV by opening every opening from a queue, then counting the numbers none of them reveals
+     */
+    private static int countThreeBV(DemineurModel model) {
+        int width = model.getWidth();
+        int height = model.getHeight();
+        boolean revealed[] = new boolean[width * height];
+        int queue[] = new int[width * height];
+        int count = 0;
+        for(int cell = 0; cell < width * height; cell++) {
+            if(revealed[cell] || model.getCell(cell / width, cell % width) != DemineurModel.Cell.EMPTY)
+                continue;
+            count++;
+            int size = 0;
+            queue[size++] = cell;
+            revealed[cell] = true;
+            for(int head = 0; head < size; head++) {
+                int i = queue[head] / width;
+                int j = queue[head] % width;
+                for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+                    for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++) {
+                        if(revealed[m * width + n])
+                            continue;
+                        revealed[m * width + n] = true;
+                        if(model.getCell(m, n) == DemineurModel.Cell.EMPTY)
+                            queue[size++] = m * width + n;
+                    }
+                }
+            }
+        }
+        for(int cell = 0; cell < width * height; cell++) {
+            if(!revealed[cell] && model.getCell(cell / width, cell % width) != DemineurModel.Cell.MINE)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Plays random moves until the game is over
+     */
+    private static DemineurModel finish(DemineurModel model, Random r) {
+        while(!model.isLost() && !model.isWon()) {
+            model.setFlagMode(r.nextInt(6) == 0);
+            model.move(r.nextInt(model.getHeight()), r.nextInt(model.getWidth()));
+        }
+        model.setFlagMode(false);
+        return model;
+    }
+
+    @Test
+    public void threeBVOfKnownBoards() throws Exception {
+        // one opening reveals every number
+        assertEquals(1, board("*....", ".....", ".....", ".....", "....*").getThreeBV());
+        // no opening, every safe cell is a click
+        assertEquals(5, board("*.*", "...", "*.*").getThreeBV());
+        // two openings apart, the numbers between them are revealed
+        assertEquals(2, board("..*..", "..*..", "..*..").getThreeBV());
+        // an opening, and the numbers of the right column which it doesn't reach
+        assertEquals(1 + 3, board("...*.", "...*.", "...*.").getThreeBV());
+    }
+
+    @Test
+    public void threeBVMatchesTheOpeningsCount() throws Exception {
+        Random r = new Random(3);
+        int grids[][] = {{9, 9, 10}, {16, 16, 40}, {30, 16, 99}, {50, 40, 300}, {20, 20, 150}};
+        for(int game = 0; game < 200; game++) {
+            int grid[] = grids[game % grids.length];
+            DemineurModel model = new DemineurModel(grid[0], grid[1], grid[2], r.nextLong());
+            model.move(r.nextInt(grid[1]), r.nextInt(grid[0]));
+            assertEquals(countThreeBV(model), model.getThreeBV());
+        }
+    }
+
+    @Test
+    public void recordIsReadBack() throws Exception {
+        Random r = new Random(4);
+        for(int game = 0; game < 20; game++) {
+            DemineurModel model = finish(new DemineurModel(16, 16, 40, r.nextLong()), r);
+            GameRecord record = GameRecord.of(model, r.nextInt(1000000), 1700000000000L + game);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            GameStatistics.append(record, out);
+            assertEquals(GameRecord.SIZE, out.size());
+            GameRecord read = GameRecord.readFrom(new DataInputStream(new ByteArrayInputStream(out.toByteArray())));
+            assertEquals(16, read.getWidth());
+            assertEquals(16, read.getHeight());
+            assertEquals(40, read.getMines());
+            assertEquals(model.getSeed(), read.getSeed());
+            assertEquals(model.getOrigin(), read.getOrigin());
+            assertEquals(model.getSymmetry(), read.getSymmetry());
+            assertEquals(record.getFinishedAt(), read.getFinishedAt());
+            assertEquals(record.getDurationMillis(), read.getDurationMillis());
+            assertEquals(model.getLeftClicks(), read.getLeftClicks());
+            assertEquals(model.getRightClicks(), read.getRightClicks());
+            assertEquals(model.getChordClicks(), read.getChordClicks());
+            assertEquals(model.getThreeBV(), read.getThreeBV());
+            assertEquals(model.isWon(), read.isWon());
+            assertEquals(model.isSafeJokerUsed(), read.isSafeJokerUsed());
+            assertEquals(model.isBurstJokerUsed(), read.isBurstJokerUsed());
+        }
+    }
+
+    @Test
+    public void aggregatesFollowTheGames() throws Exception {
+        GameStatistics statistics = new GameStatistics();
+        long durations[] = {12000, 3500, 7200, 59999};
+        for(int k = 0; k < durations.length; k++) {
+            // every cell but one is a mine, the first move wins
+            DemineurModel won = new DemineurModel(9, 9, 80, k);
+            won.move(4, 4);
+            statistics.add(GameRecord.of(won, durations[k], 0));
+        }
+        DemineurModel lost = new DemineurModel(9, 9, 10, 9);
+        lost.move(4, 4);
+        int mine = 0;
+        while(lost.getCell(mine / 9, mine % 9) != DemineurModel.Cell.MINE)
+            mine++;
+        lost.move(mine / 9, mine % 9);
+        assertTrue(lost.isLost());
+        statistics.add(GameRecord.of(lost, 1000, 0));
+        assertEquals(5, statistics.getGames());
+        assertEquals(4, statistics.getWins());
+        assertEquals(4, statistics.getGames(9, 9, 80));
+        assertEquals(1, statistics.getWinRate(9, 9, 80), 1e-9);
+        assertEquals(1, statistics.getGames(9, 9, 10));
+        assertEquals(0, statistics.getWinRate(9, 9, 10), 1e-9);
+        assertEquals((12000 + 3500 + 7200 + 59999) / 4.0, statistics.getMeanTime(9, 9, 80), 1e-9);
+        // half of the winning times are within 7.2s, in the bucket of the 8th second
+        assertEquals(8000, statistics.getPercentileTime(9, 9, 80, 0.5));
+        assertEquals(60000, statistics.getPercentileTime(9, 9, 80, 1));
+        assertEquals(0, statistics.getGames(16, 16, 40));
+        assertEquals(0, statistics.getMeanTime(16, 16, 40), 0);
+    }
+
+    @Test
+    public void logRebuildsTheStatistics() throws Exception {
+        Random r = new Random(5);
+        GameStatistics statistics = new GameStatistics();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        int grids[][] = {{9, 9, 10}, {16, 16, 40}};
+        for(int game = 0; game < 30; game++) {
+            int grid[] = grids[game % 2];
+            DemineurModel model = finish(new DemineurModel(grid[0], grid[1], grid[2], r.nextLong()), r);
+            GameRecord record = GameRecord.of(model, 1000 + r.nextInt(100000), game);
+            statistics.add(record);
+            GameStatistics.append(record, log);
+        }
+        // a last record cut while being written
+        byte cut[] = Arrays.copyOf(log.toByteArray(), log.size() + 10);
+        System.arraycopy(log.toByteArray(), 0, cut, log.size(), 10);
+        for(GameStatistics read : new GameStatistics[] {GameStatistics.rebuild(new ByteArrayInputStream(cut)), copy(statistics)}) {
+            assertEquals(statistics.getGames(), read.getGames());
+            assertEquals(statistics.getWins(), read.getWins());
+            for(int grid[] : grids) {
+                assertEquals(statistics.getWins(grid[0], grid[1], grid[2]), read.getWins(grid[0], grid[1], grid[2]));
+                assertEquals(statistics.getMeanTime(grid[0], grid[1], grid[2]), read.getMeanTime(grid[0], grid[1], grid[2]), 1e-6);
+                assertEquals(statistics.getMeanEfficiency(grid[0], grid[1], grid[2]), read.getMeanEfficiency(grid[0], grid[1], grid[2]), 1e-9);
+                assertEquals(statistics.getPercentileTime(grid[0], grid[1], grid[2], 0.9), read.getPercentileTime(grid[0], grid[1], grid[2], 0.9));
+            }
+        }
+    }
+
+    private static GameStatistics copy(GameStatistics statistics) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        statistics.save(out);
+        return GameStatistics.load(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
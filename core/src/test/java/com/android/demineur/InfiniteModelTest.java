@@ -0,0 +1,188 @@
+package com.android.demineur;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class InfiniteModelTest {
+
+    /**
+     * Region read by the tests, over several chunks on each side of (0, 0)
+     */
+    private static final int LOW = -2 * InfiniteModel.CHUNK_SIZE - 10;
+    private static final int HIGH = 2 * InfiniteModel.CHUNK_SIZE + 10;
+    private static final int SIDE = HIGH - LOW;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InfiniteModel create(long seed, int maxChunks) throws Exception {
+        return new InfiniteModel(seed, 700, new ChunkStore(folder.newFile()), maxChunks);
+    }
+
+    /**
+     * Reads the cells of the region, row by row or column by column from the end
+     * @param model : the game
+     * @param reversed : true to read the columns from the last cell
+     * @return the cells of the region
+     */
+    private static DemineurModel.Cell[] readAll(InfiniteModel model, boolean reversed) {
+        DemineurModel.Cell cells[] = new DemineurModel.Cell[SIDE * SIDE];
+        for(int k = 0; k < cells.length; k++) {
+            int i = reversed ? HIGH - 1 - k % SIDE : LOW + k / SIDE;
+            int j = reversed ? HIGH - 1 - k / SIDE : LOW + k % SIDE;
+            cells[(i - LOW) * SIDE + j - LOW] = model.getCell(i, j);
+        }
+        return cells;
+    }
+
+    /**
+     * Plays moves in the region, skipping the mines so the game isn't lost
+     * @param model : the game
+     * @param seed : seed of the moves
+     * @param count : the number of moves
+     */
+    private static void play(InfiniteModel model, long seed, int count) {
+        Random r = new Random(seed);
+        model.move(0, 0);
+        for(int move = 0; move < count; move++) {
+            int i = LOW + r.nextInt(SIDE);
+            int j = LOW + r.nextInt(SIDE);
+            boolean flag = r.nextInt(5) == 0;
+            if(!flag && model.getCell(i, j) == DemineurModel.Cell.MINE)
+                continue;
+            model.setFlagMode(flag);
+            model.move(i, j);
+        }
+        model.setFlagMode(false);
+    }
+
+    private static void assertSameGame(InfiniteModel expected, InfiniteModel actual) {
+        assertEquals(expected.getCountDiscoveredCells(), actual.getCountDiscoveredCells());
+        assertEquals(expected.getCountMarkedCells(), actual.getCountMarkedCells());
+        assertEquals(expected.isLost(), actual.isLost());
+        for(int i = LOW; i < HIGH; i++) {
+            for(int j = LOW; j < HIGH; j++) {
+                assertEquals("(" + i + ", " + j + ")", expected.isDiscovered(i, j), actual.isDiscovered(i, j));
+                assertEquals("(" + i + ", " + j + ")", expected.isMarked(i, j), actual.isMarked(i, j));
+            }
+        }
+    }
+
+    @Test
+    public void numbersCountTheMinesAcrossChunkEdges() throws Exception {
+        InfiniteModel model = create(3, 64);
+        DemineurModel.Cell cells[] = readAll(model, false);
+        for(int i = LOW + 1; i < HIGH - 1; i++) {
+            for(int j = LOW + 1; j < HIGH - 1; j++) {
+                if(cells[(i - LOW) * SIDE + j - LOW] == DemineurModel.Cell.MINE) {
+                    assertFalse("(" + i + ", " + j + ")", Math.abs(i) <= 1 && Math.abs(j) <= 1);
+                    continue;
+                }
+                int count = 0;
+                for(int m = i - 1; m <= i + 1; m++) {
+                    for(int n = j - 1; n <= j + 1; n++) {
+                        if(cells[(m - LOW) * SIDE + n - LOW] == DemineurModel.Cell.MINE)
+                            count++;
+                    }
+                }
+                assertEquals("(" + i + ", " + j + ")", count, cells[(i - LOW) * SIDE + j - LOW].ordinal() - DemineurModel.Cell.EMPTY.ordinal());
+            }
+        }
+        // every chunk holds the same number of mines
+        for(int top = -2 * InfiniteModel.CHUNK_SIZE; top < 2 * InfiniteModel.CHUNK_SIZE; top += InfiniteModel.CHUNK_SIZE) {
+            for(int left = -2 * InfiniteModel.CHUNK_SIZE; left < 2 * InfiniteModel.CHUNK_SIZE; left += InfiniteModel.CHUNK_SIZE) {
+                int mines = 0;
+                for(int i = top; i < top + InfiniteModel.CHUNK_SIZE; i++) {
+                    for(int j = left; j < left + InfiniteModel.CHUNK_SIZE; j++) {
+                        if(cells[(i - LOW) * SIDE + j - LOW] == DemineurModel.Cell.MINE)
+                            mines++;
+                    }
+                }
+                assertEquals(700, mines);
+            }
+        }
+    }
+
+    @Test
+    public void chunksDontDependOnTheReadOrder() throws Exception {
+        // 9 chunks in memory, far fewer than the region, so the chunks are dropped and computed again
+        InfiniteModel first = create(11, 9);
+        InfiniteModel second = create(11, 9);
+        assertArrayEquals(readAll(first, false), readAll(second, true));
+        assertTrue(first.getLoadedChunks() <= 9);
+    }
+
+    @Test
+    public void droppedChunksComeBackFromTheStore() throws Exception {
+        InfiniteModel small = create(5, 9);
+        InfiniteModel large = create(5, 1024);
+        play(small, 8, 3000);
+        play(large, 8, 3000);
+        assertTrue(small.getLoadedChunks() <= 9);
+        assertTrue(large.getCountDiscoveredCells() > 1000);
+        assertTrue(large.getCountMarkedCells() > 0);
+        assertSameGame(large, small);
+    }
+
+    @Test
+    public void flushedGameGoesOnFromTheStore() throws Exception {
+        File path = folder.newFile();
+        ChunkStore store = new ChunkStore(path);
+        InfiniteModel saved = new InfiniteModel(21, 700, store, 16);
+        play(saved, 2, 2000);
+        saved.flush();
+        store.close();
+        ChunkStore reopened = new ChunkStore(path);
+        InfiniteModel loaded = new InfiniteModel(21, 700, reopened, 16);
+        InfiniteModel reference = create(21, 1024);
+        play(reference, 2, 2000);
+        assertSameGame(reference, loaded);
+        // both go on with the same moves
+        play(loaded, 3, 500);
+        play(reference, 3, 500);
+        assertSameGame(reference, loaded);
+        reopened.close();
+    }
+
+    @Test
+    public void chordOnAMineOpensTheOtherNeighbours() throws Exception {
+        InfiniteModel model = create(1, 64);
+        model.move(0, 0);
+        // a discovered number next to a mine, with a flag on a safe neighbour instead
+        for(int i = LOW; i < HIGH; i++) {
+            for(int j = LOW; j < HIGH; j++) {
+                DemineurModel.Cell cell = model.getCell(i, j);
+                if(!model.isDiscovered(i, j) || cell != DemineurModel.Cell.ONE)
+                    continue;
+                int safe = -1;
+                for(int k = 0; k < 9; k++) {
+                    int m = i + k / 3 - 1;
+                    int n = j + k % 3 - 1;
+                    if(k != 4 && !model.isDiscovered(m, n) && model.getCell(m, n) != DemineurModel.Cell.MINE)
+                        safe = k;
+                }
+                if(safe < 0)
+                    continue;
+                model.setFlagMode(true);
+                model.move(i + safe / 3 - 1, j + safe % 3 - 1);
+                model.setFlagMode(false);
+                model.move(i, j);
+                assertTrue(model.isLost());
+                // like DemineurModel, every unmarked neighbour is discovered, the mine included
+                for(int k = 0; k < 9; k++) {
+                    int m = i + k / 3 - 1;
+                    int n = j + k % 3 - 1;
+                    assertTrue(model.isMarked(m, n) || model.isDiscovered(m, n));
+                }
+                return;
+            }
+        }
+        fail("No number to chord on");
+    }
+}
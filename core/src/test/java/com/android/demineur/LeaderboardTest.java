@@ -0,0 +1,102 @@
+package com.android.demineur;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LeaderboardTest {
+
+    private static Leaderboard copy(Leaderboard leaderboard) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        leaderboard.save(out);
+        return Leaderboard.load(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void timesAreKeptFastestFirst() throws Exception {
+        Leaderboard leaderboard = new Leaderboard(5);
+        Random r = new Random(1);
+        int times[] = new int[200];
+        for(int k = 0; k < times.length; k++) {
+            times[k] = r.nextInt(100000);
+            int rank = leaderboard.add(30, 16, 99, times[k]);
+            int sorted[] = Arrays.copyOf(times, k + 1);
+            Arrays.sort(sorted);
+            // the rank is the one of the time among the times so far, after the equal ones
+            int expected = Arrays.binarySearch(sorted, times[k]);
+            while(expected + 1 <= k && sorted[expected + 1] == times[k])
+                expected++;
+            assertEquals(expected < 5 ? expected : -1, rank);
+            assertEquals(Math.min(k + 1, 5), leaderboard.getCount(30, 16, 99));
+            for(int rankKept = 0; rankKept < leaderboard.getCount(30, 16, 99); rankKept++)
+                assertEquals(sorted[rankKept], leaderboard.getTime(30, 16, 99, rankKept));
+        }
+    }
+
+    @Test
+    public void equalTimeRanksAfterTheOlderOne() throws Exception {
+        Leaderboard leaderboard = new Leaderboard(3);
+        assertEquals(0, leaderboard.add(9, 9, 10, 5000));
+        assertEquals(1, leaderboard.add(9, 9, 10, 5000));
+        assertEquals(0, leaderboard.add(9, 9, 10, 4000));
+        // the board is full and the new time equals the slowest one
+        assertEquals(-1, leaderboard.add(9, 9, 10, 5000));
+        assertEquals(3, leaderboard.getCount(9, 9, 10));
+    }
+
+    @Test
+    public void configurationsAreKeptApart() throws Exception {
+        Leaderboard leaderboard = new Leaderboard(3);
+        leaderboard.add(9, 9, 10, 3000);
+        leaderboard.add(16, 16, 40, 60000);
+        leaderboard.add(16, 9, 10, 1000);
+        assertEquals(1, leaderboard.getCount(9, 9, 10));
+        assertEquals(3000, leaderboard.getTime(9, 9, 10, 0));
+        assertEquals(60000, leaderboard.getTime(16, 16, 40, 0));
+        assertEquals(1000, leaderboard.getTime(16, 9, 10, 0));
+        assertEquals(0, leaderboard.getCount(9, 9, 11));
+        // out of range times are clamped
+        assertEquals(0, leaderboard.add(30, 16, 99, -5));
+        assertEquals(0, leaderboard.getTime(30, 16, 99, 0));
+        leaderboard.add(30, 16, 99, Long.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, leaderboard.getTime(30, 16, 99, 1));
+    }
+
+    @Test
+    public void savedLeaderboardIsReadBack() throws Exception {
+        Leaderboard leaderboard = new Leaderboard(4);
+        Random r = new Random(2);
+        int grids[][] = {{9, 9, 10}, {16, 16, 40}, {30, 16, 99}, {50, 50, 500}};
+        for(int k = 0; k < 30; k++) {
+            int grid[] = grids[r.nextInt(grids.length)];
+            leaderboard.add(grid[0], grid[1], grid[2], r.nextInt(1000000));
+        }
+        Leaderboard loaded = copy(leaderboard);
+        assertEquals(4, loaded.getCapacity());
+        for(int grid[] : grids) {
+            assertEquals(leaderboard.getCount(grid[0], grid[1], grid[2]), loaded.getCount(grid[0], grid[1], grid[2]));
+            for(int rank = 0; rank < leaderboard.getCount(grid[0], grid[1], grid[2]); rank++)
+                assertEquals(leaderboard.getTime(grid[0], grid[1], grid[2], rank), loaded.getTime(grid[0], grid[1], grid[2], rank));
+        }
+        // the loaded board keeps ranking the new times
+        assertEquals(0, loaded.add(9, 9, 10, -1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void missingRankIsRejected() throws Exception {
+        Leaderboard leaderboard = new Leaderboard(3);
+        leaderboard.add(9, 9, 10, 3000);
+        leaderboard.getTime(9, 9, 10, 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws Exception {
+        Leaderboard.load(new ByteArrayInputStream(new byte[] {'D', 'M', 'N', 'R', 1, 0, 3, 0, 0, 0, 0}));
+    }
+}
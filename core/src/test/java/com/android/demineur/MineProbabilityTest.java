@@ -0,0 +1,185 @@
+package com.android.demineur;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class MineProbabilityTest {
+
+    /**
+     * Largest number of mine placements enumerated by the brute force
+     */
+    private static final double MAX_PLACEMENTS = 300000;
+
+    /**
+     * Mine probabilities found by trying every placement of the remaining mines over the hidden cells
+     */
+    private static final class BruteForce {
+
+        private final DemineurModel model;
+
+        private final List<Integer> hidden = new ArrayList<>();
+
+        private final boolean mine[];
+
+        private final double counts[];
+
+        private double total;
+
+        BruteForce(DemineurModel model) {
+            this.model = model;
+            int cells = model.getWidth() * model.getHeight();
+            for(int cell = 0; cell < cells; cell++) {
+                if(!model.isDiscovered(cell / model.getWidth(), cell % model.getWidth()) && !model.isMarked(cell / model.getWidth(), cell % model.getWidth()))
+                    hidden.add(cell);
+            }
+            mine = new boolean[cells];
+            counts = new double[cells];
+        }
+
+        /**
+         *
+         * @return the number of placements of the remaining mines over the hidden cells
+         */
+        double countPlacements() {
+            int remaining = model.getRemainingCountMines();
+            double placements = 1;
+            for(int k = 0; k < remaining; k++)
+                placements = placements * (hidden.size() - k) / (k + 1);
+            return placements;
+        }
+
+        void run() {
+            place(0, model.getRemainingCountMines());
+        }
+
+        private void place(int from, int left) {
+            if(left > hidden.size() - from)
+                return;
+            if(from == hidden.size()) {
+                if(!matches())
+                    return;
+                total++;
+                for(int cell : hidden) {
+                    if(mine[cell])
+                        counts[cell]++;
+                }
+                return;
+            }
+            int cell = hidden.get(from);
+            if(left > 0) {
+                mine[cell] = true;
+                place(from + 1, left - 1);
+                mine[cell] = false;
+            }
+            place(from + 1, left);
+        }
+
+        private boolean matches() {
+            int width = model.getWidth();
+            int height = model.getHeight();
+            for(int i = 0; i < height; i++) {
+                for(int j = 0; j < width; j++) {
+                    if(!model.isDiscovered(i, j))
+                        continue;
+                    int count = 0;
+                    for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, height - 1); m++) {
+                        for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, width - 1); n++) {
+                            if(model.isMarked(m, n) || mine[m * width + n])
+                                count++;
+                        }
+                    }
+                    if(count != model.getCell(i, j).ordinal() - DemineurModel.Cell.EMPTY.ordinal())
+                        return false;
+                }
+            }
+            return true;
+        }
+
+        double getProbability(int cell) {
+            return counts[cell] / total;
+        }
+    }
+
+    @Test
+    public void probabilitiesMatchBruteForce() throws Exception {
+        int grids[][] = {{6, 6, 7}, {8, 8, 10}, {9, 9, 10}};
+        Random r = new Random(1);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        int checked = 0;
+        for(int grid[] : grids) {
+            for(int game = 0; game < 60; game++) {
+                DemineurModel model = new DemineurModel(grid[0], grid[1], grid[2], r.nextLong());
+                model.move(r.nextInt(grid[1]), r.nextInt(grid[0]));
+                // discover safe cells and flag mines, as a player would, until the placements can be enumerated
+                BruteForce expected = new BruteForce(model);
+                while(!model.isWon() && expected.countPlacements() > MAX_PLACEMENTS) {
+                    int cell = r.nextInt(grid[0] * grid[1]);
+                    int i = cell / grid[0];
+                    int j = cell % grid[0];
+                    if(model.isDiscovered(i, j) || model.isMarked(i, j))
+                        continue;
+                    model.setFlagMode(model.getCell(i, j) == DemineurModel.Cell.MINE);
+                    model.move(i, j);
+                    model.setFlagMode(false);
+                    expected = new BruteForce(model);
+                }
+                if(model.isWon())
+                    continue;
+                expected.run();
+                MineProbability probability = new MineProbability(model, pool);
+                assertTrue(probability.compute());
+                double lowest = 1;
+                for(int cell = 0; cell < grid[0] * grid[1]; cell++) {
+                    int i = cell / grid[0];
+                    int j = cell % grid[0];
+                    double actual = probability.getProbability(i, j);
+                    if(model.isMarked(i, j))
+                        assertEquals(1, actual, 0);
+                    else if(model.isDiscovered(i, j))
+                        assertEquals(0, actual, 0);
+                    else {
+                        assertEquals("(" + i + ", " + j + ")", expected.getProbability(cell), actual, 1e-9);
+                        lowest = Math.min(lowest, actual);
+                    }
+                }
+                int safest = probability.getSafestCell();
+                assertEquals(lowest, probability.getProbability(safest / grid[0], safest % grid[0]), 0);
+                checked++;
+            }
+        }
+        pool.shutdown();
+        assertTrue(checked > 50);
+    }
+
+    @Test
+    public void contradictingFlagsAreReported() throws Exception {
+        DemineurModel model = new DemineurModel(9, 9, 10, 2);
+        model.move(4, 4);
+        // flag every hidden neighbour of a discovered number, more than it allows
+        model.setFlagMode(true);
+        for(int cell = 0; cell < 81; cell++) {
+            int i = cell / 9;
+            int j = cell % 9;
+            if(!model.isDiscovered(i, j) || model.getCell(i, j) == DemineurModel.Cell.EMPTY)
+                continue;
+            int flags = 0;
+            for(int m = Math.max(i - 1, 0); m <= Math.min(i + 1, 8); m++) {
+                for(int n = Math.max(j - 1, 0); n <= Math.min(j + 1, 8); n++) {
+                    if(!model.isDiscovered(m, n)) {
+                        model.move(m, n);
+                        flags++;
+                    }
+                }
+            }
+            if(flags > model.getCell(i, j).ordinal() - DemineurModel.Cell.EMPTY.ordinal())
+                break;
+        }
+        assertFalse(new MineProbability(model).compute());
+    }
+}
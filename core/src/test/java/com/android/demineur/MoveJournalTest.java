@@ -0,0 +1,165 @@
+package com.android.demineur;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MoveJournalTest {
+
+    /**
+     *
+     * @return what the player sees of the game and its counters
+     */
+    private static String describe(DemineurModel model) {
+        StringBuilder text = new StringBuilder();
+        text.append(model.isLost()).append(' ').append(model.isWon()).append(' ')
+                .append(model.getCountMarkedCells()).append(' ')
+                .append(model.isSafeJokerUsed()).append(' ').append(model.isBurstJokerUsed()).append(' ')
+                .append(model.getLeftClicks()).append(' ').append(model.getRightClicks()).append(' ')
+                .append(model.getChordClicks()).append('\n');
+        for(int i = 0; i < model.getHeight(); i++) {
+            for(int j = 0; j < model.getWidth(); j++) {
+                if(model.isMarked(i, j))
+                    text.append('F');
+                else if(!model.isDiscovered(i, j))
+                    text.append('#');
+                else
+                    text.append(model.getCell(i, j).ordinal());
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Plays random moves, flags and jokers until the game is over or the number of moves is reached
+     * @return the description of the game before each move and after the last one
+     */
+    private static List<String> play(DemineurModel model, Random r, int moves) {
+        List<String> states = new ArrayList<>();
+        states.add(describe(model));
+        for(int k = 0; k < moves && !model.isLost() && !model.isWon(); k++) {
+            int choice = r.nextInt(20);
+            if(choice == 0 && !model.isSafeJokerUsed() && model.isGenerated())
+                model.activateSafeModeJoker();
+            else if(choice == 1 && !model.isBurstJokerUsed() && model.isGenerated())
+                model.activateBurstModeJoker();
+            model.setFlagMode(choice >= 2 && choice < 6);
+            ChangeSet changes = model.move(r.nextInt(model.getHeight()), r.nextInt(model.getWidth()));
+            model.setFlagMode(false);
+            model.deactivateJoker();
+            if(changes.size() > 0)
+                states.add(describe(model));
+        }
+        return states;
+    }
+
+    @Test
+    public void undoThenRedoRestoresEveryState() throws Exception {
+        Random r = new Random(1);
+        for(int game = 0; game < 100; game++) {
+            DemineurModel model = new DemineurModel(16, 16, 40, r.nextLong());
+            List<String> states = play(model, r, 60);
+            assertEquals(states.size() - 1, model.getJournal().getPosition());
+            for(int k = states.size() - 2; k >= 0; k--) {
+                assertTrue(model.canUndo());
+                model.undo();
+                assertEquals(states.get(k), describe(model));
+            }
+            assertFalse(model.canUndo());
+            for(int k = 1; k < states.size(); k++) {
+                assertTrue(model.canRedo());
+                model.redo();
+                assertEquals(states.get(k), describe(model));
+            }
+            assertFalse(model.canRedo());
+        }
+    }
+
+    @Test
+    public void movesChangingNothingAreNotCounted() throws Exception {
+        DemineurModel model = new DemineurModel(16, 16, 40, 7);
+        model.move(8, 8);
+        assertEquals(1, model.getLeftClicks());
+        // a discovered cell without enough flags around, then a flag put and removed
+        model.move(8, 8);
+        int i = 0;
+        while(model.isDiscovered(i / 16, i % 16))
+            i++;
+        model.setFlagMode(true);
+        model.move(i / 16, i % 16);
+        model.setFlagMode(false);
+        model.move(i / 16, i % 16);
+        assertEquals(1, model.getLeftClicks());
+        assertEquals(1, model.getRightClicks());
+        assertEquals(0, model.getChordClicks());
+        model.undo();
+        assertEquals(0, model.getRightClicks());
+        model.undo();
+        assertEquals(0, model.getLeftClicks());
+        model.redo();
+        assertEquals(1, model.getLeftClicks());
+    }
+
+    @Test
+    public void undoReturnsTheCellsItChanged() throws Exception {
+        Random r = new Random(2);
+        for(int game = 0; game < 20; game++) {
+            DemineurModel model = new DemineurModel(30, 16, 99, r.nextLong());
+            play(model, r, 30);
+            while(model.canUndo()) {
+                String after = describe(model);
+                ChangeSet changes = model.undo();
+                String before = describe(model);
+                boolean changed[] = new boolean[30 * 16];
+                for(int k = 0; k < changes.size(); k++)
+                    changed[changes.get(k)] = true;
+                String afterCells = after.substring(after.indexOf('\n') + 1);
+                String beforeCells = before.substring(before.indexOf('\n') + 1);
+                for(int cell = 0; cell < changed.length; cell++) {
+                    int position = cell / 30 * 31 + cell % 30;
+                    if(afterCells.charAt(position) != beforeCells.charAt(position))
+                        assertTrue("cell " + cell, changed[cell]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void newMoveAfterUndoDropsTheRedoneMoves() throws Exception {
+        DemineurModel model = new DemineurModel(16, 16, 40, 7);
+        play(model, new Random(3), 10);
+        int position = model.getJournal().getPosition();
+        model.undo();
+        model.undo();
+        assertTrue(model.canRedo());
+        model.setFlagMode(true);
+        for(int cell = 0; cell < 256; cell++) {
+            if(!model.isDiscovered(cell / 16, cell % 16) && !model.isMarked(cell / 16, cell % 16)) {
+                model.move(cell / 16, cell % 16);
+                break;
+            }
+        }
+        assertFalse(model.canRedo());
+        assertEquals(position - 1, model.getJournal().getPosition());
+    }
+
+    @Test
+    public void replayRebuildsTheGame() throws Exception {
+        Random r = new Random(4);
+        for(int game = 0; game < 50; game++) {
+            long seed = r.nextLong();
+            DemineurModel model = new DemineurModel(30, 16, 99, seed);
+            play(model, r, 40);
+            if(r.nextBoolean() && model.canUndo())
+                model.undo();
+            DemineurModel replayed = DemineurModel.replay(30, 16, 99, seed, model.getJournal());
+            assertEquals(describe(model), describe(replayed));
+            assertEquals(model.getJournal().getPosition(), replayed.getJournal().getPosition());
+        }
+    }
+}
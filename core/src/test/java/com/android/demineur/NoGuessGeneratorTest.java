@@ -0,0 +1,55 @@
+package com.android.demineur;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NoGuessGeneratorTest {
+
+    @Test
+    public void generatedGridIsClearedWithoutGuessing() throws Exception {
+        NoGuessGenerator generator = new NoGuessGenerator(16, 16, 40);
+        try {
+            long seed = generator.generate(3, 12, 60, TimeUnit.SECONDS);
+            DemineurModel model = new DemineurModel(16, 16, 40, seed);
+            assertTrue(NoGuessGenerator.isSolvable(model, 3, 12));
+            assertTrue(model.isWon());
+            // every cell has been discovered or flagged, no mine has been hit
+            assertEquals(16 * 16 - 40, model.getSnapshot().getCountDiscoveredCells());
+            assertEquals(40, model.getCountMarkedCells());
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    @Test
+    public void gridsNeedingAGuessAreRejected() throws Exception {
+        Random r = new Random(2);
+        int solvable = 0;
+        for(int game = 0; game < 50; game++) {
+            DemineurModel model = new DemineurModel(30, 16, 99, r.nextLong());
+            if(NoGuessGenerator.isSolvable(model, 8, 15)) {
+                solvable++;
+                assertTrue(model.isWon());
+            }
+            else
+                assertFalse(model.isWon());
+        }
+        // about a third of the expert grids can be cleared without guessing
+        assertTrue(solvable > 0);
+        assertTrue(solvable < 50);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void firstMoveOutsideTheGridIsRejected() throws Exception {
+        NoGuessGenerator generator = new NoGuessGenerator(9, 9, 10);
+        try {
+            generator.generate(9, 0, 1, TimeUnit.SECONDS);
+        } finally {
+            generator.shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.android.demineur;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ParallelFloodTest {
+
+    /**
+     *
+     * @param changes : the cells changed by a move
+     * @return the cell indices, sorted since the parallel opening returns them in no particular order
+     */
+    private static int[] sorted(ChangeSet changes) {
+        int cells[] = new int[changes.size()];
+        for(int k = 0; k < cells.length; k++)
+            cells[k] = changes.get(k);
+        Arrays.sort(cells);
+        return cells;
+    }
+
+    /**
+     * Plays the same moves on a grid opened in parallel and on a grid opened sequentially
+     * @param width : number of columns
+     * @param height : number of rows
+     * @param mines : number of mines
+     * @param seed : seed of both grids and of the moves
+     * @return the number of cells opened by the largest move
+     */
+    private static int compare(int width, int height, int mines, long seed) {
+        DemineurModel parallel = new DemineurModel(width, height, mines, seed);
+        DemineurModel sequential = new DemineurModel(width, height, mines, seed);
+        parallel.setParallelFrontier(1);
+        sequential.setParallelFrontier(Integer.MAX_VALUE);
+        Random r = new Random(seed);
+        int largest = 0;
+        for(int move = 0; move < 40 && !sequential.isLost() && !sequential.isWon(); move++) {
+            int i = r.nextInt(height);
+            int j = r.nextInt(width);
+            // flags in the way of the next openings, which must stop at them
+            boolean flag = move > 0 && r.nextInt(4) == 0;
+            if(!flag && sequential.getCell(i, j) == DemineurModel.Cell.MINE && !sequential.isDiscovered(i, j))
+                continue;
+            parallel.setFlagMode(flag);
+            sequential.setFlagMode(flag);
+            int expected[] = sorted(sequential.move(i, j));
+            assertArrayEquals("move " + move, expected, sorted(parallel.move(i, j)));
+            largest = Math.max(largest, expected.length);
+        }
+        assertEquals(sequential.isWon(), parallel.isWon());
+        assertEquals(sequential.getCountMarkedCells(), parallel.getCountMarkedCells());
+        for(int i = 0; i < height; i++) {
+            for(int j = 0; j < width; j++) {
+                assertEquals(sequential.isDiscovered(i, j), parallel.isDiscovered(i, j));
+                assertEquals(sequential.isMarked(i, j), parallel.isMarked(i, j));
+            }
+        }
+        // the journal of the parallel opening undoes the same cells
+        while(sequential.canUndo()) {
+            assertTrue(parallel.canUndo());
+            assertArrayEquals(sorted(sequential.undo()), sorted(parallel.undo()));
+        }
+        assertFalse(parallel.canUndo());
+        return largest;
+    }
+
+    @Test
+    public void parallelOpeningLeavesSnapshotsUnchanged() throws Exception {
+        DemineurModel model = new DemineurModel(1000, 700, 59500, 1);
+        model.setParallelFrontier(1);
+        // a flag in every chunk stores them all, so the snapshot shares every chunk the opening crosses
+        model.setFlagMode(true);
+        for(int i = 30; i < 700; i += ChunkedStorage.CHUNK_SIZE) {
+            for(int j = 30; j < 1000; j += ChunkedStorage.CHUNK_SIZE)
+                model.move(i, j);
+        }
+        model.setFlagMode(false);
+        BoardSnapshot snapshot = model.getSnapshot();
+        int cell = 350 * 1000 + 501;
+        while(model.getCell(cell / 1000, cell % 1000) != DemineurModel.Cell.EMPTY)
+            cell++;
+        model.move(cell / 1000, cell % 1000);
+        assertFalse(model.isLost());
+        assertTrue(model.getSnapshot().getCountDiscoveredCells() > 100000);
+        for(int i = 0; i < 700; i++) {
+            for(int j = 0; j < 1000; j++)
+                assertFalse(snapshot.isDiscovered(i, j));
+        }
+        assertTrue(snapshot.isMarked(350, 478));
+    }
+
+    @Test
+    public void denseGridOpensAsSequentialFlood() throws Exception {
+        int largest = 0;
+        for(long seed = 0; seed < 10; seed++)
+            largest = Math.max(largest, compare(200, 200, 2000, seed));
+        assertTrue(largest > 10000);
+    }
+
+    @Test
+    public void chunkedGridOpensAsSequentialFlood() throws Exception {
+        // a density under the percolation threshold, so the first opening spreads over most of the chunks
+        int largest = 0;
+        for(long seed = 0; seed < 3; seed++)
+            largest = Math.max(largest, compare(1000, 700, 59500, seed));
+        assertTrue(largest > 100000);
+    }
+}
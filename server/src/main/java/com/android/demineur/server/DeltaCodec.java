@@ -0,0 +1,278 @@
+package com.android.demineur.server;
+
+import com.android.demineur.ChangeSet;
+import com.android.demineur.DemineurModel;
+import com.android.demineur.GameSession;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Binary encoding of the effect of a move, sent by the server after each request.
+ * A delta is the status byte, the remaining mines as a zigzag varint, then the changed cells by runs of consecutive
+ * cells showing the same content. A run is a varint holding the gap from the end of the previous run shifted left
+ * by four bits with the content in the low bits, then a varint holding the length minus one. A header whose content
+ * is END closes the delta. A flood fill costs a few runs per row of the opened region, two or three bytes each.
+ * The status byte holds the GameSession.Status ordinal in its three low bits, then the flag mode, the used jokers
+ * and the active jokers.
+ * A codec reuses its buffers, so once they have grown to the largest move, encoding and decoding allocate nothing.
+ * A codec isn't thread-safe, each session owns its own
+ */
+public final class DeltaCodec {
+
+    /**
+     * Version of the protocol, sent by the server when a client connects
+     */
+    public static final byte VERSION = 2;
+
+    /**
+     * Visible contents of a cell, after the number of adjacent mines 0 to 8.
+     * Once the game is over every mine and flag is shown: MINE for a hidden mine, MINE_FOUND for a flagged one,
+     * MINE_EXPLODED for the one the player discovered and WRONG_FLAG for a flag on a cell without mine
+     */
+    public static final byte MINE = 9;
+    public static final byte HIDDEN = 10;
+    public static final byte FLAGGED = 11;
+    public static final byte MINE_FOUND = 12;
+    public static final byte MINE_EXPLODED = 13;
+    public static final byte WRONG_FLAG = 14;
+
+    /**
+     * Content of the header closing a delta
+     */
+    private static final int END = 15;
+
+    private static final int STATUS_MASK = 0x07;
+    private static final int FLAG_MODE_BIT = 0x08;
+    private static final int BURST_JOKER_USED_BIT = 0x10;
+    private static final int SAFE_JOKER_USED_BIT = 0x20;
+    private static final int BURST_MODE_JOKER_BIT = 0x40;
+    private static final int SAFE_MODE_JOKER_BIT = 0x80;
+
+    private static final GameSession.Status[] STATUSES = GameSession.Status.values();
+
+    /**
+     * Changed cells sorted by index, and the buffer of the radix sort
+     */
+    private int cells[] = new int[64];
+    private int buffer[] = new int[64];
+
+    private final int counts[] = new int[256];
+
+    /**
+     * Status byte and remaining mines of the last decoded delta
+     */
+    private int status;
+
+    private int remainingMines;
+
+    /**
+     *
+     * @param changes : the number of changed cells
+     * @return the largest size of the delta of a move changing the given number of cells
+     */
+    public static int getMaxEncodedSize(int changes) {
+        return 1 + 5 + changes * 6 + 1;
+    }
+
+    /**
+     * Writes the delta of a move
+     * @param session : the game, after the move
+     * @param changes : the cells changed by the move, or null for none
+     * @param out : the destination, with at least getMaxEncodedSize(changes.size()) bytes remaining
+     * @throws java.nio.BufferOverflowException if the destination is too small
+     */
+    public void encode(GameSession session, ChangeSet changes, ByteBuffer out) {
+        DemineurModel model = session.getModel();
+        out.put((byte) getStatusByte(session));
+        putVarint(out, zigzag(model.getRemainingCountMines()));
+        int size = changes == null ? 0 : changes.size();
+        int sorted[] = sort(changes, size, model.getWidth() * model.getHeight());
+        int width = model.getWidth();
+        int end = 0;
+        int k = 0;
+        while(k < size) {
+            int start = sorted[k++];
+            byte value = getVisible(model, start / width, start % width);
+            int next = start + 1;
+            while(k < size && sorted[k] == next && getVisible(model, next / width, next % width) == value) {
+                next++;
+                k++;
+            }
+            putVarint(out, (long) (start - end) << 4 | value);
+            putVarint(out, next - start - 1);
+            end = next;
+        }
+        out.put((byte) END);
+    }
+
+    /**
+     * Reads a delta and applies its cells to the view of a client
+     * @param in : the source, positioned at the start of the delta
+     * @param view : the visible content of each cell, indexed by i * width + j
+     * @return the number of changed cells
+     * @throws IllegalArgumentException if the delta is malformed or doesn't fit the view
+     * @throws java.nio.BufferUnderflowException if the delta is truncated
+     */
+    public int decode(ByteBuffer in, byte view[]) {
+        int flags = in.get() & 0xFF;
+        if((flags & STATUS_MASK) >= STATUSES.length)
+            throw new IllegalArgumentException("Unknown game status " + (flags & STATUS_MASK));
+        long mines = getVarint(in);
+        status = flags;
+        remainingMines = (int) (mines >>> 1) ^ -(int) (mines & 1);
+        long end = 0;
+        int count = 0;
+        while(true) {
+            long header = getVarint(in);
+            int value = (int) (header & 15);
+            if(value == END)
+                return count;
+            if(value > WRONG_FLAG)
+                throw new IllegalArgumentException("Unknown cell content " + value);
+            long start = end + (header >>> 4);
+            long next = start + getVarint(in) + 1;
+            if(next > view.length)
+                throw new IllegalArgumentException("Cells " + start + " to " + (next - 1) + " out of the grid");
+            Arrays.fill(view, (int) start, (int) next, (byte) value);
+            count += next - start;
+            end = next;
+        }
+    }
+
+    /**
+     *
+     * @return the game status of the last decoded delta
+     */
+    public GameSession.Status getStatus() {
+        return STATUSES[status & STATUS_MASK];
+    }
+
+    /**
+     *
+     * @return the remaining mines of the last decoded delta, the mines minus the flags
+     */
+    public int getRemainingMines() {
+        return remainingMines;
+    }
+
+    public boolean isFlagMode() {
+        return (status & FLAG_MODE_BIT) != 0;
+    }
+
+    public boolean isBurstJokerUsed() {
+        return (status & BURST_JOKER_USED_BIT) != 0;
+    }
+
+    public boolean isSafeJokerUsed() {
+        return (status & SAFE_JOKER_USED_BIT) != 0;
+    }
+
+    public boolean isBurstModeJoker() {
+        return (status & BURST_MODE_JOKER_BIT) != 0;
+    }
+
+    public boolean isSafeModeJoker() {
+        return (status & SAFE_MODE_JOKER_BIT) != 0;
+    }
+
+    /**
+     *
+     * @param model : the game
+     * @param i : the cell row
+     * @param j : the cell column
+     * @return what a player sees of the (i, j) cell, with the mines and the wrong flags once the game is over
+     */
+    static byte getVisible(DemineurModel model, int i, int j) {
+        boolean over = model.isLost() || model.isWon();
+        if(over && model.getCell(i, j) == DemineurModel.Cell.MINE) {
+            if(model.isDiscovered(i, j))
+                return MINE_EXPLODED;
+            return model.isMarked(i, j) ? MINE_FOUND : MINE;
+        }
+        if(model.isMarked(i, j))
+            return over ? WRONG_FLAG : FLAGGED;
+        if(!model.isDiscovered(i, j))
+            return HIDDEN;
+        return (byte) (model.getCell(i, j).ordinal() - DemineurModel.Cell.EMPTY.ordinal());
+    }
+
+    private static int getStatusByte(GameSession session) {
+        DemineurModel model = session.getModel();
+        int flags = session.getStatus().ordinal();
+        if(model.isFlagMode())
+            flags |= FLAG_MODE_BIT;
+        if(model.isBurstJokerUsed())
+            flags |= BURST_JOKER_USED_BIT;
+        if(model.isSafeJokerUsed())
+            flags |= SAFE_JOKER_USED_BIT;
+        if(model.isBurstModeJoker())
+            flags |= BURST_MODE_JOKER_BIT;
+        if(model.isSafeModeJoker())
+            flags |= SAFE_MODE_JOKER_BIT;
+        return flags;
+    }
+
+    /**
+     * Sorts the changed cells by index, with a radix sort on the bytes the grid size needs
+     * @param changes : the changed cells
+     * @param size : their number
+     * @param grid : the number of cells of the grid
+     * @return the array holding the sorted cells in its size first entries
+     */
+    private int[] sort(ChangeSet changes, int size, int grid) {
+        if(cells.length < size) {
+            cells = new int[Math.max(size, cells.length * 2)];
+            buffer = new int[cells.length];
+        }
+        for(int k = 0; k < size; k++)
+            cells[k] = changes.get(k);
+        int source[] = cells;
+        int destination[] = buffer;
+        for(int shift = 0; shift < 32 && ((grid - 1) >>> shift) != 0; shift += 8) {
+            Arrays.fill(counts, 0);
+            for(int k = 0; k < size; k++)
+                counts[(source[k] >>> shift) & 0xFF]++;
+            int position = 0;
+            for(int digit = 0; digit < counts.length; digit++) {
+                int count = counts[digit];
+                counts[digit] = position;
+                position += count;
+            }
+            for(int k = 0; k < size; k++)
+                destination[counts[(source[k] >>> shift) & 0xFF]++] = source[k];
+            int swap[] = source;
+            source = destination;
+            destination = swap;
+        }
+        return source;
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     *
+     * @param in : the source
+     * @return the varint read, at most five bytes long
+     */
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Varint longer than five bytes");
+    }
+}
@@ -0,0 +1,242 @@
+package com.android.demineur.server;
+
+import com.android.demineur.DemineurModel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts games for remote clients over a local TCP socket, one session and one thread per connection.
+ * The connection threads are virtual threads when the JVM has them, platform threads with a small stack otherwise.
+ * Arguments, all optional: -port N (7777 by default, 0 for any free port), -idle seconds before a silent
+ * connection is closed (300 by default).
+ * For example ./gradlew :server:serve -PserverArgs="-port 7777 -idle 60"
+ */
+public final class GameServer implements Closeable {
+
+    /**
+     * Largest grid of a session, so each session holds at most a dense grid
+     */
+    static final int MAX_CELLS = DemineurModel.CHUNKED_CELLS;
+
+    /**
+     * Connections waiting to be accepted, large enough for thousands of clients connecting at once
+     */
+    private static final int BACKLOG = 4096;
+
+    /**
+     * Stack of the platform connection threads, a session only needs a few frames
+     */
+    private static final long STACK_SIZE = 256 * 1024;
+
+    /**
+     * Pauses of the acceptor after a failed accept, doubled while the failures go on, so a lasting failure
+     * such as running out of file descriptors doesn't spin until the sessions release some
+     */
+    private static final long MIN_ACCEPT_PAUSE_MILLIS = 10;
+    private static final long MAX_ACCEPT_PAUSE_MILLIS = 1000;
+
+    private final ServerSocket serverSocket;
+
+    private final long idleNanos;
+
+    private final ExecutorService connections;
+
+    private final ScheduledExecutorService reaper;
+
+    private final Set<Session> sessions = Collections.newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+
+    /**
+     * Listen on the loopback interface, the connections are accepted once start is called
+     * @param port : the port, 0 for any free port
+     * @param idleMillis : time without any request after which a connection is closed
+     * @throws IOException if the port cannot be bound
+     */
+    public GameServer(int port, long idleMillis) throws IOException {
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.connections = newConnectionExecutor("demineur-session");
+        this.reaper = Executors.newSingleThreadScheduledExecutor(newDaemonFactory("demineur-reaper", 0));
+    }
+
+    /**
+     * Starts accepting the connections and reaping the idle ones
+     */
+    public void start() {
+        long period = Math.max(TimeUnit.NANOSECONDS.toMillis(idleNanos) / 4, 1);
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reapIdleSessions();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "demineur-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     *
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     *
+     * @return the number of open connections
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    private void acceptConnections() {
+        long pause = 0;
+        while(!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+                pause = 0;
+            } catch(IOException e) {
+                if(serverSocket.isClosed())
+                    break; // closed by close()
+                pause = Math.min(Math.max(pause * 2, MIN_ACCEPT_PAUSE_MILLIS), MAX_ACCEPT_PAUSE_MILLIS);
+                // printed without any logging framework, which could need a file descriptor itself
+                System.err.println("Accept failed, next attempt in " + pause + "ms: " + e);
+                try {
+                    Thread.sleep(pause);
+                } catch(InterruptedException interrupted) {
+                    return;
+                }
+                continue;
+            }
+            Session session = new Session(this, socket);
+            sessions.add(session);
+            try {
+                connections.execute(session);
+            } catch(RejectedExecutionException e) {
+                // the server is closing
+                session.close();
+                remove(session);
+            }
+        }
+    }
+
+    /**
+     * Closes the connections whose last request is older than the idle time, their threads then end the sessions
+     */
+    private void reapIdleSessions() {
+        long now = System.nanoTime();
+        for(Session session : sessions) {
+            if(now - session.getLastActive() > idleNanos)
+                session.close();
+        }
+    }
+
+    /**
+     * Called by a session thread when its connection is closed
+     * @param session : the ended session
+     */
+    void remove(Session session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        reaper.shutdownNow();
+        for(Session session : sessions)
+            session.close();
+        connections.shutdown();
+    }
+
+    /**
+     * Creates an executor running each task on a new thread, a virtual one when the JVM has virtual threads.
+     * They are looked up by reflection so the server still builds and runs on older JVMs
+     * @param name : the prefix of the platform thread names
+     * @return the executor
+     */
+    static ExecutorService newConnectionExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(newDaemonFactory(name, STACK_SIZE));
+        }
+    }
+
+    /**
+     *
+     * @return true if newConnectionExecutor runs its tasks on virtual threads
+     */
+    static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch(NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     *
+     * @param name : the prefix of the thread names
+     * @param stackSize : the stack size of the threads, 0 for the default one
+     * @return a factory of numbered daemon threads
+     */
+    private static ThreadFactory newDaemonFactory(final String name, final long stackSize) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(null, task, name + "-" + count.incrementAndGet(), stackSize);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = 7777;
+        long idleSeconds = 300;
+        for(int k = 0; k < args.length; k++) {
+            switch(args[k]) {
+                case "-port": port = Integer.parseInt(args[++k]); break;
+                case "-idle": idleSeconds = Long.parseLong(args[++k]); break;
+                default: throw new IllegalArgumentException("Unknown argument " + args[k]);
+            }
+        }
+        GameServer server = new GameServer(port, TimeUnit.SECONDS.toMillis(idleSeconds));
+        server.start();
+        System.out.println(String.format(Locale.ROOT, "Listening on %s:%d, %s threads, idle sessions closed after %ds",
+                InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(),
+                hasVirtualThreads() ? "virtual" : "platform", idleSeconds));
+        while(true) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(60));
+            System.out.println(server.getSessionCount() + " sessions");
+        }
+    }
+}
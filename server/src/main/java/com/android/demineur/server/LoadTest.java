@@ -0,0 +1,341 @@
+package com.android.demineur.server;
+
+import com.android.demineur.DemineurModel;
+import com.android.demineur.GameSession;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Opens many simulated connections to a game server, plays random moves at a fixed total rate and reports
+ * the latency percentiles of the requests. Each request is timed from the moment it was scheduled rather than sent,
+ * so a slow server delays the following requests instead of hiding them.
+ * Arguments, all optional: -connections N (10000), -rate requests per second of all the connections (20000),
+ * -duration seconds (10), -warmup seconds played before the measured ones (5), -grid WxHxM (30x16x99), -seed N,
+ * -port N of a running server, a server is started in this JVM otherwise.
+ * A server in this JVM shares the cores, the heap and the collector with the clients, so its latencies are only
+ * indicative: measure a server started by ./gradlew :server:serve in another process, with the same -port.
+ * For example ./gradlew :server:loadTest -PloadArgs="-connections 10000 -rate 50000 -duration 30 -port 7777"
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    /**
+     * A simulated player, which keeps what it sees of its grid to play on hidden cells
+     */
+    private static final class Client implements Runnable {
+
+        private final int port;
+
+        private final int width;
+
+        private final int height;
+
+        private final int mines;
+
+        private final Random random;
+
+        private final CountDownLatch connected;
+
+        private final CountDownLatch go;
+
+        private final CountDownLatch done;
+
+        /**
+         * Delay between two requests of this client and of its first request after the start, in nanoseconds
+         */
+        private final long interval;
+
+        private final long offset;
+
+        /**
+         * Start of the test, start of the measures and end of the test, System.nanoTime(), set before go is released
+         */
+        long start;
+
+        long measured;
+
+        long end;
+
+        private DataInputStream in;
+
+        private DataOutputStream out;
+
+        private byte view[];
+
+        private final DeltaCodec codec = new DeltaCodec();
+
+        /**
+         * Last delta received, grown to the largest one
+         */
+        private ByteBuffer delta = ByteBuffer.allocate(256);
+
+        private boolean over;
+
+        /**
+         * Latencies of the requests scheduled after the warm-up, in nanoseconds
+         */
+        long latencies[];
+
+        int requests;
+
+        int errors;
+
+        /**
+         * Size of the deltas received after the warm-up
+         */
+        long deltaBytes;
+
+        /**
+         * True once the connection is open and the first game started, set before connected is released
+         */
+        boolean open;
+
+        boolean failed;
+
+        Client(int port, int width, int height, int mines, long seed, long interval,
+               CountDownLatch connected, CountDownLatch go, CountDownLatch done) {
+            this.port = port;
+            this.width = width;
+            this.height = height;
+            this.mines = mines;
+            this.random = new Random(seed);
+            this.interval = interval;
+            this.offset = (long) (random.nextDouble() * interval);
+            this.connected = connected;
+            this.go = go;
+            this.done = done;
+            this.view = new byte[width * height];
+            this.latencies = new long[16];
+        }
+
+        @Override
+        public void run() {
+            Socket socket = null;
+            try {
+                try {
+                    socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                    socket.setTcpNoDelay(true);
+                    in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    if(in.readByte() != Protocol.VERSION)
+                        throw new IOException("Unknown protocol version");
+                    newGame();
+                    readReply();
+                    open = true;
+                } finally {
+                    connected.countDown();
+                }
+                go.await();
+                for(long next = start + offset; next < end; next += interval) {
+                    long delay = next - System.nanoTime();
+                    if(delay > 0)
+                        LockSupport.parkNanos(delay);
+                    if(over)
+                        newGame();
+                    else
+                        play();
+                    int size = readReply();
+                    if(next >= measured) {
+                        record(System.nanoTime() - next);
+                        deltaBytes += size;
+                    }
+                }
+                out.writeByte(Protocol.QUIT);
+                out.flush();
+            } catch(IOException e) {
+                failed = true;
+            } catch(InterruptedException e) {
+                failed = true;
+            } finally {
+                if(socket != null) {
+                    try {
+                        socket.close();
+                    } catch(IOException e) {
+                        // already closed
+                    }
+                }
+                done.countDown();
+            }
+        }
+
+        private void newGame() throws IOException {
+            Arrays.fill(view, DeltaCodec.HIDDEN);
+            over = false;
+            out.writeByte(Protocol.NEW_GAME);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(mines);
+            out.writeLong(random.nextLong());
+            out.flush();
+        }
+
+        /**
+         * Plays in a random hidden cell
+         */
+        private void play() throws IOException {
+            int cell = random.nextInt(view.length);
+            while(view[cell] != DeltaCodec.HIDDEN)
+                cell = random.nextInt(view.length);
+            out.writeByte(Protocol.PLAY);
+            out.writeInt(cell / width);
+            out.writeInt(cell % width);
+            out.flush();
+        }
+
+        /**
+         * Reads a reply and applies its delta to the view
+         * @return the size of the delta, 0 for an error
+         */
+        private int readReply() throws IOException {
+            if(in.readByte() != Protocol.OK) {
+                in.readUTF();
+                errors++;
+                return 0;
+            }
+            int size = in.readInt();
+            if(delta.capacity() < size)
+                delta = ByteBuffer.allocate(Math.max(size, delta.capacity() * 2));
+            in.readFully(delta.array(), 0, size);
+            delta.clear();
+            delta.limit(size);
+            try {
+                codec.decode(delta, view);
+            } catch(RuntimeException e) {
+                throw new IOException("Malformed delta", e);
+            }
+            GameSession.Status status = codec.getStatus();
+            over = status == GameSession.Status.WON || status == GameSession.Status.LOST;
+            return size;
+        }
+
+        private void record(long latency) {
+            if(requests == latencies.length)
+                latencies = Arrays.copyOf(latencies, requests * 2);
+            latencies[requests++] = latency;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int connections = 10000;
+        int rate = 20000;
+        int duration = 10;
+        int warmup = 5;
+        String grid = "30x16x99";
+        long seed = 0;
+        int port = 0;
+        for(int k = 0; k < args.length; k++) {
+            switch(args[k]) {
+                case "-connections": connections = Integer.parseInt(args[++k]); break;
+                case "-rate": rate = Integer.parseInt(args[++k]); break;
+                case "-duration": duration = Integer.parseInt(args[++k]); break;
+                case "-warmup": warmup = Integer.parseInt(args[++k]); break;
+                case "-grid": grid = args[++k]; break;
+                case "-seed": seed = Long.parseLong(args[++k]); break;
+                case "-port": port = Integer.parseInt(args[++k]); break;
+                default: throw new IllegalArgumentException("Unknown argument " + args[k]);
+            }
+        }
+        String[] values = grid.split("x");
+        int width = Integer.parseInt(values[0]);
+        int height = Integer.parseInt(values[1]);
+        int mines = Integer.parseInt(values[2]);
+
+        GameServer server = null;
+        if(port == 0) {
+            server = new GameServer(0, TimeUnit.SECONDS.toMillis(warmup + duration + 60));
+            server.start();
+            port = server.getPort();
+        }
+        System.out.println(String.format(Locale.ROOT, "%d connections, %s threads, %s grid, %d requests/s for %ds",
+                connections, GameServer.hasVirtualThreads() ? "virtual" : "platform", grid, rate, duration));
+        if(server != null)
+            System.out.println("Server in this JVM, sharing the cores with the clients: use -port with a server started apart");
+
+        long interval = TimeUnit.SECONDS.toNanos(1) * connections / rate;
+        CountDownLatch connected = new CountDownLatch(connections);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(connections);
+        Client clients[] = new Client[connections];
+        ExecutorService executor = GameServer.newConnectionExecutor("demineur-client");
+        long connecting = System.nanoTime();
+        for(int k = 0; k < connections; k++) {
+            clients[k] = new Client(port, width, height, mines, DemineurModel.getSeriesSeed(seed, k), interval, connected, go, done);
+            executor.execute(clients[k]);
+        }
+        connected.await();
+        long start = System.nanoTime();
+        long measured = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measured + TimeUnit.SECONDS.toNanos(duration);
+        for(Client client : clients) {
+            client.start = start;
+            client.measured = measured;
+            client.end = end;
+        }
+        int open = 0;
+        for(Client client : clients) {
+            if(client.open)
+                open++;
+        }
+        System.out.println(String.format(Locale.ROOT, "%d connections open in %.0fms%s", open,
+                (start - connecting) / 1e6, server == null ? "" : ", " + server.getSessionCount() + " sessions"));
+        go.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - measured) / 1e9;
+        executor.shutdown();
+        if(server != null)
+            server.close();
+
+        int requests = 0;
+        int errors = 0;
+        int failures = 0;
+        long deltaBytes = 0;
+        for(Client client : clients) {
+            requests += client.requests;
+            deltaBytes += client.deltaBytes;
+            errors += client.errors;
+            if(client.failed)
+                failures++;
+        }
+        long all[] = new long[requests];
+        int size = 0;
+        for(Client client : clients) {
+            System.arraycopy(client.latencies, 0, all, size, client.requests);
+            size += client.requests;
+        }
+        Arrays.sort(all);
+        System.out.println(String.format(Locale.ROOT, "%d requests, %.0f requests/s, %.1f bytes/delta, %d errors, %d failed connections",
+                requests, requests / seconds, requests == 0 ? 0 : (double) deltaBytes / requests, errors, failures));
+        System.out.println(String.format(Locale.ROOT, "latency us  p50 %d  p90 %d  p99 %d  p99.9 %d  max %d",
+                percentile(all, 0.5), percentile(all, 0.9), percentile(all, 0.99), percentile(all, 0.999),
+                percentile(all, 1)));
+    }
+
+    /**
+     *
+     * @param sorted : the latencies in nanoseconds, in increasing order
+     * @param rank : the rank between 0 and 1
+     * @return the latency in microseconds below which lies the given part of the requests, 0 if there is none
+     */
+    private static long percentile(long sorted[], double rank) {
+        if(sorted.length == 0)
+            return 0;
+        int k = (int) Math.ceil(rank * sorted.length) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, Math.min(sorted.length - 1, k))]);
+    }
+}
@@ -0,0 +1,50 @@
+package com.android.demineur.server;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary protocol between the game server and its clients, in big-endian order.
+ * On connection the server sends the VERSION byte. Each request is an opcode byte followed by its arguments,
+ * and gets exactly one reply: OK, the length of the delta as an int then the delta written by DeltaCodec,
+ * or ERROR followed by a message
+ */
+final class Protocol {
+
+    /**
+     * Version sent by the server when a client connects
+     */
+    static final byte VERSION = DeltaCodec.VERSION;
+
+    /**
+     * Starts a new game: int width, int height, int mines, long seed
+     */
+    static final byte NEW_GAME = 1;
+
+    /**
+     * Plays in a cell with the mode of the game: int i, int j
+     */
+    static final byte PLAY = 2;
+
+    /**
+     * Puts or removes a flag: int i, int j
+     */
+    static final byte FLAG = 3;
+
+    /**
+     * Ends the session, the server closes the connection without replying
+     */
+    static final byte QUIT = 4;
+
+    static final byte OK = 0;
+
+    static final byte ERROR = 1;
+
+    private Protocol() {
+    }
+
+    static void writeError(DataOutput out, String message) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(message == null ? "" : message);
+    }
+}
@@ -0,0 +1,161 @@
+package com.android.demineur.server;
+
+import com.android.demineur.ChangeSet;
+import com.android.demineur.DemineurModel;
+import com.android.demineur.GameSession;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Game of one connection, played by the single thread reading the connection, so the game needs no lock.
+ * Other threads only read the time of the last request and may close the connection, which ends the session
+ */
+final class Session implements Runnable {
+
+    private final GameServer server;
+
+    private final Socket socket;
+
+    /**
+     * The game, created by the first NEW_GAME request and only used by the session thread
+     */
+    private GameSession game;
+
+    private final DeltaCodec codec = new DeltaCodec();
+
+    /**
+     * Delta of the last reply, grown to the largest move of the session
+     */
+    private ByteBuffer delta = ByteBuffer.allocate(DeltaCodec.getMaxEncodedSize(64));
+
+    /**
+     * System.nanoTime() of the last request
+     */
+    private volatile long lastActive;
+
+    Session(GameServer server, Socket socket) {
+        this.server = server;
+        this.socket = socket;
+        this.lastActive = System.nanoTime();
+    }
+
+    long getLastActive() {
+        return lastActive;
+    }
+
+    @Override
+    public void run() {
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeByte(Protocol.VERSION);
+            out.flush();
+            while(true) {
+                int opcode = in.read();
+                if(opcode < 0 || opcode == Protocol.QUIT)
+                    break;
+                lastActive = System.nanoTime();
+                if(!handle(opcode, in, out))
+                    break;
+                out.flush();
+            }
+        } catch(IOException e) {
+            // the client left or the idle reaper closed the connection
+        } finally {
+            close();
+            server.remove(this);
+        }
+    }
+
+    /**
+     * Reads the arguments of a request, plays it and writes the reply
+     * @param opcode : the request
+     * @param in : the source of the arguments
+     * @param out : the destination of the reply
+     * @return false if the request is unknown, the connection is then closed since the rest of the input can't be read
+     * @throws IOException if the connection fails
+     */
+    private boolean handle(int opcode, DataInputStream in, DataOutputStream out) throws IOException {
+        switch(opcode) {
+            case Protocol.NEW_GAME: {
+                int width = in.readInt();
+                int height = in.readInt();
+                int mines = in.readInt();
+                long seed = in.readLong();
+                if(width < DemineurModel.MIN_WIDTH || height < DemineurModel.MIN_HEIGHT || (long) width * height > GameServer.MAX_CELLS) {
+                    Protocol.writeError(out, "Invalid grid " + width + "x" + height);
+                    return true;
+                }
+                if(mines < DemineurModel.MIN_MINES) {
+                    Protocol.writeError(out, "Invalid number of mines " + mines);
+                    return true;
+                }
+                DemineurModel model = new DemineurModel(width, height, mines, seed);
+                if(mines > model.getMaxMines(height, width)) {
+                    Protocol.writeError(out, "Invalid number of mines " + mines);
+                    return true;
+                }
+                game = new GameSession(model);
+                writeBoard(out, null);
+                return true;
+            }
+            case Protocol.PLAY:
+            case Protocol.FLAG: {
+                int i = in.readInt();
+                int j = in.readInt();
+                if(game == null) {
+                    Protocol.writeError(out, "No game");
+                    return true;
+                }
+                ChangeSet changes;
+                try {
+                    changes = opcode == Protocol.PLAY ? game.play(i, j) : game.toggleFlag(i, j);
+                } catch(IndexOutOfBoundsException e) {
+                    Protocol.writeError(out, "No cell " + e.getMessage());
+                    return true;
+                }
+                writeBoard(out, changes);
+                return true;
+            }
+            default:
+                Protocol.writeError(out, "Unknown request " + opcode);
+                out.flush();
+                return false;
+        }
+    }
+
+    /**
+     * Writes the OK reply of a move or a new game
+     * @param out : the destination
+     * @param changes : the cells changed by the request, or null to send none
+     * @throws IOException if the reply cannot be written
+     */
+    private void writeBoard(DataOutputStream out, ChangeSet changes) throws IOException {
+        int max = DeltaCodec.getMaxEncodedSize(changes == null ? 0 : changes.size());
+        if(delta.capacity() < max)
+            delta = ByteBuffer.allocate(Math.max(max, delta.capacity() * 2));
+        delta.clear();
+        codec.encode(game, changes, delta);
+        out.writeByte(Protocol.OK);
+        out.writeInt(delta.position());
+        out.write(delta.array(), 0, delta.position());
+    }
+
+    /**
+     * Closes the connection, the session thread then ends at its next read. Can be called from any thread
+     */
+    void close() {
+        try {
+            socket.close();
+        } catch(IOException e) {
+            // already closed
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.android.demineur.server;
+
+import com.android.demineur.ChangeSet;
+import com.android.demineur.DemineurModel;
+import com.android.demineur.GameSession;
+
+import org.junit.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeltaCodecTest {
+
+    private final DeltaCodec encoder = new DeltaCodec();
+    private final DeltaCodec decoder = new DeltaCodec();
+    private final ByteBuffer buffer = ByteBuffer.allocate(DeltaCodec.getMaxEncodedSize(100 * 100));
+
+    /**
+     * Encodes the changes of a move and decodes them into the view
+     * @return the size of the delta
+     */
+    private int roundTrip(GameSession session, ChangeSet changes, byte view[]) {
+        buffer.clear();
+        encoder.encode(session, changes, buffer);
+        int size = buffer.position();
+        buffer.flip();
+        assertEquals(changes == null ? 0 : changes.size(), decoder.decode(buffer, view));
+        assertEquals(0, buffer.remaining());
+        return size;
+    }
+
+    private static byte[] newView(DemineurModel model) {
+        byte view[] = new byte[model.getWidth() * model.getHeight()];
+        Arrays.fill(view, DeltaCodec.HIDDEN);
+        return view;
+    }
+
+    private static void assertViewEquals(DemineurModel model, byte view[]) {
+        for(int i = 0; i < model.getHeight(); i++) {
+            for(int j = 0; j < model.getWidth(); j++)
+                assertEquals("(" + i + ", " + j + ")", DeltaCodec.getVisible(model, i, j), view[i * model.getWidth() + j]);
+        }
+    }
+
+    @Test
+    public void decodedViewMatchesModel() throws Exception {
+        int grids[][] = {{9, 9, 10}, {30, 16, 99}, {100, 60, 60}};
+        Random r = new Random(1);
+        for(int grid[] : grids) {
+            for(int game = 0; game < 50; game++) {
+                GameSession session = new GameSession(new DemineurModel(grid[0], grid[1], grid[2], r.nextLong()));
+                DemineurModel model = session.getModel();
+                byte view[] = newView(model);
+                if(game % 3 == 0)
+                    model.activateSafeModeJoker();
+                while(session.getStatus() != GameSession.Status.WON && session.getStatus() != GameSession.Status.LOST) {
+                    int i = r.nextInt(grid[1]);
+                    int j = r.nextInt(grid[0]);
+                    roundTrip(session, r.nextInt(5) == 0 ? session.toggleFlag(i, j) : session.play(i, j), view);
+                    assertEquals(session.getStatus(), decoder.getStatus());
+                    assertEquals(model.getRemainingCountMines(), decoder.getRemainingMines());
+                    assertEquals(model.isSafeJokerUsed(), decoder.isSafeJokerUsed());
+                    assertEquals(model.isSafeModeJoker(), decoder.isSafeModeJoker());
+                    assertEquals(model.isFlagMode(), decoder.isFlagMode());
+                }
+                assertViewEquals(model, view);
+            }
+        }
+    }
+
+    @Test
+    public void lostGameShowsEveryMine() throws Exception {
+        Random r = new Random(2);
+        int losses = 0;
+        for(int game = 0; game < 20; game++) {
+            GameSession session = new GameSession(new DemineurModel(30, 16, 99, r.nextLong()));
+            byte view[] = newView(session.getModel());
+            while(session.getStatus() != GameSession.Status.WON && session.getStatus() != GameSession.Status.LOST) {
+                int cell = r.nextInt(view.length);
+                if(view[cell] == DeltaCodec.HIDDEN)
+                    roundTrip(session, session.play(cell / 30, cell % 30), view);
+            }
+            if(session.getStatus() != GameSession.Status.LOST)
+                continue;
+            losses++;
+            int mines = 0;
+            int exploded = 0;
+            for(byte content : view) {
+                if(content == DeltaCodec.MINE || content == DeltaCodec.MINE_FOUND)
+                    mines++;
+                else if(content == DeltaCodec.MINE_EXPLODED)
+                    exploded++;
+            }
+            assertEquals(1, exploded);
+            assertEquals(99, mines + exploded);
+        }
+        assertTrue(losses > 0);
+    }
+
+    @Test
+    public void wrongFlagsAreShownAtGameEnd() throws Exception {
+        GameSession session = new GameSession(new DemineurModel(9, 9, 10, 3));
+        DemineurModel model = session.getModel();
+        byte view[] = newView(model);
+        roundTrip(session, session.play(4, 4), view);
+        int flagged = -1;
+        for(int cell = 0; cell < view.length && flagged < 0; cell++) {
+            if(view[cell] == DeltaCodec.HIDDEN && model.getCell(cell / 9, cell % 9) != DemineurModel.Cell.MINE)
+                flagged = cell;
+        }
+        roundTrip(session, session.toggleFlag(flagged / 9, flagged % 9), view);
+        assertEquals(DeltaCodec.FLAGGED, view[flagged]);
+        for(int cell = 0; cell < view.length && session.getStatus() != GameSession.Status.LOST; cell++) {
+            if(model.getCell(cell / 9, cell % 9) == DemineurModel.Cell.MINE)
+                roundTrip(session, session.play(cell / 9, cell % 9), view);
+        }
+        assertEquals(DeltaCodec.WRONG_FLAG, view[flagged]);
+        assertViewEquals(model, view);
+    }
+
+    @Test
+    public void floodFillFitsInAFewHundredBytes() throws Exception {
+        GameSession session = new GameSession(new DemineurModel(60, 60, 20, 7));
+        ChangeSet changes = session.play(30, 30);
+        byte view[] = newView(session.getModel());
+        int size = roundTrip(session, changes, view);
+        assertTrue(changes.size() > 1000);
+        assertTrue(size + " bytes", size < 400);
+        assertViewEquals(session.getModel(), view);
+    }
+
+    @Test(expected = BufferUnderflowException.class)
+    public void truncatedDeltaIsRejected() throws Exception {
+        GameSession session = new GameSession(new DemineurModel(30, 16, 99, 4));
+        buffer.clear();
+        encoder.encode(session, session.play(8, 15), buffer);
+        buffer.flip();
+        buffer.limit(buffer.limit() - 1);
+        decoder.decode(buffer, new byte[30 * 16]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cellsOutOfTheViewAreRejected() throws Exception {
+        GameSession session = new GameSession(new DemineurModel(30, 16, 99, 4));
+        buffer.clear();
+        encoder.encode(session, session.play(15, 29), buffer);
+        buffer.flip();
+        decoder.decode(buffer, new byte[9 * 9]);
+    }
+}
@@ -0,0 +1,158 @@
+package com.android.demineur.server;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import static org.junit.Assert.*;
+
+public class GameServerTest {
+
+    private GameServer server;
+
+    /**
+     * Connection of a test client, which reads the version sent by the server
+     */
+    private final class Client {
+
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Client() throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+            socket.setSoTimeout(10000);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(socket.getOutputStream());
+            assertEquals(Protocol.VERSION, in.readByte());
+        }
+
+        /**
+         * Sends a request and reads its reply
+         * @return OK or ERROR
+         */
+        int request(int opcode, int... arguments) throws IOException {
+            out.writeByte(opcode);
+            for(int argument : arguments)
+                out.writeInt(argument);
+            if(opcode == Protocol.NEW_GAME)
+                out.writeLong(1);
+            out.flush();
+            int reply = in.readByte();
+            if(reply == Protocol.OK)
+                in.readFully(new byte[in.readInt()]);
+            else
+                in.readUTF();
+            return reply;
+        }
+
+        /**
+         *
+         * @return true once the server closed the connection
+         */
+        boolean isClosedByServer() throws IOException {
+            return in.read() < 0;
+        }
+    }
+
+    private GameServer start(long idleMillis) throws IOException {
+        server = new GameServer(0, idleMillis);
+        server.start();
+        return server;
+    }
+
+    /**
+     * Waits for the sessions to be opened or ended
+     */
+    private void awaitSessions(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while(server.getSessionCount() != count) {
+            assertTrue(server.getSessionCount() + " sessions instead of " + count, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void close() throws IOException {
+        if(server != null)
+            server.close();
+    }
+
+    @Test
+    public void requestsAreAnswered() throws Exception {
+        start(60000);
+        Client client = new Client();
+        assertEquals(Protocol.ERROR, client.request(Protocol.PLAY, 0, 0));
+        assertEquals(Protocol.ERROR, client.request(Protocol.NEW_GAME, 9, 9, 1000));
+        assertEquals(Protocol.ERROR, client.request(Protocol.NEW_GAME, 9, 9, -1));
+        assertEquals(Protocol.OK, client.request(Protocol.NEW_GAME, 9, 9, 10));
+        assertEquals(Protocol.OK, client.request(Protocol.PLAY, 4, 4));
+        assertEquals(Protocol.OK, client.request(Protocol.FLAG, 0, 0));
+        assertEquals(Protocol.ERROR, client.request(Protocol.PLAY, 9, 0));
+        client.socket.close();
+    }
+
+    @Test
+    public void idleSessionsAreReaped() throws Exception {
+        start(300);
+        Client idle = new Client();
+        Client other = new Client();
+        Client active = new Client();
+        awaitSessions(3);
+        assertEquals(Protocol.OK, active.request(Protocol.NEW_GAME, 9, 9, 10));
+        // the active client keeps requesting for several idle times
+        long end = System.currentTimeMillis() + 1200;
+        while(System.currentTimeMillis() < end) {
+            assertEquals(Protocol.OK, active.request(Protocol.FLAG, 0, 0));
+            Thread.sleep(50);
+        }
+        assertTrue(idle.isClosedByServer());
+        assertTrue(other.isClosedByServer());
+        awaitSessions(1);
+        assertEquals(Protocol.OK, active.request(Protocol.FLAG, 0, 0));
+        // once silent it is closed too
+        assertTrue(active.isClosedByServer());
+        awaitSessions(0);
+    }
+
+    @Test
+    public void quitEndsTheSession() throws Exception {
+        start(60000);
+        Client client = new Client();
+        awaitSessions(1);
+        client.out.writeByte(Protocol.QUIT);
+        client.out.flush();
+        assertTrue(client.isClosedByServer());
+        awaitSessions(0);
+    }
+
+    @Test
+    public void unknownRequestClosesTheConnection() throws Exception {
+        start(60000);
+        Client client = new Client();
+        client.out.writeByte(99);
+        client.out.flush();
+        assertEquals(Protocol.ERROR, client.in.readByte());
+        client.in.readUTF();
+        assertTrue(client.isClosedByServer());
+        awaitSessions(0);
+    }
+
+    @Test
+    public void closingTheServerEndsTheSessions() throws Exception {
+        start(60000);
+        Client first = new Client();
+        Client second = new Client();
+        awaitSessions(2);
+        server.close();
+        assertTrue(first.isClosedByServer());
+        assertTrue(second.isClosedByServer());
+        awaitSessions(0);
+    }
+}